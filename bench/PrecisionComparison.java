@@ -0,0 +1,259 @@
+import java.util.Random;
+
+
+/**
+ * Trains a {@link NeuralNetwork} and a {@link FloatNeuralNetwork} from the same initial weights on the same synthetic data and
+ * reports their accuracy, the difference between their outputs, the memory used per weight and their batched scoring throughput.
+ * <p>
+ * The data is a 10-class problem over 64 inputs, labelled by the arg-max of a fixed random teacher network.
+ * Run with <code>java PrecisionComparison [epochs]</code>.
+ */
+public final class PrecisionComparison
+{
+
+	// #BEGIN: Declarations
+	private static final int[] TOPOLOGY = { 64, 128, 10 };
+	private static final int[] WIDE_TOPOLOGY = { 784, 1024, 10 };
+	private static final int TRAIN_ROWS = 8192;
+	private static final int TEST_ROWS = 4096;
+	private static final int BATCH_SIZE = 512;
+	// #END: Declarations
+
+
+	private PrecisionComparison()
+	{
+	}
+
+
+	// #BEGIN: Public Functions
+
+	public static void main(final String[] args)
+	{
+		final int epochs = (args.length > 0 ? Integer.parseInt(args[0]) : 200);
+		Random random = new Random(7);
+
+		NeuralNetwork teacher = new NeuralNetwork(ActivationFunction.TANH, new int[] { 64, 32, 10 }, true, 0, 1);
+		for (int d = 0; d < teacher.getDenseLayerCount(); d++)
+		{
+			double[] w = teacher.getDenseLayer(d).getWeights();
+			for (int k = 0; k < w.length; k++)
+				w[k] = random.nextGaussian() / Math.sqrt(teacher.getDenseLayer(d).getStride());
+		}
+
+		double[][] trainIn = inputs(random, TRAIN_ROWS);
+		double[][] trainOut = labels(teacher, trainIn);
+		double[][] testIn = inputs(random, TEST_ROWS);
+		double[][] testOut = labels(teacher, testIn);
+
+		NeuralNetwork dbl = new NeuralNetwork(ActivationFunction.SIGMOID, TOPOLOGY, true, 0, 1);
+		for (int d = 0; d < dbl.getDenseLayerCount(); d++)
+		{
+			double[] w = dbl.getDenseLayer(d).getWeights();
+			for (int k = 0; k < w.length; k++)
+				w[k] = (random.nextDouble() - 0.5) / Math.sqrt(dbl.getDenseLayer(d).getStride());
+		}
+		FloatNeuralNetwork flt = new FloatNeuralNetwork(dbl);
+
+		float[][] trainInF = narrow(trainIn);
+		float[][] trainOutF = narrow(trainOut);
+
+		long dblNanos = 0;
+		long fltNanos = 0;
+		for (int e = 0; e < epochs; e++)
+		{
+			long begin = System.nanoTime();
+			dbl.train(trainIn, trainOut, BATCH_SIZE);
+			long middle = System.nanoTime();
+			flt.train(trainInF, trainOutF, BATCH_SIZE);
+			fltNanos += System.nanoTime() - middle;
+			dblNanos += middle - begin;
+		}
+
+		double[] dblResults = dbl.predictBatch(testIn, new double[TEST_ROWS * 10]);
+		float[] fltResults = flt.predictBatch(flatten(narrow(testIn)), TEST_ROWS, new float[TEST_ROWS * 10]);
+		float[] narrowed = new FloatNeuralNetwork(dbl).predictBatch(flatten(narrow(testIn)), TEST_ROWS, new float[TEST_ROWS * 10]);
+
+		System.out.println("Kernel backend: " + Kernels.INSTANCE.getClass().getSimpleName());
+		System.out.printf("Topology %s, %d training and %d test patterns, %d epochs, batch %d%n%n",
+				java.util.Arrays.toString(TOPOLOGY), TRAIN_ROWS, TEST_ROWS, epochs, BATCH_SIZE);
+
+		System.out.printf("%-34s %12s %12s%n", "", "double", "float");
+		System.out.printf("%-34s %12d %12d%n", "bytes per weight (with state)", 5 * 8, 5 * 4);
+		System.out.printf("%-34s %12.1f %12.1f%n", "training ms per epoch", dblNanos / 1e6 / epochs, fltNanos / 1e6 / epochs);
+		System.out.printf("%-34s %12.5f %12.5f%n", "last batch RMS error", dbl.getLastError(), flt.getLastError());
+		System.out.printf("%-34s %12.5f %12.5f%n", "test RMS error", rms(dblResults, testOut), rms(fltResults, testOut));
+		System.out.printf("%-34s %11.2f%% %11.2f%%%n", "test accuracy", 100 * accuracy(dblResults, testOut), 100 * accuracy(fltResults, testOut));
+		System.out.printf("%-34s %12.0f %12.0f%n", "batched scoring, patterns/s",
+				throughput(dbl, flatten(testIn)), throughput(new FloatNeuralNetwork(dbl), flatten(narrow(testIn))));
+
+		// a wide layer is bound by weight bandwidth rather than by the activation function
+		NeuralNetwork wide = new NeuralNetwork(ActivationFunction.SIGMOID, WIDE_TOPOLOGY, true, 0, 1);
+		double[] wideIn = new double[TEST_ROWS * WIDE_TOPOLOGY[0]];
+		for (int k = 0; k < wideIn.length; k++)
+			wideIn[k] = random.nextDouble() * 0.01;
+		System.out.printf("%-34s %12.0f %12.0f%n", "batched scoring " + java.util.Arrays.toString(WIDE_TOPOLOGY),
+				throughput(wide, wideIn), throughput(new FloatNeuralNetwork(wide), narrow(new double[][] { wideIn })[0]));
+
+		System.out.println();
+		System.out.printf("Trained separately:   max |double - float| output %.3e, arg-max agreement %.2f%%%n",
+				maxDiff(dblResults, fltResults), 100 * agreement(dblResults, fltResults));
+		System.out.printf("Double narrowed once: max |double - float| output %.3e, arg-max agreement %.2f%%%n",
+				maxDiff(dblResults, narrowed), 100 * agreement(dblResults, narrowed));
+	}
+
+	// #END: Public Functions
+
+
+	// #BEGIN: Private Functions
+
+	private static double[][] inputs(final Random random, final int rows)
+	{
+		double[][] in = new double[rows][TOPOLOGY[0]];
+		for (double[] row : in)
+			for (int i = 0; i < row.length; i++)
+				row[i] = random.nextDouble();
+
+		return in;
+	}
+
+	private static double[][] labels(final NeuralNetwork teacher, final double[][] in)
+	{
+		double[][] out = new double[in.length][10];
+		double[] scores = new double[10];
+
+		for (int r = 0; r < in.length; r++)
+			out[r][argMax(teacher.predict(in[r], scores), 0, 10)] = 1.0;
+
+		return out;
+	}
+
+	private static double throughput(final NeuralNetwork network, final double[] in)
+	{
+		double[] out = new double[TEST_ROWS * network.getTopology()[network.getTopology().length - 1]];
+		long begin = System.nanoTime();
+		int passes = 0;
+		while (System.nanoTime() - begin < 2e9)
+		{
+			network.predictBatch(in, TEST_ROWS, out);
+			passes++;
+		}
+
+		return passes * (double)TEST_ROWS / ((System.nanoTime() - begin) / 1e9);
+	}
+
+	private static double throughput(final FloatNeuralNetwork network, final float[] in)
+	{
+		float[] out = new float[TEST_ROWS * network.getTopology()[network.getTopology().length - 1]];
+		long begin = System.nanoTime();
+		int passes = 0;
+		while (System.nanoTime() - begin < 2e9)
+		{
+			network.predictBatch(in, TEST_ROWS, out);
+			passes++;
+		}
+
+		return passes * (double)TEST_ROWS / ((System.nanoTime() - begin) / 1e9);
+	}
+
+	private static double rms(final double[] results, final double[][] expected)
+	{
+		double sum = 0;
+		for (int r = 0; r < expected.length; r++)
+			for (int j = 0; j < 10; j++)
+				sum += (results[r * 10 + j] - expected[r][j]) * (results[r * 10 + j] - expected[r][j]);
+
+		return Math.sqrt(sum / (expected.length * 10));
+	}
+
+	private static double rms(final float[] results, final double[][] expected)
+	{
+		return rms(widen(results), expected);
+	}
+
+	private static double accuracy(final double[] results, final double[][] expected)
+	{
+		int correct = 0;
+		for (int r = 0; r < expected.length; r++)
+			if (expected[r][argMax(results, r * 10, 10) - r * 10] == 1.0)
+				correct++;
+
+		return (double)correct / expected.length;
+	}
+
+	private static double accuracy(final float[] results, final double[][] expected)
+	{
+		return accuracy(widen(results), expected);
+	}
+
+	private static double maxDiff(final double[] a, final float[] b)
+	{
+		double max = 0;
+		for (int k = 0; k < a.length; k++)
+			max = Math.max(max, Math.abs(a[k] - b[k]));
+
+		return max;
+	}
+
+	private static double agreement(final double[] a, final float[] b)
+	{
+		double[] wide = widen(b);
+		int same = 0;
+		for (int r = 0; r < TEST_ROWS; r++)
+			if (argMax(a, r * 10, 10) == argMax(wide, r * 10, 10))
+				same++;
+
+		return (double)same / TEST_ROWS;
+	}
+
+	private static int argMax(final double[] values, final int offset, final int length)
+	{
+		int best = offset;
+		for (int k = offset + 1; k < offset + length; k++)
+			if (values[k] > values[best])
+				best = k;
+
+		return best;
+	}
+
+	private static float[][] narrow(final double[][] values)
+	{
+		float[][] narrow = new float[values.length][];
+		for (int r = 0; r < values.length; r++)
+		{
+			narrow[r] = new float[values[r].length];
+			for (int i = 0; i < values[r].length; i++)
+				narrow[r][i] = (float)values[r][i];
+		}
+
+		return narrow;
+	}
+
+	private static double[] widen(final float[] values)
+	{
+		double[] wide = new double[values.length];
+		for (int k = 0; k < values.length; k++)
+			wide[k] = values[k];
+
+		return wide;
+	}
+
+	private static double[] flatten(final double[][] rows)
+	{
+		double[] flat = new double[rows.length * rows[0].length];
+		for (int r = 0; r < rows.length; r++)
+			System.arraycopy(rows[r], 0, flat, r * rows[r].length, rows[r].length);
+
+		return flat;
+	}
+
+	private static float[] flatten(final float[][] rows)
+	{
+		float[] flat = new float[rows.length * rows[0].length];
+		for (int r = 0; r < rows.length; r++)
+			System.arraycopy(rows[r], 0, flat, r * rows[r].length, rows[r].length);
+
+		return flat;
+	}
+
+	// #END: Private Functions
+}
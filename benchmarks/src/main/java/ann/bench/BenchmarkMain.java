@@ -0,0 +1,62 @@
+package ann.bench;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks with the GC profiler and writes the results as JSON (to <code>jmh-result.json</code> unless
+ * <code>-rff</code> names another file), then prints patterns per second, ns per pattern and bytes allocated per pattern.
+ * Any standard JMH option may be given, e.g. <code>java -jar benchmarks.jar -p topology=mnist feedForward</code>.
+ */
+public final class BenchmarkMain
+{
+
+	private BenchmarkMain()
+	{
+	}
+
+
+	public static void main(final String[] args) throws RunnerException, CommandLineOptionException
+	{
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(cmd);
+
+		options.addProfiler(GCProfiler.class);
+		if (!cmd.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if (!cmd.getResult().hasValue())
+			options.result("jmh-result.json");
+
+		Collection<RunResult> results = new Runner(options.build()).run();
+
+		System.out.println();
+		System.out.printf("%-28s %-24s %14s %14s %14s%n", "benchmark", "parameters", "patterns/s", "ns/pattern", "bytes/pattern");
+		for (RunResult run : results)
+		{
+			String label = run.getParams().getBenchmark();
+			label = label.substring(label.lastIndexOf('.') + 1);
+
+			double score = run.getPrimaryResult().getScore();
+			double allocated = Double.NaN;
+			for (Map.Entry<String, Result> secondary : run.getSecondaryResults().entrySet())
+				if (secondary.getKey().endsWith("gc.alloc.rate.norm"))
+					allocated = secondary.getValue().getScore();
+
+			System.out.printf("%-28s %-24s %14.0f %14.1f %14.1f%n", label,
+					run.getParams().getParam("topology") + "/" + run.getParams().getParam("activation"),
+					score, 1e9 / score, allocated);
+		}
+	}
+}
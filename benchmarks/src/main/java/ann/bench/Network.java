@@ -0,0 +1,112 @@
+package ann.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+
+/**
+ * Access to the network classes, which live in the default package and so cannot be imported by the benchmarks. JMH refuses to
+ * generate code for benchmarks in the default package, so calls go through constant method handles that the JIT inlines.
+ */
+final class Network
+{
+
+	// #BEGIN: Declarations
+	private static final Class<?> NETWORK = load("NeuralNetwork");
+	private static final Class<?> ACTIVATION = load("ActivationFunction");
+
+	static final MethodHandle NEW = constructor(MethodType.methodType(void.class, ACTIVATION, int[].class, boolean.class, double.class, double.class));
+	static final MethodHandle FEED_FORWARD = method("feedForward", MethodType.methodType(void.class, double[].class));
+	static final MethodHandle FETCH_RESULTS = method("fetchResults", MethodType.methodType(double[].class));
+	static final MethodHandle IRPROP = method("iRPROP", MethodType.methodType(void.class, double[].class));
+	static final MethodHandle TRAIN = method("train", MethodType.methodType(void.class, double[][].class, double[][].class, int.class));
+	// #END: Declarations
+
+
+	private Network()
+	{
+	}
+
+
+	// #BEGIN: Public Functions
+
+	/**
+	 * Creates a neural network with bias neurons and an input range of [0, 1].
+	 * @param activation the name of the activation function.
+	 * @param topology the number of neurons in each layer.
+	 * @return the neural network.
+	 * @throws Throwable if the constructor throws.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Object create(final String activation, final int[] topology) throws Throwable
+	{
+		Object func = Enum.valueOf((Class<? extends Enum>)ACTIVATION, activation);
+
+		return (Object)NEW.invokeExact(func, topology, true, 0.0, 1.0);
+	}
+
+	/**
+	 * Returns the topology of a named benchmark network.
+	 * @param name tiny, mnist or wide-deep.
+	 * @return the number of neurons in each layer.
+	 * @throws IllegalArgumentException if the name is unknown.
+	 */
+	static int[] topology(final String name) throws IllegalArgumentException
+	{
+		switch (name)
+		{
+			case "tiny":
+				return new int[] { 4, 8, 3 };
+			case "mnist":
+				return new int[] { 784, 128, 10 };
+			case "wide-deep":
+				return new int[] { 512, 512, 512, 512, 10 };
+		}
+
+		throw new IllegalArgumentException("Unknown topology " + name + ".");
+	}
+
+	// #END: Public Functions
+
+
+	// #BEGIN: Private Functions
+
+	private static Class<?> load(final String name)
+	{
+		try
+		{
+			return Class.forName(name);
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new IllegalStateException("The neural network classes are not on the class path.", e);
+		}
+	}
+
+	private static MethodHandle constructor(final MethodType type)
+	{
+		try
+		{
+			return MethodHandles.publicLookup().findConstructor(NETWORK, type).asType(type.changeReturnType(Object.class).changeParameterType(0, Object.class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle method(final String name, final MethodType type)
+	{
+		try
+		{
+			return MethodHandles.publicLookup().findVirtual(NETWORK, name, type).asType(type.insertParameterTypes(0, Object.class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// #END: Private Functions
+}
@@ -0,0 +1,108 @@
+package ann.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Feed-forward, result fetching, single-pattern iRPROP+ and mini-batch training over a grid of topologies and activation
+ * functions. Every operation is one pattern, so the score is patterns per second and <code>1e9 / score</code> is ns per pattern.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkBenchmark
+{
+
+	// #BEGIN: Declarations
+	static final int TRAIN_ROWS = 64;
+	static final int BATCH_SIZE = 16;
+
+	@Param({ "tiny", "mnist", "wide-deep" })
+	public String topology;
+
+	@Param({ "SIGMOID", "TANH", "QUICKTANH", "QUICKSIGMOID", "SIGMOID_TABLE", "TANH_TABLE", "LINEAR", "RELU" })
+	public String activation;
+
+	private Object network;
+
+	private double[] input;
+	private double[] expected;
+
+	private double[][] data;
+	private double[][] expectedVals;
+	// #END: Declarations
+
+
+	@Setup(Level.Trial)
+	public void setup() throws Throwable
+	{
+		int[] layers = Network.topology(topology);
+		Random random = new Random(42);
+
+		network = Network.create(activation, layers);
+
+		data = new double[TRAIN_ROWS][layers[0]];
+		expectedVals = new double[TRAIN_ROWS][layers[layers.length - 1]];
+		for (int r = 0; r < TRAIN_ROWS; r++)
+		{
+			for (int i = 0; i < data[r].length; i++)
+				data[r][i] = random.nextDouble();
+
+			expectedVals[r][r % expectedVals[r].length] = 1.0;
+		}
+
+		input = data[0];
+		expected = expectedVals[0];
+
+		// iRPROP works on the activations of the last feed-forward
+		Network.FEED_FORWARD.invokeExact(network, input);
+	}
+
+
+	// #BEGIN: Benchmarks
+
+	@Benchmark
+	public void feedForward() throws Throwable
+	{
+		Network.FEED_FORWARD.invokeExact(network, input);
+	}
+
+	@Benchmark
+	public double[] fetchResults() throws Throwable
+	{
+		return (double[])Network.FETCH_RESULTS.invokeExact(network);
+	}
+
+	@Benchmark
+	public void iRPROP() throws Throwable
+	{
+		Network.IRPROP.invokeExact(network, expected);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TRAIN_ROWS)
+	public void train() throws Throwable
+	{
+		Network.TRAIN.invokeExact(network, data, expectedVals, BATCH_SIZE);
+	}
+
+	// #END: Benchmarks
+}
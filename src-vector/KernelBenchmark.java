@@ -0,0 +1,142 @@
+import java.util.Random;
+
+
+/**
+ * Compares the scalar and Vector API kernels on the shapes of a 784-256-10 network: the forward matrix product, the delta
+ * back-propagation (axpy over weight rows) and the element-wise iRPROP+ step.
+ * <p>
+ * Run with <code>java --add-modules jdk.incubator.vector KernelBenchmark [seconds per kernel]</code>.
+ */
+public final class KernelBenchmark
+{
+
+	// #BEGIN: Declarations
+	private static final int INPUTS = 784;
+	private static final int NEURONS = 256;
+	private static final int ROWS = 128;
+	// #END: Declarations
+
+
+	private KernelBenchmark()
+	{
+	}
+
+
+	// #BEGIN: Public Functions
+
+	public static void main(final String[] args)
+	{
+		final double seconds = (args.length > 0 ? Double.parseDouble(args[0]) : 2.0);
+		final Kernels scalar = new ScalarKernels();
+		final Kernels vector = new VectorKernels();
+
+		Random random = new Random(42);
+		double[] input = fill(random, new double[ROWS * INPUTS]);
+		double[] weights = fill(random, new double[NEURONS * INPUTS]);
+		double[] deltas = fill(random, new double[NEURONS]);
+		double[] output = new double[ROWS * NEURONS];
+		double[] prevDeltas = new double[INPUTS];
+
+		System.out.println("Kernel backend in use: " + Kernels.INSTANCE.getClass().getSimpleName());
+		System.out.printf("%-28s %14s %14s %9s%n", "kernel", "scalar ns/op", "vector ns/op", "speedup");
+
+		report("forward, 1 pattern", seconds,
+				() -> scalar.multiply(input, 0, 1, INPUTS, weights, INPUTS, NEURONS, output, 0),
+				() -> vector.multiply(input, 0, 1, INPUTS, weights, INPUTS, NEURONS, output, 0));
+
+		report("forward, " + ROWS + " patterns", seconds,
+				() -> scalar.multiply(input, 0, ROWS, INPUTS, weights, INPUTS, NEURONS, output, 0),
+				() -> vector.multiply(input, 0, ROWS, INPUTS, weights, INPUTS, NEURONS, output, 0));
+
+		report("hidden deltas", seconds,
+				() -> backPropagate(scalar, weights, deltas, prevDeltas),
+				() -> backPropagate(vector, weights, deltas, prevDeltas));
+
+		final double[][] scalarState = rpropState(random);
+		final double[][] vectorState = copy(scalarState);
+		report("iRPROP+ step", seconds,
+				() -> rprop(scalar, scalarState),
+				() -> rprop(vector, vectorState));
+	}
+
+	// #END: Public Functions
+
+
+	// #BEGIN: Private Functions
+
+	private static void report(final String name, final double seconds, final Runnable scalar, final Runnable vector)
+	{
+		double s = time(scalar, seconds);
+		double v = time(vector, seconds);
+
+		System.out.printf("%-28s %14.0f %14.0f %8.2fx%n", name, s, v, s / v);
+	}
+
+	private static double time(final Runnable kernel, final double seconds)
+	{
+		// warm up for a third of the time, then measure
+		long warmup = System.nanoTime() + (long)(seconds * 1e9 / 3);
+		while (System.nanoTime() < warmup)
+			kernel.run();
+
+		long ops = 0;
+		long begin = System.nanoTime();
+		long end = begin + (long)(seconds * 1e9);
+		long now;
+		do
+		{
+			kernel.run();
+			ops++;
+			now = System.nanoTime();
+		}
+		while (now < end);
+
+		return (double)(now - begin) / ops;
+	}
+
+	private static void backPropagate(final Kernels kernels, final double[] weights, final double[] deltas, final double[] prevDeltas)
+	{
+		java.util.Arrays.fill(prevDeltas, Constants.DBL_ZERO);
+		for (int j = 0; j < NEURONS; j++)
+			kernels.axpy(deltas[j], weights, j * INPUTS, prevDeltas, 0, INPUTS);
+	}
+
+	private static void rprop(final Kernels kernels, final double[][] state)
+	{
+		// flip every gradient so each call exercises all three sign cases over the run
+		double[] g = state[2];
+		for (int k = 0; k < g.length; k += 3)
+			g[k] = -g[k];
+
+		kernels.rprop(state[0], state[1], state[2], state[3], state[4], 0, state[0].length,
+				true, Constants.POS_ETA, Constants.NEG_ETA, Constants.MIN_DELTA, Constants.MAX_DELTA);
+	}
+
+	private static double[][] rpropState(final Random random)
+	{
+		double[][] state = new double[5][];
+		for (int a = 0; a < state.length; a++)
+			state[a] = fill(random, new double[NEURONS * (INPUTS + 1)]);
+
+		return state;
+	}
+
+	private static double[][] copy(final double[][] arrays)
+	{
+		double[][] copy = new double[arrays.length][];
+		for (int a = 0; a < arrays.length; a++)
+			copy[a] = arrays[a].clone();
+
+		return copy;
+	}
+
+	private static double[] fill(final Random random, final double[] values)
+	{
+		for (int i = 0; i < values.length; i++)
+			values[i] = random.nextDouble() - 0.5;
+
+		return values;
+	}
+
+	// #END: Private Functions
+}
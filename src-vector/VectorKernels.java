@@ -0,0 +1,552 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * Kernels built on the JDK Vector API, using the widest species the CPU supports (4 doubles or 8 floats on AVX2, twice that on AVX-512).
+ * <p>
+ * Sums are accumulated per lane with fused multiply-adds and reduced at the end, so they differ from the scalar kernels in the
+ * last bits. A single pattern and a block of patterns still give identical results, as every sum is built in the same order.
+ * The iRPROP+ step is element-wise and matches the scalar kernel exactly for finite gradients.
+ * The 8-bit product widens bytes to ints lane for lane and is exact, like its scalar counterpart.
+ * <p>
+ * Compiled and loaded only with <code>--add-modules jdk.incubator.vector</code>; see {@link Kernels}.
+ */
+final class VectorKernels implements Kernels
+{
+
+	// #BEGIN: Declarations
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FSPECIES = FloatVector.SPECIES_PREFERRED;
+
+	// bytes are widened to ints lane for lane, so the byte species has as many lanes as the int species
+	private static final VectorSpecies<Integer> ISPECIES = IntVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Byte> BSPECIES = VectorSpecies.of(byte.class, VectorShape.forBitSize(ISPECIES.length() * Byte.SIZE));
+
+	private static final Kernels SCALAR = new ScalarKernels();
+	// #END: Declarations
+
+
+	// #BEGIN: Kernels
+
+	@Override
+	public void multiply(final double[] input, final int inOffset, final int rows, final int inputs, final double[] w, final int stride, final int neurons, final double[] output, final int outOffset)
+	{
+		final int bound = SPECIES.loopBound(inputs);
+
+		int r = 0;
+		for (; r + 2 <= rows; r += 2)
+		{
+			final int a0 = inOffset + r * inputs;
+			final int a1 = a0 + inputs;
+			final int o0 = outOffset + r * neurons;
+			final int o1 = o0 + neurons;
+
+			int j = 0;
+			int row = 0;
+			for (; j + 2 <= neurons; j += 2, row += 2 * stride)
+			{
+				final int w1 = row + stride;
+				DoubleVector s00 = DoubleVector.zero(SPECIES), s01 = DoubleVector.zero(SPECIES);
+				DoubleVector s10 = DoubleVector.zero(SPECIES), s11 = DoubleVector.zero(SPECIES);
+
+				int i = 0;
+				for (; i < bound; i += SPECIES.length())
+				{
+					final DoubleVector x0 = DoubleVector.fromArray(SPECIES, input, a0 + i);
+					final DoubleVector x1 = DoubleVector.fromArray(SPECIES, input, a1 + i);
+					final DoubleVector v0 = DoubleVector.fromArray(SPECIES, w, row + i);
+					final DoubleVector v1 = DoubleVector.fromArray(SPECIES, w, w1 + i);
+
+					s00 = x0.fma(v0, s00);
+					s01 = x0.fma(v1, s01);
+					s10 = x1.fma(v0, s10);
+					s11 = x1.fma(v1, s11);
+				}
+
+				double t00 = s00.reduceLanes(VectorOperators.ADD), t01 = s01.reduceLanes(VectorOperators.ADD);
+				double t10 = s10.reduceLanes(VectorOperators.ADD), t11 = s11.reduceLanes(VectorOperators.ADD);
+
+				for (; i < inputs; i++)
+				{
+					t00 += input[a0 + i] * w[row + i];
+					t01 += input[a0 + i] * w[w1 + i];
+					t10 += input[a1 + i] * w[row + i];
+					t11 += input[a1 + i] * w[w1 + i];
+				}
+
+				output[o0 + j] = t00;
+				output[o0 + j + 1] = t01;
+				output[o1 + j] = t10;
+				output[o1 + j + 1] = t11;
+			}
+
+			// odd neuron
+			for (; j < neurons; j++, row += stride)
+			{
+				output[o0 + j] = dot(input, a0, w, row, inputs, bound);
+				output[o1 + j] = dot(input, a1, w, row, inputs, bound);
+			}
+		}
+
+		// odd pattern
+		for (; r < rows; r++)
+			for (int j = 0, row = 0; j < neurons; j++, row += stride)
+				output[outOffset + r * neurons + j] = dot(input, inOffset + r * inputs, w, row, inputs, bound);
+	}
+
+	@Override
+	public void multiply(final double[] input, final int inOffset, final int rows, final int inputs, final ByteBuffer w, final int stride, final int neurons, final double[] output, final int outOffset)
+	{
+		final int bound = SPECIES.loopBound(inputs);
+
+		int r = 0;
+		for (; r + 2 <= rows; r += 2)
+		{
+			final int a0 = inOffset + r * inputs;
+			final int a1 = a0 + inputs;
+			final int o0 = outOffset + r * neurons;
+			final int o1 = o0 + neurons;
+
+			int j = 0;
+			int row = 0;
+			for (; j + 2 <= neurons; j += 2, row += 2 * stride)
+			{
+				final int w1 = row + stride;
+				DoubleVector s00 = DoubleVector.zero(SPECIES), s01 = DoubleVector.zero(SPECIES);
+				DoubleVector s10 = DoubleVector.zero(SPECIES), s11 = DoubleVector.zero(SPECIES);
+
+				int i = 0;
+				for (; i < bound; i += SPECIES.length())
+				{
+					final DoubleVector x0 = DoubleVector.fromArray(SPECIES, input, a0 + i);
+					final DoubleVector x1 = DoubleVector.fromArray(SPECIES, input, a1 + i);
+					final DoubleVector v0 = DoubleVector.fromByteBuffer(SPECIES, w, (row + i) << 3, ByteOrder.LITTLE_ENDIAN);
+					final DoubleVector v1 = DoubleVector.fromByteBuffer(SPECIES, w, (w1 + i) << 3, ByteOrder.LITTLE_ENDIAN);
+
+					s00 = x0.fma(v0, s00);
+					s01 = x0.fma(v1, s01);
+					s10 = x1.fma(v0, s10);
+					s11 = x1.fma(v1, s11);
+				}
+
+				double t00 = s00.reduceLanes(VectorOperators.ADD), t01 = s01.reduceLanes(VectorOperators.ADD);
+				double t10 = s10.reduceLanes(VectorOperators.ADD), t11 = s11.reduceLanes(VectorOperators.ADD);
+
+				for (; i < inputs; i++)
+				{
+					t00 += input[a0 + i] * w.getDouble((row + i) << 3);
+					t01 += input[a0 + i] * w.getDouble((w1 + i) << 3);
+					t10 += input[a1 + i] * w.getDouble((row + i) << 3);
+					t11 += input[a1 + i] * w.getDouble((w1 + i) << 3);
+				}
+
+				output[o0 + j] = t00;
+				output[o0 + j + 1] = t01;
+				output[o1 + j] = t10;
+				output[o1 + j + 1] = t11;
+			}
+
+			// odd neuron
+			for (; j < neurons; j++, row += stride)
+			{
+				output[o0 + j] = dot(input, a0, w, row, inputs, bound);
+				output[o1 + j] = dot(input, a1, w, row, inputs, bound);
+			}
+		}
+
+		// odd pattern
+		for (; r < rows; r++)
+			for (int j = 0, row = 0; j < neurons; j++, row += stride)
+				output[outOffset + r * neurons + j] = dot(input, inOffset + r * inputs, w, row, inputs, bound);
+	}
+
+	@Override
+	public void axpy(final double alpha, final double[] x, final int xOffset, final double[] y, final int yOffset, final int length)
+	{
+		final int bound = SPECIES.loopBound(length);
+		final DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+		{
+			final DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+			final DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+			vx.fma(va, vy).intoArray(y, yOffset + i);
+		}
+
+		for (; i < length; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	@Override
+	public void scale(final double alpha, final double[] x, final int xOffset, final double[] y, final int yOffset, final int length)
+	{
+		final int bound = SPECIES.loopBound(length);
+
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, x, xOffset + i).mul(alpha).intoArray(y, yOffset + i);
+
+		for (; i < length; i++)
+			y[yOffset + i] = alpha * x[xOffset + i];
+	}
+
+	@Override
+	public void affine(final double[] values, final int offset, final int rows, final double[] scale, final double[] shift)
+	{
+		final int width = scale.length;
+		final int bound = SPECIES.loopBound(width);
+
+		for (int r = 0, o = offset; r < rows; r++, o += width)
+		{
+			int c = 0;
+			for (; c < bound; c += SPECIES.length())
+				DoubleVector.fromArray(SPECIES, values, o + c)
+						.fma(DoubleVector.fromArray(SPECIES, scale, c), DoubleVector.fromArray(SPECIES, shift, c))
+						.intoArray(values, o + c);
+
+			for (; c < width; c++)
+				values[o + c] = Math.fma(values[o + c], scale[c], shift[c]);
+		}
+	}
+
+	@Override
+	public int rprop(final double[] w, final double[] lwc, final double[] g, final double[] lg, final double[] ld, final int from, final int to,
+			final boolean backtrack, final double posEta, final double negEta, final double minDelta, final double maxDelta)
+	{
+		final int bound = from + SPECIES.loopBound(to - from);
+		final DoubleVector zero = DoubleVector.zero(SPECIES);
+		final DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+		final DoubleVector minusOne = DoubleVector.broadcast(SPECIES, -1.0);
+
+		int flips = 0;
+		int k = from;
+		for (; k < bound; k += SPECIES.length())
+		{
+			final DoubleVector gradient = DoubleVector.fromArray(SPECIES, g, k);
+			final DoubleVector lastGradient = DoubleVector.fromArray(SPECIES, lg, k);
+			final DoubleVector learnDelta = DoubleVector.fromArray(SPECIES, ld, k);
+			final DoubleVector lastChange = DoubleVector.fromArray(SPECIES, lwc, k);
+
+			final DoubleVector product = gradient.mul(lastGradient);
+			final VectorMask<Double> same = product.compare(VectorOperators.GT, 0.0);
+			final VectorMask<Double> flipped = product.compare(VectorOperators.LT, 0.0);
+			flips += flipped.trueCount();
+
+			// sign of the gradient
+			final DoubleVector sign = zero.blend(one, gradient.compare(VectorOperators.GT, 0.0))
+					.blend(minusOne, gradient.compare(VectorOperators.LT, 0.0));
+
+			// grow the learn delta where the sign held, shrink it where the sign flipped
+			final DoubleVector newDelta = learnDelta
+					.blend(learnDelta.mul(posEta).min(maxDelta), same)
+					.blend(learnDelta.mul(negEta).max(minDelta), flipped);
+
+			// step along the gradient, except where the sign flipped: undo the last step if backtracking, otherwise stand still
+			final DoubleVector change = sign.mul(newDelta)
+					.blend(backtrack ? lastChange.neg() : zero, flipped);
+
+			newDelta.intoArray(ld, k);
+			gradient.blend(zero, flipped).intoArray(lg, k);
+			DoubleVector.fromArray(SPECIES, w, k).add(change).intoArray(w, k);
+			change.intoArray(lwc, k);
+		}
+
+		// tail
+		return flips + SCALAR.rprop(w, lwc, g, lg, ld, k, to, backtrack, posEta, negEta, minDelta, maxDelta);
+	}
+
+	// single precision
+
+	@Override
+	public void multiply(final float[] input, final int inOffset, final int rows, final int inputs, final float[] w, final int stride, final int neurons, final float[] output, final int outOffset)
+	{
+		final int bound = FSPECIES.loopBound(inputs);
+
+		int r = 0;
+		for (; r + 2 <= rows; r += 2)
+		{
+			final int a0 = inOffset + r * inputs;
+			final int a1 = a0 + inputs;
+			final int o0 = outOffset + r * neurons;
+			final int o1 = o0 + neurons;
+
+			int j = 0;
+			int row = 0;
+			for (; j + 2 <= neurons; j += 2, row += 2 * stride)
+			{
+				final int w1 = row + stride;
+				FloatVector s00 = FloatVector.zero(FSPECIES), s01 = FloatVector.zero(FSPECIES);
+				FloatVector s10 = FloatVector.zero(FSPECIES), s11 = FloatVector.zero(FSPECIES);
+
+				int i = 0;
+				for (; i < bound; i += FSPECIES.length())
+				{
+					final FloatVector x0 = FloatVector.fromArray(FSPECIES, input, a0 + i);
+					final FloatVector x1 = FloatVector.fromArray(FSPECIES, input, a1 + i);
+					final FloatVector v0 = FloatVector.fromArray(FSPECIES, w, row + i);
+					final FloatVector v1 = FloatVector.fromArray(FSPECIES, w, w1 + i);
+
+					s00 = x0.fma(v0, s00);
+					s01 = x0.fma(v1, s01);
+					s10 = x1.fma(v0, s10);
+					s11 = x1.fma(v1, s11);
+				}
+
+				float t00 = s00.reduceLanes(VectorOperators.ADD), t01 = s01.reduceLanes(VectorOperators.ADD);
+				float t10 = s10.reduceLanes(VectorOperators.ADD), t11 = s11.reduceLanes(VectorOperators.ADD);
+
+				for (; i < inputs; i++)
+				{
+					t00 += input[a0 + i] * w[row + i];
+					t01 += input[a0 + i] * w[w1 + i];
+					t10 += input[a1 + i] * w[row + i];
+					t11 += input[a1 + i] * w[w1 + i];
+				}
+
+				output[o0 + j] = t00;
+				output[o0 + j + 1] = t01;
+				output[o1 + j] = t10;
+				output[o1 + j + 1] = t11;
+			}
+
+			// odd neuron
+			for (; j < neurons; j++, row += stride)
+			{
+				output[o0 + j] = fdot(input, a0, w, row, inputs, bound);
+				output[o1 + j] = fdot(input, a1, w, row, inputs, bound);
+			}
+		}
+
+		// odd pattern
+		for (; r < rows; r++)
+			for (int j = 0, row = 0; j < neurons; j++, row += stride)
+				output[outOffset + r * neurons + j] = fdot(input, inOffset + r * inputs, w, row, inputs, bound);
+	}
+
+	@Override
+	public void axpy(final float alpha, final float[] x, final int xOffset, final float[] y, final int yOffset, final int length)
+	{
+		final int bound = FSPECIES.loopBound(length);
+		final FloatVector va = FloatVector.broadcast(FSPECIES, alpha);
+
+		int i = 0;
+		for (; i < bound; i += FSPECIES.length())
+		{
+			final FloatVector vx = FloatVector.fromArray(FSPECIES, x, xOffset + i);
+			final FloatVector vy = FloatVector.fromArray(FSPECIES, y, yOffset + i);
+			vx.fma(va, vy).intoArray(y, yOffset + i);
+		}
+
+		for (; i < length; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	@Override
+	public void scale(final float alpha, final float[] x, final int xOffset, final float[] y, final int yOffset, final int length)
+	{
+		final int bound = FSPECIES.loopBound(length);
+
+		int i = 0;
+		for (; i < bound; i += FSPECIES.length())
+			FloatVector.fromArray(FSPECIES, x, xOffset + i).mul(alpha).intoArray(y, yOffset + i);
+
+		for (; i < length; i++)
+			y[yOffset + i] = alpha * x[xOffset + i];
+	}
+
+	@Override
+	public int rprop(final float[] w, final float[] lwc, final float[] g, final float[] lg, final float[] ld, final int from, final int to,
+			final boolean backtrack, final float posEta, final float negEta, final float minDelta, final float maxDelta)
+	{
+		final int bound = from + FSPECIES.loopBound(to - from);
+		final FloatVector zero = FloatVector.zero(FSPECIES);
+		final FloatVector one = FloatVector.broadcast(FSPECIES, 1.0f);
+		final FloatVector minusOne = FloatVector.broadcast(FSPECIES, -1.0f);
+
+		int flips = 0;
+		int k = from;
+		for (; k < bound; k += FSPECIES.length())
+		{
+			final FloatVector gradient = FloatVector.fromArray(FSPECIES, g, k);
+			final FloatVector lastGradient = FloatVector.fromArray(FSPECIES, lg, k);
+			final FloatVector learnDelta = FloatVector.fromArray(FSPECIES, ld, k);
+			final FloatVector lastChange = FloatVector.fromArray(FSPECIES, lwc, k);
+
+			final FloatVector product = gradient.mul(lastGradient);
+			final VectorMask<Float> same = product.compare(VectorOperators.GT, 0.0f);
+			final VectorMask<Float> flipped = product.compare(VectorOperators.LT, 0.0f);
+			flips += flipped.trueCount();
+
+			// sign of the gradient
+			final FloatVector sign = zero.blend(one, gradient.compare(VectorOperators.GT, 0.0f))
+					.blend(minusOne, gradient.compare(VectorOperators.LT, 0.0f));
+
+			// grow the learn delta where the sign held, shrink it where the sign flipped
+			final FloatVector newDelta = learnDelta
+					.blend(learnDelta.mul(posEta).min(maxDelta), same)
+					.blend(learnDelta.mul(negEta).max(minDelta), flipped);
+
+			// step along the gradient, except where the sign flipped: undo the last step if backtracking, otherwise stand still
+			final FloatVector change = sign.mul(newDelta)
+					.blend(backtrack ? lastChange.neg() : zero, flipped);
+
+			newDelta.intoArray(ld, k);
+			gradient.blend(zero, flipped).intoArray(lg, k);
+			FloatVector.fromArray(FSPECIES, w, k).add(change).intoArray(w, k);
+			change.intoArray(lwc, k);
+		}
+
+		// tail
+		return flips + SCALAR.rprop(w, lwc, g, lg, ld, k, to, backtrack, posEta, negEta, minDelta, maxDelta);
+	}
+
+	// 8-bit integer
+
+	@Override
+	public void multiply(final byte[] input, final int rows, final int inputs, final byte[] w, final int neurons, final int[] output)
+	{
+		final int bound = ISPECIES.loopBound(inputs);
+
+		int r = 0;
+		for (; r + 2 <= rows; r += 2)
+		{
+			final int a0 = r * inputs;
+			final int a1 = a0 + inputs;
+			final int o0 = r * neurons;
+			final int o1 = o0 + neurons;
+
+			int j = 0;
+			for (; j + 2 <= neurons; j += 2)
+			{
+				final int w0 = j * inputs;
+				final int w1 = w0 + inputs;
+				IntVector s00 = IntVector.zero(ISPECIES), s01 = IntVector.zero(ISPECIES);
+				IntVector s10 = IntVector.zero(ISPECIES), s11 = IntVector.zero(ISPECIES);
+
+				int i = 0;
+				for (; i < bound; i += ISPECIES.length())
+				{
+					final IntVector x0 = widen(input, a0 + i);
+					final IntVector x1 = widen(input, a1 + i);
+					final IntVector v0 = widen(w, w0 + i);
+					final IntVector v1 = widen(w, w1 + i);
+
+					s00 = x0.mul(v0).add(s00);
+					s01 = x0.mul(v1).add(s01);
+					s10 = x1.mul(v0).add(s10);
+					s11 = x1.mul(v1).add(s11);
+				}
+
+				int t00 = s00.reduceLanes(VectorOperators.ADD), t01 = s01.reduceLanes(VectorOperators.ADD);
+				int t10 = s10.reduceLanes(VectorOperators.ADD), t11 = s11.reduceLanes(VectorOperators.ADD);
+
+				for (; i < inputs; i++)
+				{
+					t00 += input[a0 + i] * w[w0 + i];
+					t01 += input[a0 + i] * w[w1 + i];
+					t10 += input[a1 + i] * w[w0 + i];
+					t11 += input[a1 + i] * w[w1 + i];
+				}
+
+				output[o0 + j] = t00;
+				output[o0 + j + 1] = t01;
+				output[o1 + j] = t10;
+				output[o1 + j + 1] = t11;
+			}
+
+			// odd neuron
+			for (; j < neurons; j++)
+			{
+				output[o0 + j] = idot(input, a0, w, j * inputs, inputs, bound);
+				output[o1 + j] = idot(input, a1, w, j * inputs, inputs, bound);
+			}
+		}
+
+		// odd pattern
+		for (; r < rows; r++)
+			for (int j = 0; j < neurons; j++)
+				output[r * neurons + j] = idot(input, r * inputs, w, j * inputs, inputs, bound);
+	}
+
+	// #END: Kernels
+
+
+	// #BEGIN: Private Functions
+
+	private static double dot(final double[] x, final int xOffset, final double[] w, final int wOffset, final int length, final int bound)
+	{
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			acc = DoubleVector.fromArray(SPECIES, x, xOffset + i).fma(DoubleVector.fromArray(SPECIES, w, wOffset + i), acc);
+
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++)
+			sum += x[xOffset + i] * w[wOffset + i];
+
+		return sum;
+	}
+
+	private static double dot(final double[] x, final int xOffset, final ByteBuffer w, final int wOffset, final int length, final int bound)
+	{
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			acc = DoubleVector.fromArray(SPECIES, x, xOffset + i).fma(DoubleVector.fromByteBuffer(SPECIES, w, (wOffset + i) << 3, ByteOrder.LITTLE_ENDIAN), acc);
+
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++)
+			sum += x[xOffset + i] * w.getDouble((wOffset + i) << 3);
+
+		return sum;
+	}
+
+	private static float fdot(final float[] x, final int xOffset, final float[] w, final int wOffset, final int length, final int bound)
+	{
+		FloatVector acc = FloatVector.zero(FSPECIES);
+
+		int i = 0;
+		for (; i < bound; i += FSPECIES.length())
+			acc = FloatVector.fromArray(FSPECIES, x, xOffset + i).fma(FloatVector.fromArray(FSPECIES, w, wOffset + i), acc);
+
+		float sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++)
+			sum += x[xOffset + i] * w[wOffset + i];
+
+		return sum;
+	}
+
+	private static IntVector widen(final byte[] x, final int offset)
+	{
+		return (IntVector)ByteVector.fromArray(BSPECIES, x, offset).convertShape(VectorOperators.B2I, ISPECIES, 0);
+	}
+
+	private static int idot(final byte[] x, final int xOffset, final byte[] w, final int wOffset, final int length, final int bound)
+	{
+		IntVector acc = IntVector.zero(ISPECIES);
+		int i = 0;
+		for (; i < bound; i += ISPECIES.length())
+			acc = widen(x, xOffset + i).mul(widen(w, wOffset + i)).add(acc);
+
+		int sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++)
+			sum += x[xOffset + i] * w[wOffset + i];
+
+		return sum;
+	}
+
+	// #END: Private Functions
+}
@@ -2,7 +2,15 @@
 
 public enum ActivationFunction
 {
-	SIGMOID, TANH, QUICKTANH;
+	// QUICKTANH and QUICKSIGMOID use a rational approximation, the _TABLE functions an interpolated lookup table
+	SIGMOID, TANH, QUICKTANH, QUICKSIGMOID, SIGMOID_TABLE, TANH_TABLE, LINEAR, RELU;
+	
+	// |x| at which the [9/8] Pade approximant of tanh reaches 1
+	private static final double PADE_LIMIT = 6.2971;
+	
+	// domain and resolution of the lookup tables
+	private static final double TABLE_LIMIT = Double.parseDouble(System.getProperty("ann.activation.tableLimit", "16"));
+	private static final int TABLE_RESOLUTION = Integer.getInteger("ann.activation.tableResolution", 256);
 	
 	public static double calcActivation(final ActivationFunction func, final double x)
 	{
@@ -13,50 +21,127 @@ public enum ActivationFunction
 			case TANH:
 				return ActivationFunction.tanh(x);
 			case QUICKTANH:
-				return ActivationFunction.tanh(x);
+				return ActivationFunction.tanhQuick(x);
+			case QUICKSIGMOID:
+				return ActivationFunction.sigmoidQuick(x);
+			case SIGMOID_TABLE:
+				return Tables.SIGMOID.value(x);
+			case TANH_TABLE:
+				return Tables.TANH.value(x);
+			case LINEAR:
+				return x;
+			case RELU:
+				return ActivationFunction.relu(x);
 		}
 		
 		// fallback case
 		return sigmoid(x);
 	}
 	
+	/**
+	 * Evaluates the derivative of an activation function at a given x-value. Prefer {@link #calcDerivativeFromValue} when the
+	 * activated value is already known, as it needs no further evaluation of the function.
+	 * @param func the activation function.
+	 * @param x the value to evaluate the derivative at.
+	 * @return the derivative of the activation function at the given value.
+	 */
 	public static double calcDerivative(final ActivationFunction func, final double x)
+	{
+		return calcDerivativeFromValue(func, calcActivation(func, x));
+	}
+	
+	/**
+	 * Evaluates the derivative of an activation function from its activated value.
+	 * @param func the activation function.
+	 * @param y the activated value.
+	 * @return the derivative of the activation function where it takes the given value.
+	 */
+	public static double calcDerivativeFromValue(final ActivationFunction func, final double y)
 	{
 		switch (func)
 		{
 			case SIGMOID:
-				return ActivationFunction.sigmoidDerivative(x);
+			case QUICKSIGMOID:
+			case SIGMOID_TABLE:
+				return ActivationFunction.sigmoidDerivativeFromSigmoid(y);
 			case TANH:
-				return ActivationFunction.tanhDerivative(x);
 			case QUICKTANH:
-				return ActivationFunction.tanhDerivativeQuick(x);
+			case TANH_TABLE:
+				return ActivationFunction.tanhDerivativeFromTanh(y);
+			case LINEAR:
+				return 1.0;
+			case RELU:
+				return ActivationFunction.reluDerivativeFromRelu(y);
 		}
 		
 		// fallback case
-		return sigmoidDerivative(x);
+		return sigmoidDerivativeFromSigmoid(y);
+	}
+	
+	/**
+	 * Measures the largest absolute difference between an activation function and the exact function it approximates, by
+	 * sampling 2^20 evenly spaced points over [-32, 32]. Exact functions return 0.
+	 * @param func the activation function.
+	 * @return the measured maximum error.
+	 */
+	public static double maxError(final ActivationFunction func)
+	{
+		final ActivationFunction exact = exact(func);
+		if (exact == func)
+			return Constants.DBL_ZERO;
+		
+		final int samples = 1 << 20;
+		double max = Constants.DBL_ZERO;
+		for (int i = 0; i <= samples; i++)
+		{
+			double x = -32.0 + 64.0 * i / samples;
+			max = Math.max(max, Math.abs(calcActivation(func, x) - calcActivation(exact, x)));
+		}
+		
+		return max;
+	}
+	
+	/**
+	 * Returns the exact activation function approximated by a given one.
+	 * @param func the activation function.
+	 * @return SIGMOID or TANH for their approximations, otherwise func itself.
+	 */
+	public static ActivationFunction exact(final ActivationFunction func)
+	{
+		switch (func)
+		{
+			case QUICKSIGMOID:
+			case SIGMOID_TABLE:
+				return SIGMOID;
+			case QUICKTANH:
+			case TANH_TABLE:
+				return TANH;
+			default:
+				return func;
+		}
 	}
 	
 	
 	// #BEGIN: Natural Logarithmic Sigmoid
 	
 	/**
-	 * Evaluates the sigmoid function at a given x-value. The function will return constants for values not in range [-10, 10].
+	 * Evaluates the sigmoid function at a given x-value.
 	 * @param x the value to evaluate the sigmoid function at.
 	 * @return the result of the sigmoid function at the given value.
 	 */
-	private static double sigmoid(final double x)
+	static double sigmoid(final double x)
 	{
 		return 1 /  (1 + Math.exp(-x));
 	}
 	
 	/**
-	 * Evaluates the derivative of the sigmoid function at a given x-value.
-	 * @param x the value to evaluate the derivative at.
-	 * @return the result of the derivative of the sigmoid function at the given value.
+	 * Approximates the sigmoid function through its identity with tanh, sigmoid(x) = (1 + tanh(x / 2)) / 2.
+	 * @param x the value to evaluate the sigmoid function at.
+	 * @return the approximate result of the sigmoid function at the given value.
 	 */
-	private static double sigmoidDerivative(final double x)
+	static double sigmoidQuick(final double x)
 	{
-		return sigmoidDerivativeFromSigmoid(sigmoid(x));
+		return 0.5 + 0.5 * tanhQuick(0.5 * x);
 	}
 	
 	/**
@@ -64,31 +149,68 @@ public enum ActivationFunction
 	 * @param y the y-value of the sigmoid function to find derivative of.
 	 * @return the derivative of the sigmoid function at the given y-value.
 	 */
-	private static double sigmoidDerivativeFromSigmoid(final double y)
+	static double sigmoidDerivativeFromSigmoid(final double y)
 	{
 		return y * (1 - y);
 	}
 	
 	// #END: Natural Logarithmic Sigmoid
-
+	
 	
 	// #BEGIN: Hyperbolic Tangent
 	
-	private static double tanh(final double x)
+	static double tanh(final double x)
 	{
 		return Math.tanh(x);
 	}
 	
-	private static double tanhDerivative(final double x)
+	/**
+	 * Approximates tanh with the [9/8] Pade approximant from Lambert's continued fraction, which reaches 1 at |x| = 6.2971 and
+	 * is clamped there. The largest absolute error is below 7e-6.
+	 * @param x the value to evaluate tanh at.
+	 * @return the approximate result of tanh at the given value.
+	 */
+	static double tanhQuick(final double x)
 	{
-		double calcTanh = Math.tanh(x);
-		return 1 - (calcTanh * calcTanh);
+		if (x >= PADE_LIMIT)
+			return 1.0;
+		
+		if (x <= -PADE_LIMIT)
+			return -1.0;
+		
+		final double x2 = x * x;
+		
+		return x * (34459425 + x2 * (4729725 + x2 * (135135 + x2 * (990 + x2)))) /
+				(34459425 + x2 * (16216200 + x2 * (945945 + x2 * (13860 + x2 * 45))));
 	}
 	
-	private static double tanhDerivativeQuick(final double x)
+	static double tanhDerivativeFromTanh(final double y)
 	{
-		return 1 - (x * x);
+		return 1 - (y * y);
 	}
 	
 	// #END: Hyperbolic Tangent
+	
+	
+	// #BEGIN: Rectified Linear
+	
+	static double relu(final double x)
+	{
+		return (x > 0 ? x : Constants.DBL_ZERO);
+	}
+	
+	static double reluDerivativeFromRelu(final double y)
+	{
+		return (y > 0 ? 1.0 : Constants.DBL_ZERO);
+	}
+	
+	// #END: Rectified Linear
+	
+	
+	// lookup tables are only built once a table function is first used
+	static final class Tables
+	{
+		static final ActivationTable SIGMOID = new ActivationTable(ActivationFunction.SIGMOID, TABLE_LIMIT, TABLE_RESOLUTION);
+		static final ActivationTable TANH = new ActivationTable(ActivationFunction.TANH, TABLE_LIMIT, TABLE_RESOLUTION);
+	}
 }
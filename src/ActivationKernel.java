@@ -0,0 +1,418 @@
+/**
+ * The activation function of one layer, applied to the whole layer at once.
+ * <p>
+ * Every {@link ActivationFunction} has its own final implementation, created once per layer when a network is built, so each loop
+ * calls the function directly instead of dispatching through a <code>switch</code> per neuron. Training uses the fused form, which
+ * stores the derivative of every neuron alongside its value in the same pass.
+ */
+interface ActivationKernel
+{
+
+	/**
+	 * Returns the activation function implemented by this kernel.
+	 * @return the activation function.
+	 */
+	ActivationFunction getFunction();
+
+	/**
+	 * Activates a range of summations in place.
+	 * @param x the array holding the summations, which receive the activated values.
+	 * @param offset the index of the first summation.
+	 * @param length the number of summations.
+	 */
+	void activate(double[] x, int offset, int length);
+
+	/**
+	 * Activates the summations of a layer and calculates the derivative at each activated value.
+	 * @param summations the summations of the layer.
+	 * @param values the array receiving the activated values.
+	 * @param derivatives the array receiving the derivatives.
+	 * @param length the number of neurons.
+	 */
+	void activate(double[] summations, double[] values, double[] derivatives, int length);
+
+	// single precision
+
+	void activate(float[] x, int offset, int length);
+
+	void activate(float[] summations, float[] values, float[] derivatives, int length);
+
+
+	/**
+	 * Creates the kernels of the activation functions.
+	 */
+	final class Factory
+	{
+
+		private Factory()
+		{
+		}
+
+		/**
+		 * Creates the kernel of an activation function.
+		 * @param func the activation function.
+		 * @return the kernel.
+		 */
+		static ActivationKernel create(final ActivationFunction func)
+		{
+			switch (func)
+			{
+				case SIGMOID:
+					return new Sigmoid();
+				case TANH:
+					return new Tanh();
+				case QUICKTANH:
+					return new QuickTanh();
+				case QUICKSIGMOID:
+					return new QuickSigmoid();
+				case SIGMOID_TABLE:
+					return new Table(func, ActivationFunction.Tables.SIGMOID, true);
+				case TANH_TABLE:
+					return new Table(func, ActivationFunction.Tables.TANH, false);
+				case LINEAR:
+					return new Linear();
+				case RELU:
+					return new Relu();
+			}
+
+			// fallback case
+			return new Sigmoid();
+		}
+
+		/**
+		 * Creates the kernels of a list of activation functions.
+		 * @param funcs the activation functions.
+		 * @return the kernels, in the same order.
+		 */
+		static ActivationKernel[] create(final ActivationFunction[] funcs)
+		{
+			ActivationKernel[] kernels = new ActivationKernel[funcs.length];
+			for (int k = 0; k < funcs.length; k++)
+				kernels[k] = create(funcs[k]);
+
+			return kernels;
+		}
+	}
+
+
+	// #BEGIN: Kernels
+
+	final class Sigmoid implements ActivationKernel
+	{
+		@Override
+		public ActivationFunction getFunction()
+		{
+			return ActivationFunction.SIGMOID;
+		}
+
+		@Override
+		public void activate(final double[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = ActivationFunction.sigmoid(x[i]);
+		}
+
+		@Override
+		public void activate(final double[] summations, final double[] values, final double[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final double y = ActivationFunction.sigmoid(summations[i]);
+				values[i] = y;
+				derivatives[i] = y * (1 - y);
+			}
+		}
+
+		@Override
+		public void activate(final float[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = (float)ActivationFunction.sigmoid(x[i]);
+		}
+
+		@Override
+		public void activate(final float[] summations, final float[] values, final float[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final float y = (float)ActivationFunction.sigmoid(summations[i]);
+				values[i] = y;
+				derivatives[i] = y * (1 - y);
+			}
+		}
+	}
+
+	final class QuickSigmoid implements ActivationKernel
+	{
+		@Override
+		public ActivationFunction getFunction()
+		{
+			return ActivationFunction.QUICKSIGMOID;
+		}
+
+		@Override
+		public void activate(final double[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = ActivationFunction.sigmoidQuick(x[i]);
+		}
+
+		@Override
+		public void activate(final double[] summations, final double[] values, final double[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final double y = ActivationFunction.sigmoidQuick(summations[i]);
+				values[i] = y;
+				derivatives[i] = y * (1 - y);
+			}
+		}
+
+		@Override
+		public void activate(final float[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = (float)ActivationFunction.sigmoidQuick(x[i]);
+		}
+
+		@Override
+		public void activate(final float[] summations, final float[] values, final float[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final float y = (float)ActivationFunction.sigmoidQuick(summations[i]);
+				values[i] = y;
+				derivatives[i] = y * (1 - y);
+			}
+		}
+	}
+
+	final class Tanh implements ActivationKernel
+	{
+		@Override
+		public ActivationFunction getFunction()
+		{
+			return ActivationFunction.TANH;
+		}
+
+		@Override
+		public void activate(final double[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = ActivationFunction.tanh(x[i]);
+		}
+
+		@Override
+		public void activate(final double[] summations, final double[] values, final double[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final double y = ActivationFunction.tanh(summations[i]);
+				values[i] = y;
+				derivatives[i] = 1 - y * y;
+			}
+		}
+
+		@Override
+		public void activate(final float[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = (float)ActivationFunction.tanh(x[i]);
+		}
+
+		@Override
+		public void activate(final float[] summations, final float[] values, final float[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final float y = (float)ActivationFunction.tanh(summations[i]);
+				values[i] = y;
+				derivatives[i] = 1 - y * y;
+			}
+		}
+	}
+
+	final class QuickTanh implements ActivationKernel
+	{
+		@Override
+		public ActivationFunction getFunction()
+		{
+			return ActivationFunction.QUICKTANH;
+		}
+
+		@Override
+		public void activate(final double[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = ActivationFunction.tanhQuick(x[i]);
+		}
+
+		@Override
+		public void activate(final double[] summations, final double[] values, final double[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final double y = ActivationFunction.tanhQuick(summations[i]);
+				values[i] = y;
+				derivatives[i] = 1 - y * y;
+			}
+		}
+
+		@Override
+		public void activate(final float[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = (float)ActivationFunction.tanhQuick(x[i]);
+		}
+
+		@Override
+		public void activate(final float[] summations, final float[] values, final float[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final float y = (float)ActivationFunction.tanhQuick(summations[i]);
+				values[i] = y;
+				derivatives[i] = 1 - y * y;
+			}
+		}
+	}
+
+	/**
+	 * A lookup table of a sigmoid (derivative <code>y(1 - y)</code>) or tanh (derivative <code>1 - y^2</code>) function.
+	 */
+	final class Table implements ActivationKernel
+	{
+		private final ActivationFunction func;
+		private final ActivationTable table;
+		private final boolean sigmoid;
+
+		Table(final ActivationFunction func, final ActivationTable table, final boolean sigmoid)
+		{
+			this.func = func;
+			this.table = table;
+			this.sigmoid = sigmoid;
+		}
+
+		@Override
+		public ActivationFunction getFunction()
+		{
+			return func;
+		}
+
+		@Override
+		public void activate(final double[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = table.value(x[i]);
+		}
+
+		@Override
+		public void activate(final double[] summations, final double[] values, final double[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final double y = table.value(summations[i]);
+				values[i] = y;
+				derivatives[i] = (sigmoid ? y * (1 - y) : 1 - y * y);
+			}
+		}
+
+		@Override
+		public void activate(final float[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = (float)table.value(x[i]);
+		}
+
+		@Override
+		public void activate(final float[] summations, final float[] values, final float[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final float y = (float)table.value(summations[i]);
+				values[i] = y;
+				derivatives[i] = (sigmoid ? y * (1 - y) : 1 - y * y);
+			}
+		}
+	}
+
+	final class Linear implements ActivationKernel
+	{
+		@Override
+		public ActivationFunction getFunction()
+		{
+			return ActivationFunction.LINEAR;
+		}
+
+		@Override
+		public void activate(final double[] x, final int offset, final int length)
+		{
+		}
+
+		@Override
+		public void activate(final double[] summations, final double[] values, final double[] derivatives, final int length)
+		{
+			System.arraycopy(summations, 0, values, 0, length);
+			java.util.Arrays.fill(derivatives, 0, length, 1.0);
+		}
+
+		@Override
+		public void activate(final float[] x, final int offset, final int length)
+		{
+		}
+
+		@Override
+		public void activate(final float[] summations, final float[] values, final float[] derivatives, final int length)
+		{
+			System.arraycopy(summations, 0, values, 0, length);
+			java.util.Arrays.fill(derivatives, 0, length, 1.0f);
+		}
+	}
+
+	final class Relu implements ActivationKernel
+	{
+		@Override
+		public ActivationFunction getFunction()
+		{
+			return ActivationFunction.RELU;
+		}
+
+		@Override
+		public void activate(final double[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = ActivationFunction.relu(x[i]);
+		}
+
+		@Override
+		public void activate(final double[] summations, final double[] values, final double[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final double x = summations[i];
+				values[i] = (x > 0 ? x : Constants.DBL_ZERO);
+				derivatives[i] = (x > 0 ? 1.0 : Constants.DBL_ZERO);
+			}
+		}
+
+		@Override
+		public void activate(final float[] x, final int offset, final int length)
+		{
+			for (int i = offset; i < offset + length; i++)
+				x[i] = (x[i] > 0 ? x[i] : Constants.FLT_ZERO);
+		}
+
+		@Override
+		public void activate(final float[] summations, final float[] values, final float[] derivatives, final int length)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				final float x = summations[i];
+				values[i] = (x > 0 ? x : Constants.FLT_ZERO);
+				derivatives[i] = (x > 0 ? 1.0f : Constants.FLT_ZERO);
+			}
+		}
+	}
+
+	// #END: Kernels
+}
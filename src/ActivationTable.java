@@ -0,0 +1,125 @@
+
+/**
+ * A linearly interpolated lookup table of an activation function over [-limit, limit], with <code>resolution</code> entries per
+ * unit of x. Outside of the domain the value at the nearest end of the table is returned.
+ * <p>
+ * Interpolation error is bounded by <code>h^2 / 8 * max|f''|</code> with <code>h = 1 / resolution</code>, and the error outside of
+ * the domain by the distance of the function from its asymptote at the limit; {@link #measureMaxError()} measures the combination.
+ */
+public final class ActivationTable
+{
+
+	// #BEGIN: Declarations
+	private final ActivationFunction func;
+	private final double limit;
+	private final int resolution;
+
+	// values at -limit + k / resolution, with one extra copy of the last value so interpolation never reads past the end
+	private final double[] table;
+	private final double last;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a lookup table.
+	 * @param func the activation function to tabulate.
+	 * @param limit the half-width of the tabulated domain.
+	 * @param resolution the number of table entries per unit of x.
+	 * @throws IllegalArgumentException if limit is not positive or resolution is less than 1.
+	 */
+	public ActivationTable(final ActivationFunction func, final double limit, final int resolution) throws IllegalArgumentException
+	{
+		if (!(limit > 0))
+			throw new IllegalArgumentException("Table limit must be positive.");
+
+		if (resolution < 1)
+			throw new IllegalArgumentException("Table resolution must be at least 1.");
+
+		this.func = func;
+		this.limit = limit;
+		this.resolution = resolution;
+
+		final int entries = (int)Math.ceil(2 * limit * resolution) + 1;
+
+		this.table = new double[entries + 1];
+		for (int k = 0; k < entries; k++)
+			table[k] = ActivationFunction.calcActivation(func, -limit + (double)k / resolution);
+		table[entries] = table[entries - 1];
+
+		this.last = (entries - 1);
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Public Functions
+
+	/**
+	 * Evaluates the table at a given x-value.
+	 * @param x the value to look up.
+	 * @return the interpolated value of the function, or NaN if x is NaN.
+	 */
+	public double value(final double x)
+	{
+		// NaN passes through as it does through the function itself, rather than reading as the lower asymptote
+		if (Double.isNaN(x))
+			return x;
+
+		double position = (x + limit) * resolution;
+
+		if (position <= 0)
+			return table[0];
+
+		if (position >= last)
+			return table[table.length - 1];
+
+		int k = (int)position;
+		double fraction = position - k;
+
+		return table[k] + (table[k + 1] - table[k]) * fraction;
+	}
+
+	/**
+	 * Measures the largest absolute difference between the table and the function it tabulates, sampling 16 points per table
+	 * interval over the domain and the function's approach to its asymptotes beyond it.
+	 * @return the measured maximum error.
+	 */
+	public double measureMaxError()
+	{
+		final int perUnit = 16 * resolution;
+		final double span = 2 * limit + 32;
+
+		double max = Constants.DBL_ZERO;
+		for (long i = 0, n = (long)Math.ceil(span * perUnit); i <= n; i++)
+		{
+			double x = -limit - 16 + (double)i / perUnit;
+			max = Math.max(max, Math.abs(value(x) - ActivationFunction.calcActivation(func, x)));
+		}
+
+		return max;
+	}
+
+	// #END: Public Functions
+
+
+	// #BEGIN: Fields
+
+	public ActivationFunction getFunction()
+	{
+		return func;
+	}
+
+	public double getLimit()
+	{
+		return limit;
+	}
+
+	public int getResolution()
+	{
+		return resolution;
+	}
+
+	// #END: Fields
+}
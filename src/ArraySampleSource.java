@@ -0,0 +1,80 @@
+
+/**
+ * A {@link SampleSource} over patterns held in memory as one array per pattern.
+ */
+public class ArraySampleSource implements SampleSource
+{
+
+	// #BEGIN: Declarations
+	private final double[][] data;
+	private final double[][] expectedVals;
+	private final int rows;
+
+	private int next = 0;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a source reading given patterns in order. The arrays are not copied.
+	 * @param data the input values of each pattern.
+	 * @param expectedVals the expected output values of each pattern.
+	 * @throws IllegalArgumentException if there are no patterns.
+	 */
+	public ArraySampleSource(final double[][] data, final double[][] expectedVals) throws IllegalArgumentException
+	{
+		this.rows = Math.min(data.length, expectedVals.length);
+		if (rows == 0)
+			throw new IllegalArgumentException("Cannot initialize ArraySampleSource without patterns.");
+
+		this.data = data;
+		this.expectedVals = expectedVals;
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Sample Source
+
+	@Override
+	public int read(final double[] inputs, final double[] expected, final int count)
+	{
+		final int in = data[0].length;
+		final int out = expectedVals[0].length;
+
+		int read = Math.min(count, rows - next);
+		for (int r = 0; r < read; r++, next++)
+		{
+			System.arraycopy(data[next], 0, inputs, r * in, in);
+			System.arraycopy(expectedVals[next], 0, expected, r * out, out);
+		}
+
+		return read;
+	}
+
+	@Override
+	public void rewind()
+	{
+		next = 0;
+	}
+
+	@Override
+	public void close()
+	{
+	}
+
+	@Override
+	public int getInputCount()
+	{
+		return data[0].length;
+	}
+
+	@Override
+	public int getOutputCount()
+	{
+		return expectedVals[0].length;
+	}
+
+	// #END: Sample Source
+}
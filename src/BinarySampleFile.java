@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+
+/**
+ * A {@link SampleSource} reading a flat binary file of patterns through a {@link FileChannel}.
+ * <p>
+ * The file starts with a 32-byte little-endian header: magic number, format version, number of inputs, number of outputs,
+ * bytes per value (8 for double, 4 for float), padding and the number of patterns. It is followed by one row per pattern
+ * holding its input values and then its expected values.
+ * <p>
+ * Rows are read a block at a time into one reused buffer, so memory use depends only on the block size. With a seed, every pass
+ * visits the blocks in a new random order and the rows of each block in a new random order.
+ */
+public class BinarySampleFile implements SampleSource
+{
+
+	// #BEGIN: Declarations
+	// "ANNS"
+	private static final int MAGIC = 0x414E4E53;
+	private static final int VERSION = 1;
+	private static final int HEADER = 32;
+
+	// number of rows read at a time by default
+	public static final int DEFAULT_BLOCK_ROWS = 4096;
+
+	private final FileChannel channel;
+
+	private final int inputs;
+	private final int outputs;
+	private final int valueBytes;
+	private final int rowBytes;
+	private final long rows;
+
+	private final int blockRows;
+	private final int[] blockOrder;
+	private final int[] rowOrder;
+	private final Random random;
+
+	private final ByteBuffer block;
+	private final DoubleBuffer doubles;
+	private final FloatBuffer floats;
+
+	// position in the current pass
+	private int nextBlock = 0;
+	private int blockRow = 0;
+	private int loadedRows = 0;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Opens a sample file for sequential passes.
+	 * @param path the file to read.
+	 * @throws IOException if the file cannot be opened.
+	 * @throws IllegalArgumentException if the file is not a sample file of a supported version.
+	 */
+	public BinarySampleFile(final Path path) throws IOException, IllegalArgumentException
+	{
+		this(path, DEFAULT_BLOCK_ROWS, null);
+	}
+
+	/**
+	 * Opens a sample file whose passes are shuffled by blocks.
+	 * @param path the file to read.
+	 * @param blockRows the number of rows read and shuffled together.
+	 * @param seed the seed of the shuffle, or null to read the rows in file order.
+	 * @throws IOException if the file cannot be opened.
+	 * @throws IllegalArgumentException if blockRows is less than 1 or the file is not a sample file of a supported version.
+	 */
+	public BinarySampleFile(final Path path, final int blockRows, final Long seed) throws IOException, IllegalArgumentException
+	{
+		if (blockRows < 1)
+			throw new IllegalArgumentException("Block size must be at least 1 row.");
+
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		try
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(header, 0);
+			header.flip();
+
+			if (header.getInt() != MAGIC)
+				throw new IllegalArgumentException("Not a sample file.");
+
+			int version = header.getInt();
+			if (version < 1 || version > VERSION)
+				throw new IllegalArgumentException("Unsupported sample file version " + version + ".");
+
+			this.inputs = header.getInt();
+			this.outputs = header.getInt();
+			this.valueBytes = header.getInt();
+			header.getInt();
+			this.rows = header.getLong();
+
+			if (valueBytes != 8 && valueBytes != 4)
+				throw new IllegalArgumentException("Unsupported value size of " + valueBytes + " bytes.");
+
+			this.rowBytes = (inputs + outputs) * valueBytes;
+			if (channel.size() < HEADER + rows * rowBytes)
+				throw new IllegalArgumentException("Sample file is truncated.");
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+
+		this.blockRows = (int)Math.min(blockRows, Math.max(rows, 1));
+		this.blockOrder = new int[(int)((rows + this.blockRows - 1) / this.blockRows)];
+		this.rowOrder = new int[this.blockRows];
+		this.random = (seed != null ? new Random(seed) : null);
+
+		for (int b = 0; b < blockOrder.length; b++)
+			blockOrder[b] = b;
+
+		this.block = ByteBuffer.allocateDirect(this.blockRows * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+		this.doubles = block.asDoubleBuffer();
+		this.floats = block.asFloatBuffer();
+
+		rewind();
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Sample Source
+
+	@Override
+	public int read(final double[] inputVals, final double[] expectedVals, final int count) throws IOException
+	{
+		int read = 0;
+
+		while (read < count)
+		{
+			if (blockRow == loadedRows)
+			{
+				if (nextBlock == blockOrder.length)
+					break;
+
+				load(blockOrder[nextBlock++]);
+			}
+
+			int values = rowOrder[blockRow++] * (inputs + outputs);
+			copy(values, inputVals, read * inputs, inputs);
+			copy(values + inputs, expectedVals, read * outputs, outputs);
+
+			read++;
+		}
+
+		return read;
+	}
+
+	@Override
+	public void rewind()
+	{
+		nextBlock = 0;
+		blockRow = 0;
+		loadedRows = 0;
+
+		if (random != null)
+			shuffle(blockOrder, blockOrder.length);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	// #END: Sample Source
+
+
+	// #BEGIN: Writing
+
+	/**
+	 * Writes patterns held in memory to a sample file.
+	 * @param path the file to write, replacing any existing content.
+	 * @param data the input values of each pattern.
+	 * @param expectedVals the expected output values of each pattern.
+	 * @param singlePrecision the boolean determining whether values are stored as floats instead of doubles.
+	 * @throws IOException if the file cannot be written.
+	 * @throws IllegalArgumentException if there are no patterns or the patterns differ in size.
+	 */
+	public static void write(final Path path, final double[][] data, final double[][] expectedVals, final boolean singlePrecision) throws IOException, IllegalArgumentException
+	{
+		final int rows = Math.min(data.length, expectedVals.length);
+		if (rows == 0)
+			throw new IllegalArgumentException("Cannot write a sample file without patterns.");
+
+		final int in = data[0].length;
+		final int out = expectedVals[0].length;
+
+		try (FileChannel target = create(path, in, out, singlePrecision))
+		{
+			ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_BLOCK_ROWS * (in + out) * 8).order(ByteOrder.LITTLE_ENDIAN);
+
+			for (int r = 0; r < rows; r++)
+			{
+				if (data[r].length != in || expectedVals[r].length != out)
+					throw new IllegalArgumentException("Pattern " + r + " does not match the size of the first pattern.");
+
+				if (buffer.remaining() < (in + out) * 8)
+					flush(buffer, target);
+
+				put(buffer, data[r], 0, in, singlePrecision);
+				put(buffer, expectedVals[r], 0, out, singlePrecision);
+			}
+
+			flush(buffer, target);
+			finish(target, rows);
+		}
+	}
+
+	/**
+	 * Writes every pattern of one pass of a sample source to a sample file, using a fixed amount of memory.
+	 * @param path the file to write, replacing any existing content.
+	 * @param source the source of the patterns, read from its current position to the end of the pass.
+	 * @param singlePrecision the boolean determining whether values are stored as floats instead of doubles.
+	 * @throws IOException if the source cannot be read or the file cannot be written.
+	 */
+	public static void write(final Path path, final SampleSource source, final boolean singlePrecision) throws IOException
+	{
+		final int in = source.getInputCount();
+		final int out = source.getOutputCount();
+
+		double[] inputVals = new double[DEFAULT_BLOCK_ROWS * in];
+		double[] expectedVals = new double[DEFAULT_BLOCK_ROWS * out];
+
+		try (FileChannel target = create(path, in, out, singlePrecision))
+		{
+			ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_BLOCK_ROWS * (in + out) * 8).order(ByteOrder.LITTLE_ENDIAN);
+			long rows = 0;
+
+			int read;
+			while ((read = source.read(inputVals, expectedVals, DEFAULT_BLOCK_ROWS)) > 0)
+			{
+				for (int r = 0; r < read; r++)
+				{
+					put(buffer, inputVals, r * in, in, singlePrecision);
+					put(buffer, expectedVals, r * out, out, singlePrecision);
+				}
+
+				flush(buffer, target);
+				rows += read;
+			}
+
+			finish(target, rows);
+		}
+	}
+
+	// #END: Writing
+
+
+	// #BEGIN: Private Functions
+
+	private void load(final int index) throws IOException
+	{
+		long first = (long)index * blockRows;
+		loadedRows = (int)Math.min(blockRows, rows - first);
+		blockRow = 0;
+
+		block.clear().limit(loadedRows * rowBytes);
+		readFully(block, HEADER + first * rowBytes);
+
+		for (int r = 0; r < loadedRows; r++)
+			rowOrder[r] = r;
+
+		if (random != null)
+			shuffle(rowOrder, loadedRows);
+	}
+
+	private void copy(final int from, final double[] to, final int offset, final int count)
+	{
+		if (valueBytes == 8)
+		{
+			doubles.get(from, to, offset, count);
+		}
+		else
+		{
+			for (int i = 0; i < count; i++)
+				to[offset + i] = floats.get(from + i);
+		}
+	}
+
+	private void shuffle(final int[] order, final int length)
+	{
+		for (int i = length - 1; i > 0; i--)
+		{
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+	}
+
+	private void readFully(final ByteBuffer buffer, final long position) throws IOException
+	{
+		long at = position;
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, at);
+			if (read < 0)
+				throw new IOException("Unexpected end of sample file.");
+
+			at += read;
+		}
+	}
+
+	private static FileChannel create(final Path path, final int in, final int out, final boolean singlePrecision) throws IOException
+	{
+		FileChannel target = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+		// the row count is filled in by finish once every row has been written
+		ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(in).putInt(out).putInt(singlePrecision ? 4 : 8).putInt(0).putLong(0);
+		header.flip();
+		while (header.hasRemaining())
+			target.write(header);
+
+		return target;
+	}
+
+	private static void finish(final FileChannel target, final long rows) throws IOException
+	{
+		ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		count.putLong(rows).flip();
+		while (count.hasRemaining())
+			target.write(count, HEADER - 8 + count.position());
+	}
+
+	private static void put(final ByteBuffer buffer, final double[] values, final int offset, final int count, final boolean singlePrecision)
+	{
+		for (int i = offset; i < offset + count; i++)
+		{
+			if (singlePrecision)
+				buffer.putFloat((float)values[i]);
+			else
+				buffer.putDouble(values[i]);
+		}
+	}
+
+	private static void flush(final ByteBuffer buffer, final FileChannel target) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			target.write(buffer);
+		buffer.clear();
+	}
+
+	// #END: Private Functions
+
+
+	// #BEGIN: Fields
+
+	@Override
+	public int getInputCount()
+	{
+		return inputs;
+	}
+
+	@Override
+	public int getOutputCount()
+	{
+		return outputs;
+	}
+
+	/**
+	 * Returns the number of patterns in the file.
+	 * @return the number of patterns.
+	 */
+	public long getRows()
+	{
+		return rows;
+	}
+
+	// #END: Fields
+}
@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Writes the full training state of a {@link NeuralNetwork} to a checkpoint file in the background and restores it on restart.
+ * <p>
+ * A checkpoint holds the number of completed steps followed by the network in the format of {@link ModelFile}, including every
+ * weight, gradient, last gradient, learn delta and last weight change, so a resumed run follows the same iRPROP+ trajectory as an
+ * uninterrupted one. {@link #checkpoint(NeuralNetwork, long)} copies the network into a snapshot on the calling thread and
+ * returns while a background thread writes the snapshot to a temporary file and atomically moves it over the checkpoint, so a
+ * crash mid-write leaves the previous checkpoint intact.
+ * <pre>
+ * Checkpointer checkpointer = new Checkpointer(path);
+ * for (long epoch = checkpointer.restore(network); epoch &lt; epochs; epoch++)
+ * {
+ *     network.train(data, expected, batchSize);
+ *     checkpointer.checkpoint(network, epoch + 1);
+ * }
+ * checkpointer.close();
+ * </pre>
+ */
+public final class Checkpointer implements AutoCloseable
+{
+
+	// #BEGIN: Declarations
+	// "CKPT"
+	private static final int MAGIC = 0x434B5054;
+	private static final int VERSION = 1;
+
+	// magic, version, step
+	private static final int HEADER = 4 + 4 + 8;
+
+	private final Path path;
+	private final Path temporary;
+	private final ExecutorService writer;
+
+	// the copy being written; only touched by the training thread while no write is pending
+	private NeuralNetwork snapshot = null;
+	private Future<?> pending = null;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a checkpointer writing to a given file from its own background thread.
+	 * @param path the checkpoint file.
+	 */
+	public Checkpointer(final Path path)
+	{
+		this.path = path;
+		this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+		this.writer = Executors.newSingleThreadExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "checkpoint-writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Checkpointing
+
+	/**
+	 * Snapshots the training state of a neural network and writes it in the background. If the previous checkpoint is still
+	 * being written this waits for it first, so at most one snapshot is held in memory.
+	 * @param network the neural network to checkpoint.
+	 * @param step the number of completed training steps (epochs or batches) to store with the checkpoint.
+	 * @throws IOException if the previous checkpoint could not be written.
+	 */
+	public void checkpoint(final NeuralNetwork network, final long step) throws IOException
+	{
+		await();
+
+		if (snapshot == null || !java.util.Arrays.equals(snapshot.getTopology(), network.getTopology()) || snapshot.isUseBias() != network.isUseBias())
+			snapshot = new NeuralNetwork(network);
+		else
+			snapshot.copyFrom(network);
+
+		final NeuralNetwork state = snapshot;
+		pending = writer.submit(() ->
+		{
+			write(state, step);
+			return null;
+		});
+	}
+
+	/**
+	 * Waits until the last checkpoint has been written.
+	 * @throws IOException if the checkpoint could not be written.
+	 */
+	public void await() throws IOException
+	{
+		if (pending == null)
+			return;
+
+		try
+		{
+			pending.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while writing a checkpoint.", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+
+			throw new IllegalStateException(e.getCause());
+		}
+		finally
+		{
+			pending = null;
+		}
+	}
+
+	/**
+	 * Restores the training state of the last checkpoint into a neural network, if a checkpoint exists.
+	 * @param network the neural network to restore, which must have the topology of the checkpointed network.
+	 * @return the number of completed steps stored with the checkpoint, or 0 if there is no checkpoint.
+	 * @throws IOException if the checkpoint cannot be read.
+	 * @throws IllegalArgumentException if the file is not a checkpoint or its topology does not match.
+	 */
+	public long restore(final NeuralNetwork network) throws IOException, IllegalArgumentException
+	{
+		if (!Files.exists(path))
+			return 0;
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			ModelInput in = new ModelInput(channel, 0);
+
+			if (in.size() < HEADER || in.getInt() != MAGIC)
+				throw new IllegalArgumentException("Not a checkpoint file.");
+
+			int version = in.getInt();
+			if (version < 1 || version > VERSION)
+				throw new IllegalArgumentException("Unsupported checkpoint version " + version + ".");
+
+			long step = in.getLong();
+			network.copyFrom(ModelFile.read(in));
+
+			return step;
+		}
+	}
+
+	/**
+	 * Waits for the last checkpoint to be written and stops the background thread.
+	 * @throws IOException if the last checkpoint could not be written.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			await();
+		}
+		finally
+		{
+			writer.shutdown();
+		}
+	}
+
+	// #END: Checkpointing
+
+
+	// #BEGIN: Private Functions
+
+	private void write(final NeuralNetwork state, final long step) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putLong(step).flip();
+			while (header.hasRemaining())
+				channel.write(header);
+
+			ModelFile.write(state, channel);
+			channel.force(true);
+		}
+
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// #END: Private Functions
+}
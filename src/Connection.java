@@ -7,13 +7,9 @@ class Connection
 	private Neuron fromNeuron;
 	private Neuron toNeuron;
 	
-	private double weight;
-	private double lastWeightChange = Constants.DBL_ZERO;
-	
-	private double gradient = Constants.DBL_ZERO;
-	private double lastGradient = Constants.DBL_ZERO;
-	
-	private double learnDelta = Constants.INIT_LEARN_DELTA;
+	// weight and iRPROP+ state live in a cell of a (possibly shared) DenseLayer
+	private final DenseLayer storage;
+	private final int index;
 	// #END: Declarations
 	
 	
@@ -21,23 +17,38 @@ class Connection
 	
 	public static double randomWeight()
 	{
-		return new java.util.Random().nextDouble();
+		return java.util.concurrent.ThreadLocalRandom.current().nextDouble();
 	}
 	
 	public Connection()
 	{
-		this.weight = Connection.randomWeight();
+		this(new DenseLayer(1, 1, false), 0);
+		
+		this.setWeight(Connection.randomWeight());
 	}
 	
 	public Connection(final double weight, final double lastWeightChange, final double gradient, final double lastGradient, final double learnDelta)
 	{
-		this.weight = weight;
-		this.lastWeightChange = lastWeightChange;
+		this(new DenseLayer(1, 1, false), 0);
+		
+		this.setWeight(weight);
+		this.setLastWeightChange(lastWeightChange);
 		
-		this.gradient = gradient;
-		this.lastGradient = lastGradient;
+		this.setGradient(gradient);
+		this.setLastGradient(lastGradient);
 		
-		this.learnDelta = learnDelta;
+		this.setLearnDelta(learnDelta);
+	}
+	
+	/**
+	 * Initializes a connection backed by a cell of a dense layer.
+	 * @param storage the dense layer holding the weight and iRPROP+ state of the connection.
+	 * @param index the index of the connection within the matrices of the dense layer.
+	 */
+	public Connection(final DenseLayer storage, final int index)
+	{
+		this.storage = storage;
+		this.index = index;
 	}
 	
 	public void connect(final Neuron from, final Neuron to)
@@ -73,52 +84,52 @@ class Connection
 
 	public double getWeight()
 	{
-		return weight;
+		return storage.getWeights()[index];
 	}
 
 	public void setWeight(final double weight)
 	{
-		this.weight = weight;
+		storage.getWeights()[index] = weight;
 	}
 
 	public double getLastWeightChange()
 	{
-		return lastWeightChange;
+		return storage.getLastWeightChanges()[index];
 	}
 
 	public void setLastWeightChange(final double lastWeightChange)
 	{
-		this.lastWeightChange = lastWeightChange;
+		storage.getLastWeightChanges()[index] = lastWeightChange;
 	}
 
 	public double getGradient()
 	{
-		return gradient;
+		return storage.getGradients()[index];
 	}
 
 	public void setGradient(final double gradient)
 	{
-		this.gradient = gradient;
+		storage.getGradients()[index] = gradient;
 	}
 
 	public double getLastGradient()
 	{
-		return lastGradient;
+		return storage.getLastGradients()[index];
 	}
 
 	public void setLastGradient(final double lastGradient)
 	{
-		this.lastGradient = lastGradient;
+		storage.getLastGradients()[index] = lastGradient;
 	}
 
 	public double getLearnDelta()
 	{
-		return learnDelta;
+		return storage.getLearnDeltas()[index];
 	}
 
 	public void setLearnDelta(final double learnDelta)
 	{
-		this.learnDelta = learnDelta;
+		storage.getLearnDeltas()[index] = learnDelta;
 	}
 	
 	// #END: Fields
@@ -3,6 +3,8 @@ final class Constants
 {
 	public static final double DBL_ZERO = 0.0;
 	
+	public static final float FLT_ZERO = 0.0f;
+	
 	public static final double MIN_DELTA = 1.0e-6;
 	
 	public static final double MAX_DELTA = 50;
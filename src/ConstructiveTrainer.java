@@ -0,0 +1,202 @@
+import java.util.SplittableRandom;
+
+
+/**
+ * Grows the hidden layers of a neural network from a small start, looking for the smallest topology that reaches a target error.
+ * <p>
+ * Training proceeds in steps. Each step trains the network with {@link EarlyStopping} until the validation error stops improving,
+ * then compares that error with the best one so far. While it keeps improving and the target error is not reached, a few neurons
+ * are added to the narrowest hidden layer with {@link NeuralNetwork#addHiddenNeurons(int, int, long)}, which keeps every existing
+ * weight and its iRPROP+ state and leaves the outputs unchanged, so the next step continues from where the last one ended. Once a
+ * step no longer improves enough, the network is restored to the best, smaller snapshot.
+ * <pre>
+ * NeuralNetwork network = new NeuralNetwork(ActivationFunction.SIGMOID, new int[] { 16, 2, 4 }, true, 0, 1, null, seed);
+ * ConstructiveTrainer trainer = new ConstructiveTrainer(0.05, 0.001, 2, 128, 200, 10);
+ * trainer.grow(network, data, expectedVals, 32, validationData, validationExpected, seed);
+ * </pre>
+ */
+public final class ConstructiveTrainer
+{
+
+	// #BEGIN: Declarations
+	private final double targetError;
+	private final double minImprovement;
+	private final int neuronsPerStep;
+	private final int maxHiddenNeurons;
+	private final int maxEpochsPerStep;
+	private final int patience;
+
+	// outcome of the last growth
+	private int steps = 0;
+	private int epochs = 0;
+	private double bestError = Double.NaN;
+	private int[] bestTopology = null;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a constructive trainer.
+	 * @param targetError the validation error at which growth stops.
+	 * @param minImprovement the amount by which a step must lower the best validation error for growth to go on.
+	 * @param neuronsPerStep the number of neurons added after each step.
+	 * @param maxHiddenNeurons the largest total number of hidden neurons the network may grow to.
+	 * @param maxEpochsPerStep the maximum number of epochs trained per step.
+	 * @param patience the number of epochs without improvement after which a step ends.
+	 * @throws IllegalArgumentException if neuronsPerStep, maxHiddenNeurons, maxEpochsPerStep or patience is less than 1.
+	 */
+	public ConstructiveTrainer(final double targetError, final double minImprovement, final int neuronsPerStep, final int maxHiddenNeurons, final int maxEpochsPerStep, final int patience) throws IllegalArgumentException
+	{
+		if (neuronsPerStep < 1 || maxHiddenNeurons < 1 || maxEpochsPerStep < 1 || patience < 1)
+			throw new IllegalArgumentException("Growth step, neuron limit, epochs per step and patience must be at least 1.");
+
+		this.targetError = targetError;
+		this.minImprovement = minImprovement;
+		this.neuronsPerStep = neuronsPerStep;
+		this.maxHiddenNeurons = maxHiddenNeurons;
+		this.maxEpochsPerStep = maxEpochsPerStep;
+		this.patience = patience;
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Growth
+
+	/**
+	 * Trains and grows a network in place until the target error is reached, a step fails to improve the validation error, or
+	 * the hidden layers reach their size limit. The network is left with the weights and topology of the best step.
+	 * @param network the neural network to grow, with at least one hidden layer.
+	 * @param data the input values of each pattern.
+	 * @param expectedVals the expected output values of each pattern.
+	 * @param batchSize the number of patterns to accumulate before each weight update.
+	 * @param validationData the input values of each validation pattern.
+	 * @param validationExpected the expected output values of each validation pattern.
+	 * @param seed the seed of the incoming weights of added neurons.
+	 * @return the validation error of the grown network, which may be NaN or infinite if the first step diverged.
+	 * @throws IllegalArgumentException if the network has no hidden layer, batchSize is less than 1, or the validation set does not match the network.
+	 */
+	public double grow(final NeuralNetwork network, final double[][] data, final double[][] expectedVals, final int batchSize, final double[][] validationData, final double[][] validationExpected, final long seed) throws IllegalArgumentException
+	{
+		if (network.getDenseLayerCount() < 2)
+			throw new IllegalArgumentException("Cannot grow a neural network without hidden layers.");
+
+		SplittableRandom random = new SplittableRandom(seed);
+
+		NeuralNetwork best = null;
+		bestError = Double.POSITIVE_INFINITY;
+		steps = 0;
+		epochs = 0;
+
+		while (true)
+		{
+			double error = step(network, data, expectedVals, batchSize, validationData, validationExpected);
+			steps++;
+
+			// stop growing once a step no longer improves enough, keeping the smaller network; the first step is always kept
+			if (best != null && !(error < bestError - minImprovement))
+				break;
+
+			best = new NeuralNetwork(network);
+			bestError = error;
+
+			// a diverged network, whose error is NaN or infinite, is not grown any further
+			if (error <= targetError || Double.isNaN(error) || Double.isInfinite(error) || hiddenNeurons(network) + neuronsPerStep > maxHiddenNeurons)
+				break;
+
+			network.addHiddenNeurons(narrowestHiddenLayer(network), neuronsPerStep, random.nextLong());
+		}
+
+		network.restore(best);
+		bestTopology = network.getTopology();
+
+		return bestError;
+	}
+
+	/**
+	 * Trains the network until its validation error stops improving and restores its best weights.
+	 * @return the validation error of the restored weights.
+	 */
+	private double step(final NeuralNetwork network, final double[][] data, final double[][] expectedVals, final int batchSize, final double[][] validationData, final double[][] validationExpected) throws IllegalArgumentException
+	{
+		try (EarlyStopping stopping = new EarlyStopping(validationData, validationExpected, patience))
+		{
+			for (int e = 0; e < maxEpochsPerStep; e++)
+			{
+				network.train(data, expectedVals, batchSize);
+				epochs++;
+
+				if (!stopping.update(network))
+					break;
+			}
+
+			return stopping.finish(network);
+		}
+	}
+
+	private static int hiddenNeurons(final NeuralNetwork network)
+	{
+		int[] topology = network.getTopology();
+
+		int count = 0;
+		for (int l = 1; l < topology.length - 1; l++)
+			count += topology[l];
+
+		return count;
+	}
+
+	/**
+	 * Returns the hidden layer with the fewest neurons, the last one among equals.
+	 */
+	private static int narrowestHiddenLayer(final NeuralNetwork network)
+	{
+		int[] topology = network.getTopology();
+
+		int narrowest = 1;
+		for (int l = 2; l < topology.length - 1; l++)
+			if (topology[l] <= topology[narrowest])
+				narrowest = l;
+
+		return narrowest;
+	}
+
+	// #END: Growth
+
+
+	// #BEGIN: Fields
+
+	/**
+	 * Returns the number of training steps of the last growth, including a last one that may not have improved enough.
+	 * @return the number of steps.
+	 */
+	public int getSteps()
+	{
+		return steps;
+	}
+
+	/**
+	 * Returns the number of epochs trained during the last growth, over every step.
+	 * @return the number of epochs.
+	 */
+	public int getEpochs()
+	{
+		return epochs;
+	}
+
+	public double getBestError()
+	{
+		return bestError;
+	}
+
+	/**
+	 * Returns the topology the last growth settled on.
+	 * @return a copy of the topology, or null if nothing has been grown.
+	 */
+	public int[] getBestTopology()
+	{
+		return (bestTopology != null ? bestTopology.clone() : null);
+	}
+
+	// #END: Fields
+}
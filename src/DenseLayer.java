@@ -0,0 +1,502 @@
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+
+/**
+ * Contiguous storage for every connection feeding one layer of a neural network.
+ * <p>
+ * Weights and their iRPROP+ state are kept in row-major matrices of <code>neurons</code> rows by <code>stride</code> columns.
+ * Row <code>j</code> holds the incoming connections of neuron <code>j</code> in the same order the object graph would create them:
+ * one column per neuron of the previous layer followed, when bias is used, by the bias connection.
+ */
+class DenseLayer implements ForwardLayer
+{
+
+	// #BEGIN: Declarations
+	// approximate number of weights initialized by each parallel task
+	private static final int INIT_CHUNK = 1 << 16;
+
+	private final int inputs;
+	private final int neurons;
+	private final int stride;
+	private final boolean useBias;
+
+	private double[] weights;
+	private double[] lastWeightChanges;
+
+	private double[] gradients;
+	private double[] lastGradients;
+
+	private double[] learnDeltas;
+
+	// sorted indices of the pruned connections, which are held at zero
+	private int[] pruned = new int[0];
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes the storage for a layer with all weights set to zero and all learn deltas set to their initial value.
+	 * @param inputs the number of neurons in the previous layer.
+	 * @param neurons the number of neurons in this layer.
+	 * @param useBias the boolean determining whether each neuron has an extra connection to a bias neuron.
+	 */
+	public DenseLayer(final int inputs, final int neurons, final boolean useBias)
+	{
+		this.inputs = inputs;
+		this.neurons = neurons;
+		this.useBias = useBias;
+		this.stride = inputs + (useBias ? 1 : 0);
+
+		final int size = neurons * stride;
+
+		this.weights = new double[size];
+		this.lastWeightChanges = new double[size];
+
+		this.gradients = new double[size];
+		this.lastGradients = new double[size];
+
+		this.learnDeltas = new double[size];
+		java.util.Arrays.fill(this.learnDeltas, Constants.INIT_LEARN_DELTA);
+	}
+
+	/**
+	 * Draws every weight of this layer from a random stream, in parallel over blocks of rows. Each block gets its own stream
+	 * split from the given one in block order, and the blocks depend only on the size of the layer, so the weights are the same
+	 * for a given stream regardless of the number of threads.
+	 * @param init the weight initialization scheme.
+	 * @param random the random stream of this layer.
+	 */
+	public void initialize(final WeightInit init, final SplittableRandom random)
+	{
+		final int rowsPerChunk = Math.max(1, INIT_CHUNK / stride);
+		final int chunks = (neurons + rowsPerChunk - 1) / rowsPerChunk;
+
+		final SplittableRandom[] streams = new SplittableRandom[chunks];
+		for (int c = 0; c < chunks; c++)
+			streams[c] = random.split();
+
+		IntStream.range(0, chunks).parallel().forEach(c ->
+				WeightInit.fill(init, weights, stride, inputs, neurons, c * rowsPerChunk, Math.min(neurons, (c + 1) * rowsPerChunk), streams[c]));
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Kernels
+
+	/**
+	 * Calculates the summation, activated value and activation derivative of every neuron in this layer.
+	 * @param kernel the activation function of this layer.
+	 * @param input the values of the previous layer.
+	 * @param summations the array receiving the summation of each neuron.
+	 * @param values the array receiving the activated value of each neuron.
+	 * @param derivatives the array receiving the derivative of the activation function at each neuron's value.
+	 */
+	public void forward(final ActivationKernel kernel, final double[] input, final double[] summations, final double[] values, final double[] derivatives)
+	{
+		Kernels.INSTANCE.multiply(input, 0, 1, inputs, weights, stride, neurons, summations, 0);
+
+		// bias neuron always outputs 1.0
+		if (useBias)
+		{
+			for (int j = 0, row = 0; j < neurons; j++, row += stride)
+				summations[j] += weights[row + inputs];
+		}
+
+		kernel.activate(summations, values, derivatives, neurons);
+	}
+
+	/**
+	 * Calculates the activated values of this layer for a block of patterns as a matrix-matrix product.
+	 * Each sum accumulates in the same order as {@link #forward}, so results are identical.
+	 * @param kernel the activation function of this layer.
+	 * @param input the packed input patterns, <code>inputs</code> values per pattern.
+	 * @param inOffset the index of the first input value.
+	 * @param rows the number of patterns.
+	 * @param output the array receiving the packed activated values, <code>neurons</code> values per pattern.
+	 * @param outOffset the index of the first output value.
+	 */
+	@Override
+	public void forwardBatch(final ActivationKernel kernel, final double[] input, final int inOffset, final int rows, final double[] output, final int outOffset)
+	{
+		Kernels.INSTANCE.multiply(input, inOffset, rows, inputs, weights, stride, neurons, output, outOffset);
+
+		// add bias (always multiplied by 1.0)
+		if (useBias)
+		{
+			for (int r = 0, o = outOffset; r < rows; r++, o += neurons)
+				for (int j = 0, row = 0; j < neurons; j++, row += stride)
+					output[o + j] += weights[row + inputs];
+		}
+
+		kernel.activate(output, outOffset, rows * neurons);
+	}
+
+	/**
+	 * Calculates the delta of every neuron in this layer as an output layer.
+	 * @param targets the expected values of this layer.
+	 * @param values the activated values of the last forward pass.
+	 * @param derivatives the activation derivatives of the last forward pass.
+	 * @param deltas the array receiving the delta of each neuron.
+	 * @return the sum of the squared differences between the expected and actual values.
+	 */
+	public double outputDeltas(final double[] targets, final double[] values, final double[] derivatives, final double[] deltas)
+	{
+		double error = Constants.DBL_ZERO;
+
+		for (int j = 0; j < neurons; j++)
+		{
+			final double diff = targets[j] - values[j];
+			error += diff * diff;
+
+			deltas[j] = diff * derivatives[j];
+		}
+
+		return error;
+	}
+
+	/**
+	 * Propagates the deltas of this layer back to the previous (hidden) layer.
+	 * @param deltas the deltas of this layer.
+	 * @param prevDerivatives the activation derivatives of the previous layer.
+	 * @param prevDeltas the array receiving the deltas of the previous layer.
+	 */
+	public void backPropagate(final double[] deltas, final double[] prevDerivatives, final double[] prevDeltas)
+	{
+		java.util.Arrays.fill(prevDeltas, 0, inputs, Constants.DBL_ZERO);
+
+		// walk rows so the inner loop is contiguous; each sum still accumulates in neuron order
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+			Kernels.INSTANCE.axpy(deltas[j], weights, row, prevDeltas, 0, inputs);
+
+		for (int i = 0; i < inputs; i++)
+			prevDeltas[i] *= prevDerivatives[i];
+	}
+
+	/**
+	 * Sets the gradient of every connection from the deltas of this layer and the values of the previous layer.
+	 * @param deltas the deltas of this layer.
+	 * @param input the values of the previous layer.
+	 * @param g the gradient matrix to write, either this layer's own gradients or a buffer of the same size.
+	 */
+	public void inputGradients(final double[] deltas, final double[] input, final double[] g)
+	{
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+		{
+			Kernels.INSTANCE.scale(deltas[j], input, 0, g, row, inputs);
+
+			if (useBias)
+				g[row + inputs] = deltas[j];
+		}
+	}
+
+	/**
+	 * Adds the gradient of every connection for one pattern to the gradients accumulated so far.
+	 * @param deltas the deltas of this layer.
+	 * @param input the values of the previous layer.
+	 * @param g the gradient matrix to add to, either this layer's own gradients or a buffer of the same size.
+	 */
+	public void accumulateGradients(final double[] deltas, final double[] input, final double[] g)
+	{
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+		{
+			Kernels.INSTANCE.axpy(deltas[j], input, 0, g, row, inputs);
+
+			if (useBias)
+				g[row + inputs] += deltas[j];
+		}
+	}
+
+	/**
+	 * Copies the weights and iRPROP+ state of another layer of the same shape into this layer.
+	 * @param other the layer to copy from.
+	 */
+	public void copyFrom(final DenseLayer other)
+	{
+		System.arraycopy(other.weights, 0, weights, 0, weights.length);
+		System.arraycopy(other.lastWeightChanges, 0, lastWeightChanges, 0, lastWeightChanges.length);
+
+		System.arraycopy(other.gradients, 0, gradients, 0, gradients.length);
+		System.arraycopy(other.lastGradients, 0, lastGradients, 0, lastGradients.length);
+
+		System.arraycopy(other.learnDeltas, 0, learnDeltas, 0, learnDeltas.length);
+
+		this.pruned = other.pruned.clone();
+	}
+
+	/**
+	 * Applies one iRPROP+ step to every connection of this layer using the stored gradients and given step-size constants.
+	 * Gradients hold <code>delta * input</code>, the negative of the error derivative, so weights step along their sign.
+	 * @param error the error of the current step.
+	 * @param lastError the error of the previous step, or null if there is none.
+	 * @param params the iRPROP+ parameters.
+	 * @return the number of connections whose gradient changed sign.
+	 */
+	public int updateWeights(final double error, final Double lastError, final RpropParameters params)
+	{
+		final boolean backtrack = lastError != null && error > lastError;
+
+		int flips = Kernels.INSTANCE.rprop(weights, lastWeightChanges, gradients, lastGradients, learnDeltas, 0, weights.length,
+				backtrack, params.getPosEta(), params.getNegEta(), params.getMinDelta(), params.getMaxDelta());
+
+		if (pruned.length > 0)
+			clearPruned();
+
+		return flips;
+	}
+
+	/**
+	 * Sets every learn delta of this layer to an initial value, restarting the step-size adaptation of iRPROP+.
+	 * @param initLearnDelta the initial learn delta.
+	 */
+	public void resetLearnDeltas(final double initLearnDelta)
+	{
+		java.util.Arrays.fill(learnDeltas, initLearnDelta);
+	}
+
+	// #END: Kernels
+
+
+	// #BEGIN: Pruning
+
+	/**
+	 * Prunes every connection from the previous layer whose weight has a magnitude below a threshold. Bias connections are never pruned.
+	 * @param threshold the smallest magnitude of a weight that is kept.
+	 * @return the number of pruned connections in this layer, including those pruned before.
+	 */
+	public int prune(final double threshold)
+	{
+		boolean[] mask = mask();
+
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+			for (int i = row; i < row + inputs; i++)
+				if (Math.abs(weights[i]) < threshold)
+					mask[i] = true;
+
+		return setPruned(mask);
+	}
+
+	/**
+	 * Prunes all but the <code>k</code> connections from the previous layer with the largest weight magnitudes. Ties are kept in
+	 * index order. Bias connections are never pruned and do not count towards <code>k</code>.
+	 * @param k the number of connections to keep.
+	 * @return the number of pruned connections in this layer, including those pruned before.
+	 */
+	public int pruneTopK(final int k)
+	{
+		boolean[] mask = mask();
+
+		double[] magnitudes = new double[neurons * inputs];
+		int count = 0;
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+			for (int i = row; i < row + inputs; i++)
+				if (!mask[i])
+					magnitudes[count++] = Math.abs(weights[i]);
+
+		if (k >= count)
+			return pruned.length;
+
+		// the k-th largest magnitude; weights above it are kept, and as many equal to it as still fit
+		double[] sorted = java.util.Arrays.copyOf(magnitudes, count);
+		java.util.Arrays.sort(sorted);
+		final double cutoff = (k > 0 ? sorted[count - k] : Double.POSITIVE_INFINITY);
+
+		int equal = k;
+		for (int c = count - k; c < count; c++)
+			if (sorted[c] > cutoff)
+				equal--;
+
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+		{
+			for (int i = row; i < row + inputs; i++)
+			{
+				if (mask[i])
+					continue;
+
+				double magnitude = Math.abs(weights[i]);
+				if (magnitude < cutoff || (magnitude == cutoff && equal-- <= 0))
+					mask[i] = true;
+			}
+		}
+
+		return setPruned(mask);
+	}
+
+	/**
+	 * Sets the pruned connections of this layer and zeroes their weights and iRPROP+ state.
+	 * @param indices the sorted indices of the pruned connections in the weight matrix.
+	 * @throws IllegalArgumentException if an index is out of range, not sorted or refers to a bias connection.
+	 */
+	public void setPruned(final int[] indices) throws IllegalArgumentException
+	{
+		for (int k = 0; k < indices.length; k++)
+		{
+			if (indices[k] < 0 || indices[k] >= weights.length || indices[k] % stride >= inputs)
+				throw new IllegalArgumentException("Pruned connection " + indices[k] + " is not a connection from the previous layer.");
+
+			if (k > 0 && indices[k] <= indices[k - 1])
+				throw new IllegalArgumentException("Pruned connections must be sorted and unique.");
+		}
+
+		this.pruned = indices.clone();
+		clearPruned();
+	}
+
+	/**
+	 * Returns the pruned connections of this layer.
+	 * @return the sorted indices of the pruned connections in the weight matrix. The array must not be modified.
+	 */
+	public int[] getPruned()
+	{
+		return pruned;
+	}
+
+	private boolean[] mask()
+	{
+		boolean[] mask = new boolean[weights.length];
+		for (int index : pruned)
+			mask[index] = true;
+
+		return mask;
+	}
+
+	private int setPruned(final boolean[] mask)
+	{
+		int count = 0;
+		for (boolean p : mask)
+			if (p)
+				count++;
+
+		int[] indices = new int[count];
+		for (int i = 0, k = 0; i < mask.length; i++)
+			if (mask[i])
+				indices[k++] = i;
+
+		this.pruned = indices;
+		clearPruned();
+
+		return count;
+	}
+
+	private void clearPruned()
+	{
+		for (int index : pruned)
+		{
+			weights[index] = Constants.DBL_ZERO;
+			lastWeightChanges[index] = Constants.DBL_ZERO;
+			gradients[index] = Constants.DBL_ZERO;
+			lastGradients[index] = Constants.DBL_ZERO;
+		}
+	}
+
+	// #END: Pruning
+
+
+	// #BEGIN: Growth
+
+	/**
+	 * Returns a copy of this layer with extra neurons and extra connections from the previous layer, keeping the weights and
+	 * iRPROP+ state of every existing connection. Extra inputs are inserted after the existing ones, before the bias column.
+	 * Every new connection starts with a zero weight, zero gradients and the given learn delta, so the new rows must still be
+	 * initialized and a new input has no effect on this layer until it is trained.
+	 * @param addInputs the number of neurons added to the previous layer.
+	 * @param addNeurons the number of neurons added to this layer.
+	 * @param initLearnDelta the learn delta of every new connection.
+	 * @return the grown layer.
+	 */
+	public DenseLayer grow(final int addInputs, final int addNeurons, final double initLearnDelta)
+	{
+		DenseLayer grown = new DenseLayer(inputs + addInputs, neurons + addNeurons, useBias);
+		java.util.Arrays.fill(grown.learnDeltas, initLearnDelta);
+
+		for (int j = 0; j < neurons; j++)
+		{
+			final int from = j * stride;
+			final int to = j * grown.stride;
+
+			copyRow(this, from, grown, to, inputs);
+
+			// the bias column stays last
+			if (useBias)
+				copyRow(this, from + inputs, grown, to + grown.inputs, 1);
+		}
+
+		int[] indices = new int[pruned.length];
+		for (int p = 0; p < pruned.length; p++)
+		{
+			final int j = pruned[p] / stride;
+			final int i = pruned[p] % stride;
+
+			indices[p] = j * grown.stride + (i < inputs ? i : i + addInputs);
+		}
+		grown.pruned = indices;
+
+		return grown;
+	}
+
+	private static void copyRow(final DenseLayer src, final int from, final DenseLayer dst, final int to, final int length)
+	{
+		System.arraycopy(src.weights, from, dst.weights, to, length);
+		System.arraycopy(src.lastWeightChanges, from, dst.lastWeightChanges, to, length);
+		System.arraycopy(src.gradients, from, dst.gradients, to, length);
+		System.arraycopy(src.lastGradients, from, dst.lastGradients, to, length);
+		System.arraycopy(src.learnDeltas, from, dst.learnDeltas, to, length);
+	}
+
+	// #END: Growth
+
+
+	// #BEGIN: Fields
+
+	@Override
+	public int getInputs()
+	{
+		return inputs;
+	}
+
+	@Override
+	public int getNeurons()
+	{
+		return neurons;
+	}
+
+	public int getStride()
+	{
+		return stride;
+	}
+
+	@Override
+	public boolean isUseBias()
+	{
+		return useBias;
+	}
+
+	public double[] getWeights()
+	{
+		return weights;
+	}
+
+	public double[] getLastWeightChanges()
+	{
+		return lastWeightChanges;
+	}
+
+	public double[] getGradients()
+	{
+		return gradients;
+	}
+
+	public double[] getLastGradients()
+	{
+		return lastGradients;
+	}
+
+	public double[] getLearnDeltas()
+	{
+		return learnDeltas;
+	}
+
+	// #END: Fields
+}
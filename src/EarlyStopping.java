@@ -0,0 +1,299 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Stops training once the error on a validation set has not improved for a number of epochs, and restores the best weights seen.
+ * <p>
+ * {@link #update(NeuralNetwork)} copies the network into a snapshot on the calling thread and returns while a background thread
+ * scores the snapshot on the validation set, so validation overlaps the next epoch instead of adding to it. The score is collected
+ * at the end of that next epoch. Two snapshots are kept, the best one and the one being scored, and they trade places whenever the
+ * scored one is better, so nothing is copied beyond the one snapshot per epoch. Because scores arrive an epoch late, training stops
+ * one epoch after patience runs out; that epoch is discarded when the best snapshot is restored.
+ * <pre>
+ * try (EarlyStopping stopping = new EarlyStopping(validationData, validationExpected, patience))
+ * {
+ *     for (int epoch = 0; epoch &lt; maxEpochs; epoch++)
+ *     {
+ *         network.train(data, expected, batchSize);
+ *         if (!stopping.update(network))
+ *             break;
+ *     }
+ *     stopping.finish(network);
+ * }
+ * </pre>
+ */
+public final class EarlyStopping implements AutoCloseable
+{
+
+	// #BEGIN: Declarations
+	private final double[] inputs;
+	private final double[] expected;
+	private final int rows;
+
+	private final int patience;
+	private final double minImprovement;
+
+	private final ExecutorService scorer;
+
+	// the best snapshot and the snapshot being scored; only touched by the training thread while no score is pending
+	private NeuralNetwork best = null;
+	private NeuralNetwork candidate = null;
+	private Future<Double> pending = null;
+	private int candidateEpoch = 0;
+
+	private int epoch = 0;
+	private int bestEpoch = 0;
+	private double bestError = Double.POSITIVE_INFINITY;
+	private double lastError = Double.NaN;
+	private int stale = 0;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes early stopping on a validation set, counting any decrease of the validation error as an improvement.
+	 * @param validationData the input values of each validation pattern.
+	 * @param validationExpected the expected output values of each validation pattern.
+	 * @param patience the number of epochs without improvement after which training stops.
+	 * @throws IllegalArgumentException if patience is less than 1 or the validation set is empty or ragged.
+	 */
+	public EarlyStopping(final double[][] validationData, final double[][] validationExpected, final int patience) throws IllegalArgumentException
+	{
+		this(validationData, validationExpected, patience, Constants.DBL_ZERO);
+	}
+
+	/**
+	 * Initializes early stopping on a validation set.
+	 * @param validationData the input values of each validation pattern.
+	 * @param validationExpected the expected output values of each validation pattern.
+	 * @param patience the number of epochs without improvement after which training stops.
+	 * @param minImprovement the amount by which the validation error must fall below the best error to count as an improvement.
+	 * @throws IllegalArgumentException if patience is less than 1 or the validation set is empty or ragged.
+	 */
+	public EarlyStopping(final double[][] validationData, final double[][] validationExpected, final int patience, final double minImprovement) throws IllegalArgumentException
+	{
+		if (patience < 1)
+			throw new IllegalArgumentException("Patience must be at least 1.");
+
+		this.rows = Math.min(validationData.length, validationExpected.length);
+		if (rows == 0)
+			throw new IllegalArgumentException("Validation set is empty.");
+
+		this.inputs = pack(validationData, rows);
+		this.expected = pack(validationExpected, rows);
+
+		this.patience = patience;
+		this.minImprovement = minImprovement;
+
+		this.scorer = Executors.newSingleThreadExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "validation-scorer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private static double[] pack(final double[][] patterns, final int rows) throws IllegalArgumentException
+	{
+		final int width = patterns[0].length;
+
+		double[] packed = new double[rows * width];
+		for (int r = 0; r < rows; r++)
+		{
+			if (patterns[r].length != width)
+				throw new IllegalArgumentException("Validation patterns differ in size.");
+
+			System.arraycopy(patterns[r], 0, packed, r * width, width);
+		}
+
+		return packed;
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Early Stopping
+
+	/**
+	 * Ends an epoch: collects the score of the previous snapshot and, unless patience has run out, snapshots the network and
+	 * scores it in the background. When patience runs out the best snapshot is restored into the network.
+	 * @param network the neural network being trained.
+	 * @return true to keep training, false if training should stop.
+	 * @throws IllegalArgumentException if the network does not match the validation set.
+	 */
+	public boolean update(final NeuralNetwork network) throws IllegalArgumentException
+	{
+		final int[] topology = network.getTopology();
+		if (inputs.length != rows * topology[0] || expected.length != rows * topology[topology.length - 1])
+			throw new IllegalArgumentException("Validation set dimensions do not match the first and output layers.");
+
+		epoch++;
+
+		if (!collect())
+		{
+			network.copyFrom(best);
+			return false;
+		}
+
+		if (candidate == null || !java.util.Arrays.equals(candidate.getTopology(), network.getTopology()) || candidate.isUseBias() != network.isUseBias())
+			candidate = new NeuralNetwork(network);
+		else
+			candidate.copyFrom(network);
+
+		final NeuralNetwork snapshot = candidate;
+		candidateEpoch = epoch;
+		pending = scorer.submit(() -> score(snapshot));
+
+		return true;
+	}
+
+	/**
+	 * Waits for the last snapshot to be scored and restores the best snapshot into the network. Call once training is over,
+	 * whether or not it was stopped early.
+	 * @param network the neural network being trained.
+	 * @return the validation error of the restored weights, or NaN if no snapshot was taken.
+	 */
+	public double finish(final NeuralNetwork network)
+	{
+		collect();
+
+		if (best == null)
+			return Double.NaN;
+
+		network.copyFrom(best);
+		return bestError;
+	}
+
+	/**
+	 * Waits for the last snapshot to be scored and stops the background thread.
+	 */
+	@Override
+	public void close()
+	{
+		try
+		{
+			collect();
+		}
+		finally
+		{
+			scorer.shutdown();
+		}
+	}
+
+	// #END: Early Stopping
+
+
+	// #BEGIN: Private Functions
+
+	/**
+	 * Collects the score of the pending snapshot, keeping it if it is the best so far.
+	 * @return false if patience has run out.
+	 */
+	private boolean collect()
+	{
+		if (pending == null)
+			return stale < patience;
+
+		try
+		{
+			lastError = pending.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while scoring a snapshot.", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+
+			throw new IllegalStateException(e.getCause());
+		}
+		finally
+		{
+			pending = null;
+		}
+
+		if (best == null || lastError < bestError - minImprovement)
+		{
+			// the scored snapshot becomes the best, and the old best is reused for the next snapshot
+			NeuralNetwork previous = best;
+			best = candidate;
+			candidate = previous;
+
+			bestError = lastError;
+			bestEpoch = candidateEpoch;
+			stale = 0;
+		}
+		else
+			stale++;
+
+		return stale < patience;
+	}
+
+	/**
+	 * Calculates the RMS error of a snapshot over every output of every validation pattern.
+	 */
+	private double score(final NeuralNetwork snapshot)
+	{
+		double[] results = snapshot.predictBatch(inputs, rows, new double[expected.length]);
+
+		double error = Constants.DBL_ZERO;
+		for (int k = 0; k < results.length; k++)
+		{
+			double delta = expected[k] - results[k];
+			error += delta * delta;
+		}
+
+		return Math.sqrt(error / expected.length);
+	}
+
+	// #END: Private Functions
+
+
+	// #BEGIN: Fields
+
+	/**
+	 * Returns the number of epochs passed to {@link #update(NeuralNetwork)}.
+	 * @return the number of epochs.
+	 */
+	public int getEpoch()
+	{
+		return epoch;
+	}
+
+	/**
+	 * Returns the epoch whose snapshot has the lowest validation error so far.
+	 * @return the best epoch, counting from 1, or 0 if no snapshot has been scored.
+	 */
+	public int getBestEpoch()
+	{
+		return bestEpoch;
+	}
+
+	public double getBestError()
+	{
+		return bestError;
+	}
+
+	/**
+	 * Returns the validation error of the most recently scored snapshot.
+	 * @return the last validation error, or NaN if no snapshot has been scored.
+	 */
+	public double getLastError()
+	{
+		return lastError;
+	}
+
+	public int getPatience()
+	{
+		return patience;
+	}
+
+	// #END: Fields
+}
@@ -0,0 +1,266 @@
+/**
+ * Carries patterns through a stack of {@link ForwardLayer}s for inference, alternating between two scratch buffers and writing the
+ * last layer directly to the output. Inputs are normalized into a scratch buffer first, never in place.
+ * <p>
+ * {@link SparseNetwork} and {@link MappedNetwork} each predict through an instance; {@link NeuralNetwork}, whose layers change while
+ * it trains, calls the static functions with its current layers instead.
+ */
+final class FeedForward
+{
+
+	// #BEGIN: Declarations
+	// number of patterns carried through every layer together by predictBatch
+	static final int BATCH_ROWS = 128;
+
+	// layers[l] holds the weights feeding layer l + 1
+	private final ForwardLayer[] layers;
+	private final ActivationKernel[] kernels;
+	private final int[] topology;
+
+	// feature-wise normalization applied to every input before the first layer, or null
+	private final Normalizer normalizer;
+
+	// per-thread scratch buffers for predict
+	private final ThreadLocal<double[][]> scratch = new ThreadLocal<double[][]>()
+	{
+		@Override
+		protected double[][] initialValue()
+		{
+			return createScratch();
+		}
+	};
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a driver around a stack of layers.
+	 * @param owner the name of the network type, used in error messages.
+	 * @param activationFuncs the activation function of each layer after the input layer.
+	 * @param normalizer the normalizer applied to every input, or null.
+	 * @param layers the weights feeding each layer after the input layer, which are used without copying.
+	 * @throws IllegalArgumentException if there are no layers, the layers do not fit together, there is not one activation
+	 * function per layer or the normalizer does not match the first layer.
+	 */
+	FeedForward(final String owner, final ActivationFunction[] activationFuncs, final Normalizer normalizer, final ForwardLayer[] layers) throws IllegalArgumentException
+	{
+		if (layers.length == 0)
+			throw new IllegalArgumentException("Cannot initialize " + owner + " with less than two layers.");
+
+		if (activationFuncs.length != layers.length)
+			throw new IllegalArgumentException("Number of activation functions does not match the number of layers after the input layer.");
+
+		this.topology = new int[layers.length + 1];
+		topology[0] = layers[0].getInputs();
+		for (int d = 0; d < layers.length; d++)
+		{
+			if (layers[d].getInputs() != topology[d] || layers[d].isUseBias() != layers[0].isUseBias())
+				throw new IllegalArgumentException("Layers of " + owner + " do not fit together.");
+
+			topology[d + 1] = layers[d].getNeurons();
+		}
+
+		if (normalizer != null && normalizer.getWidth() != topology[0])
+			throw new IllegalArgumentException("Number of normalized columns does not match the number of first-layer neurons.");
+
+		this.layers = layers;
+		this.kernels = ActivationKernel.Factory.create(activationFuncs);
+		this.normalizer = normalizer;
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Feed-Forward
+
+	/**
+	 * Feeds given <code>inputVals</code> through the layers, using scratch buffers private to the calling thread.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	double[] predict(final double[] inputVals, final double[] outputVals) throws IllegalArgumentException
+	{
+		return predict(inputVals, outputVals, scratch.get());
+	}
+
+	/**
+	 * Feeds given <code>inputVals</code> through the layers using caller-supplied scratch buffers. No memory is allocated.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @param scratch the buffers created by {@link #createScratch()}, which must not be shared by concurrent calls.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	double[] predict(final double[] inputVals, final double[] outputVals, final double[][] scratch) throws IllegalArgumentException
+	{
+		if (inputVals.length != topology[0])
+			throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
+
+		if (outputVals.length != topology[topology.length - 1])
+			throw new IllegalArgumentException("Size of output values array does not match the number of output-layer neurons.");
+
+		return predict(layers, kernels, normalizer, inputVals, outputVals, scratch);
+	}
+
+	/**
+	 * Feeds a block of patterns through the layers, carrying up to 128 patterns through every layer together.
+	 * Results are identical to calling {@link #predict(double[], double[])} on each pattern.
+	 * @param inputs the packed input patterns, one first-layer sized row after another.
+	 * @param rows the number of patterns.
+	 * @param results the preallocated array receiving the packed output-layer values of every pattern.
+	 * @return results.
+	 * @throws IllegalArgumentException if inputs or results are too small to hold the given number of patterns.
+	 */
+	double[] predictBatch(final double[] inputs, final int rows, final double[] results) throws IllegalArgumentException
+	{
+		final int inSize = topology[0];
+		final int outSize = topology[topology.length - 1];
+
+		if (inputs.length < (long)rows * inSize)
+			throw new IllegalArgumentException("Size of input values array is less than the number of rows times the number of first-layer neurons.");
+
+		if (results.length < (long)rows * outSize)
+			throw new IllegalArgumentException("Size of results array is less than the number of rows times the number of output-layer neurons.");
+
+		final double[][] buffers = createBatchBuffers(topology);
+
+		for (int start = 0; start < rows; start += BATCH_ROWS)
+			predictBlock(layers, kernels, normalizer, buffers, inputs, start * inSize, Math.min(BATCH_ROWS, rows - start), results, start * outSize);
+
+		return results;
+	}
+
+	/**
+	 * Creates the scratch buffers needed by {@link #predict(double[], double[], double[][])}: two arrays as wide as the widest
+	 * hidden layer and one holding the normalized input.
+	 * @return the scratch buffers.
+	 */
+	double[][] createScratch()
+	{
+		return createScratch(topology);
+	}
+
+	/**
+	 * Feeds one pattern through a stack of layers without checking its size.
+	 * @param layers the weights feeding each layer after the input layer.
+	 * @param kernels the activation function of each layer after the input layer.
+	 * @param normalizer the normalizer applied to the input, or null.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @param scratch the buffers created by {@link #createScratch(int[])}.
+	 * @return outputVals.
+	 */
+	static double[] predict(final ForwardLayer[] layers, final ActivationKernel[] kernels, final Normalizer normalizer, final double[] inputVals, final double[] outputVals, final double[][] scratch)
+	{
+		double[] in = inputVals;
+		if (normalizer != null)
+			in = normalizer.apply(inputVals, scratch[2]);
+
+		for (int l = 1; l <= layers.length; l++)
+		{
+			double[] out = (l == layers.length ? outputVals : scratch[l & 1]);
+
+			layers[l - 1].forwardBatch(kernels[l - 1], in, 0, 1, out, 0);
+			in = out;
+		}
+
+		return outputVals;
+	}
+
+	/**
+	 * Carries one block of at most 128 patterns through every layer, reading the first layer from the inputs and writing the last
+	 * to the results, without checking their sizes.
+	 * @param layers the weights feeding each layer after the input layer.
+	 * @param kernels the activation function of each layer after the input layer.
+	 * @param normalizer the normalizer applied to the inputs, or null.
+	 * @param buffers the buffers created by {@link #createBatchBuffers(int[])}.
+	 * @param inputs the packed input patterns.
+	 * @param inOffset the index of the first input value.
+	 * @param rows the number of patterns.
+	 * @param results the array receiving the packed output-layer values.
+	 * @param resOffset the index of the first output value.
+	 */
+	static void predictBlock(final ForwardLayer[] layers, final ActivationKernel[] kernels, final Normalizer normalizer, final double[][] buffers, final double[] inputs, final int inOffset, final int rows, final double[] results, final int resOffset)
+	{
+		double[] in = inputs;
+		int offset = inOffset;
+
+		// normalize a copy of the block rather than the caller's inputs
+		if (normalizer != null)
+		{
+			System.arraycopy(inputs, inOffset, buffers[2], 0, rows * layers[0].getInputs());
+			normalizer.apply(buffers[2], 0, rows);
+
+			in = buffers[2];
+			offset = 0;
+		}
+
+		for (int l = 1; l <= layers.length; l++)
+		{
+			double[] out = (l == layers.length ? results : buffers[l & 1]);
+			int outOffset = (l == layers.length ? resOffset : 0);
+
+			layers[l - 1].forwardBatch(kernels[l - 1], in, offset, rows, out, outOffset);
+
+			in = out;
+			offset = outOffset;
+		}
+	}
+
+	/**
+	 * Creates the scratch buffers for one pattern: two arrays as wide as the widest hidden layer and one holding the normalized input.
+	 * @param topology the number of neurons in each layer, which may be empty.
+	 * @return the scratch buffers.
+	 */
+	static double[][] createScratch(final int[] topology)
+	{
+		int width = 0;
+		for (int l = 1; l < topology.length - 1; l++)
+			width = Math.max(width, topology[l]);
+
+		return new double[][] { new double[width], new double[width], new double[topology.length > 0 ? topology[0] : 0] };
+	}
+
+	/**
+	 * Creates the scratch buffers for a block of 128 patterns.
+	 * @param topology the number of neurons in each layer.
+	 * @return the scratch buffers.
+	 */
+	static double[][] createBatchBuffers(final int[] topology)
+	{
+		double[][] buffers = createScratch(topology);
+		for (int b = 0; b < buffers.length; b++)
+			buffers[b] = new double[buffers[b].length * BATCH_ROWS];
+
+		return buffers;
+	}
+
+	// #END: Feed-Forward
+
+
+	// #BEGIN: Fields
+
+	/**
+	 * Returns the number of neurons in each layer.
+	 * @return the topology array itself, where index 0 is the input layer, which must not be modified.
+	 */
+	int[] getTopology()
+	{
+		return topology;
+	}
+
+	Normalizer getNormalizer()
+	{
+		return normalizer;
+	}
+
+	boolean isUseBias()
+	{
+		return layers[0].isUseBias();
+	}
+
+	// #END: Fields
+}
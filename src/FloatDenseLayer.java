@@ -0,0 +1,314 @@
+
+/**
+ * Single-precision counterpart of {@link DenseLayer}: the same row-major layout, with every weight and its iRPROP+ state
+ * stored as a <code>float</code>.
+ */
+class FloatDenseLayer
+{
+
+	// #BEGIN: Declarations
+	private final int inputs;
+	private final int neurons;
+	private final int stride;
+	private final boolean useBias;
+
+	private float[] weights;
+	private float[] lastWeightChanges;
+
+	private float[] gradients;
+	private float[] lastGradients;
+
+	private float[] learnDeltas;
+
+	// sorted indices of the pruned connections, which are held at zero
+	private int[] pruned = new int[0];
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes the storage for a layer with all weights set to zero and all learn deltas set to their initial value.
+	 * @param inputs the number of neurons in the previous layer.
+	 * @param neurons the number of neurons in this layer.
+	 * @param useBias the boolean determining whether each neuron has an extra connection to a bias neuron.
+	 * @param initLearnDelta the initial learn delta of every connection.
+	 */
+	public FloatDenseLayer(final int inputs, final int neurons, final boolean useBias, final double initLearnDelta)
+	{
+		this.inputs = inputs;
+		this.neurons = neurons;
+		this.useBias = useBias;
+		this.stride = inputs + (useBias ? 1 : 0);
+
+		final int size = neurons * stride;
+
+		this.weights = new float[size];
+		this.lastWeightChanges = new float[size];
+
+		this.gradients = new float[size];
+		this.lastGradients = new float[size];
+
+		this.learnDeltas = new float[size];
+		java.util.Arrays.fill(this.learnDeltas, (float)initLearnDelta);
+	}
+
+	/**
+	 * Initializes the storage for a layer by narrowing the weights and iRPROP+ state of a double-precision layer. Its pruned
+	 * connections stay pruned.
+	 * @param other the layer to narrow.
+	 */
+	public FloatDenseLayer(final DenseLayer other)
+	{
+		// the learn deltas are narrowed from the other layer below
+		this(other.getInputs(), other.getNeurons(), other.isUseBias(), Constants.DBL_ZERO);
+
+		narrow(other.getWeights(), weights);
+		narrow(other.getLastWeightChanges(), lastWeightChanges);
+
+		narrow(other.getGradients(), gradients);
+		narrow(other.getLastGradients(), lastGradients);
+
+		narrow(other.getLearnDeltas(), learnDeltas);
+
+		this.pruned = other.getPruned().clone();
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Kernels
+
+	/**
+	 * Calculates the summation, activated value and activation derivative of every neuron in this layer.
+	 * @param kernel the activation function of this layer.
+	 * @param input the values of the previous layer.
+	 * @param summations the array receiving the summation of each neuron.
+	 * @param values the array receiving the activated value of each neuron.
+	 * @param derivatives the array receiving the derivative of the activation function at each neuron's value.
+	 */
+	public void forward(final ActivationKernel kernel, final float[] input, final float[] summations, final float[] values, final float[] derivatives)
+	{
+		Kernels.INSTANCE.multiply(input, 0, 1, inputs, weights, stride, neurons, summations, 0);
+
+		// bias neuron always outputs 1.0
+		if (useBias)
+		{
+			for (int j = 0, row = 0; j < neurons; j++, row += stride)
+				summations[j] += weights[row + inputs];
+		}
+
+		kernel.activate(summations, values, derivatives, neurons);
+	}
+
+	/**
+	 * Calculates the activated values of this layer for a block of patterns as a matrix-matrix product.
+	 * Each sum accumulates in the same order as {@link #forward}, so results are identical.
+	 * @param kernel the activation function of this layer.
+	 * @param input the packed input patterns, <code>inputs</code> values per pattern.
+	 * @param inOffset the index of the first input value.
+	 * @param rows the number of patterns.
+	 * @param output the array receiving the packed activated values, <code>neurons</code> values per pattern.
+	 * @param outOffset the index of the first output value.
+	 */
+	public void forwardBatch(final ActivationKernel kernel, final float[] input, final int inOffset, final int rows, final float[] output, final int outOffset)
+	{
+		Kernels.INSTANCE.multiply(input, inOffset, rows, inputs, weights, stride, neurons, output, outOffset);
+
+		// add bias (always multiplied by 1.0)
+		if (useBias)
+		{
+			for (int r = 0, o = outOffset; r < rows; r++, o += neurons)
+				for (int j = 0, row = 0; j < neurons; j++, row += stride)
+					output[o + j] += weights[row + inputs];
+		}
+
+		kernel.activate(output, outOffset, rows * neurons);
+	}
+
+	/**
+	 * Calculates the delta of every neuron in this layer as an output layer.
+	 * @param targets the expected values of this layer.
+	 * @param values the activated values of the last forward pass.
+	 * @param derivatives the activation derivatives of the last forward pass.
+	 * @param deltas the array receiving the delta of each neuron.
+	 * @return the sum of the squared differences between the expected and actual values.
+	 */
+	public double outputDeltas(final float[] targets, final float[] values, final float[] derivatives, final float[] deltas)
+	{
+		double error = Constants.DBL_ZERO;
+
+		for (int j = 0; j < neurons; j++)
+		{
+			final float diff = targets[j] - values[j];
+			error += diff * diff;
+
+			deltas[j] = diff * derivatives[j];
+		}
+
+		return error;
+	}
+
+	/**
+	 * Propagates the deltas of this layer back to the previous (hidden) layer.
+	 * @param deltas the deltas of this layer.
+	 * @param prevDerivatives the activation derivatives of the previous layer.
+	 * @param prevDeltas the array receiving the deltas of the previous layer.
+	 */
+	public void backPropagate(final float[] deltas, final float[] prevDerivatives, final float[] prevDeltas)
+	{
+		java.util.Arrays.fill(prevDeltas, 0, inputs, Constants.FLT_ZERO);
+
+		// walk rows so the inner loop is contiguous; each sum still accumulates in neuron order
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+			Kernels.INSTANCE.axpy(deltas[j], weights, row, prevDeltas, 0, inputs);
+
+		for (int i = 0; i < inputs; i++)
+			prevDeltas[i] *= prevDerivatives[i];
+	}
+
+	/**
+	 * Sets the gradient of every connection from the deltas of this layer and the values of the previous layer.
+	 * @param deltas the deltas of this layer.
+	 * @param input the values of the previous layer.
+	 */
+	public void inputGradients(final float[] deltas, final float[] input)
+	{
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+		{
+			Kernels.INSTANCE.scale(deltas[j], input, 0, gradients, row, inputs);
+
+			if (useBias)
+				gradients[row + inputs] = deltas[j];
+		}
+	}
+
+	/**
+	 * Adds the gradient of every connection for one pattern to the gradients accumulated so far.
+	 * @param deltas the deltas of this layer.
+	 * @param input the values of the previous layer.
+	 */
+	public void accumulateGradients(final float[] deltas, final float[] input)
+	{
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+		{
+			Kernels.INSTANCE.axpy(deltas[j], input, 0, gradients, row, inputs);
+
+			if (useBias)
+				gradients[row + inputs] += deltas[j];
+		}
+	}
+
+	/**
+	 * Applies one iRPROP+ step to every connection of this layer using the stored gradients and given step-size constants,
+	 * narrowed to single precision.
+	 * @param error the error of the current step.
+	 * @param lastError the error of the previous step, or null if there is none.
+	 * @param params the iRPROP+ parameters.
+	 * @return the number of connections whose gradient changed sign.
+	 */
+	public int updateWeights(final double error, final Double lastError, final RpropParameters params)
+	{
+		final boolean backtrack = lastError != null && error > lastError;
+
+		int flips = Kernels.INSTANCE.rprop(weights, lastWeightChanges, gradients, lastGradients, learnDeltas, 0, weights.length,
+				backtrack, (float)params.getPosEta(), (float)params.getNegEta(), (float)params.getMinDelta(), (float)params.getMaxDelta());
+
+		if (pruned.length > 0)
+			clearPruned();
+
+		return flips;
+	}
+
+	/**
+	 * Sets every learn delta of this layer to an initial value, restarting the step-size adaptation of iRPROP+.
+	 * @param initLearnDelta the initial learn delta.
+	 */
+	public void resetLearnDeltas(final double initLearnDelta)
+	{
+		java.util.Arrays.fill(learnDeltas, (float)initLearnDelta);
+	}
+
+	// #END: Kernels
+
+
+	// #BEGIN: Private Functions
+
+	private void clearPruned()
+	{
+		for (int index : pruned)
+		{
+			weights[index] = Constants.FLT_ZERO;
+			lastWeightChanges[index] = Constants.FLT_ZERO;
+			gradients[index] = Constants.FLT_ZERO;
+			lastGradients[index] = Constants.FLT_ZERO;
+		}
+	}
+
+	private static void narrow(final double[] from, final float[] to)
+	{
+		for (int k = 0; k < to.length; k++)
+			to[k] = (float)from[k];
+	}
+
+	// #END: Private Functions
+
+
+	// #BEGIN: Fields
+
+	public int getInputs()
+	{
+		return inputs;
+	}
+
+	public int getNeurons()
+	{
+		return neurons;
+	}
+
+	public int getStride()
+	{
+		return stride;
+	}
+
+	public boolean isUseBias()
+	{
+		return useBias;
+	}
+
+	public float[] getWeights()
+	{
+		return weights;
+	}
+
+	public float[] getLastWeightChanges()
+	{
+		return lastWeightChanges;
+	}
+
+	public float[] getGradients()
+	{
+		return gradients;
+	}
+
+	public float[] getLastGradients()
+	{
+		return lastGradients;
+	}
+
+	public float[] getLearnDeltas()
+	{
+		return learnDeltas;
+	}
+
+	/**
+	 * Returns the pruned connections of this layer.
+	 * @return the sorted indices of the pruned connections in the weight matrix. The array must not be modified.
+	 */
+	public int[] getPruned()
+	{
+		return pruned;
+	}
+
+	// #END: Fields
+}
@@ -0,0 +1,427 @@
+
+/**
+ * A fully connected, feed-forward neural network trained with iRPROP+ that stores every weight, gradient and learn delta as a
+ * <code>float</code>. It uses half the memory per weight of {@link NeuralNetwork} and twice the lanes in the vector kernels.
+ * Summations, deltas and weights are single precision; per-pattern errors are accumulated in double precision. The
+ * {@link Normalizer} of the network it was copied from is kept and applied to a copy of every input before the first layer.
+ */
+public class FloatNeuralNetwork
+{
+
+	// #BEGIN: Declarations
+	// number of patterns carried through every layer together by predictBatch
+	private static final int BATCH_ROWS = 128;
+
+	private final ActivationFunction[] activations;
+	private final ActivationKernel[] kernels;
+
+	// floatLayers[l] holds the connections feeding layer l + 1
+	private final int[] topology;
+	private final FloatDenseLayer[] floatLayers;
+
+	// activations of the last feed-forward, indexed by layer
+	private final float[][] summations;
+	private final float[][] values;
+	private final float[][] deltas;
+	private final float[][] derivatives;
+
+	private final double rangeMin;
+	private final double rangeMax;
+
+	private final boolean useBias;
+
+	// feature-wise normalization applied to every input before the first layer, or null
+	private final Normalizer normalizer;
+
+	// statistics about recent error correction
+	private double recentAvgError = Constants.DBL_ZERO;
+	private double recentAvgSmoothing = Constants.DBL_ZERO;
+	private Double lastError = null;
+
+	// step-size constants of iRPROP+
+	private RpropParameters rprop = RpropParameters.DEFAULT;
+
+	// per-thread scratch buffers for predict
+	private final ThreadLocal<float[][]> scratch = new ThreadLocal<float[][]>()
+	{
+		@Override
+		protected float[][] initialValue()
+		{
+			return createScratch();
+		}
+	};
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a fully connected neural-network.
+	 * @param activationFunc the activation function to use for neurons in the neural network.
+	 * @param topology the array representing the topology of the neural network where 0 is the input layer and each integer value is the number of neurons in the respective layer.
+	 * @param useBias the boolean determining whether the neural network will employ bias neurons.
+	 * @param rangeMin the lower-bound of the suggested input range.
+	 * @param rangeMax the upper-bound of the suggested input range.
+	 * @throws IllegalArgumentException if the topology array length is less than 2.
+	 */
+	public FloatNeuralNetwork(final ActivationFunction activationFunc, final int[] topology, final boolean useBias, final double rangeMin, final double rangeMax) throws IllegalArgumentException
+	{
+		this(new NeuralNetwork(activationFunc, topology, useBias, rangeMin, rangeMax));
+	}
+
+	/**
+	 * Initializes a single-precision copy of a neural network, narrowing all weights, iRPROP+ state and error statistics. The
+	 * normalizer and iRPROP+ parameters are shared.
+	 * @param other the neural network to copy.
+	 * @throws IllegalArgumentException if the neural network has no layers.
+	 */
+	public FloatNeuralNetwork(final NeuralNetwork other) throws IllegalArgumentException
+	{
+		this.activations = other.getActivationFunctions();
+		this.kernels = ActivationKernel.Factory.create(activations);
+		this.useBias = other.isUseBias();
+		this.normalizer = other.getNormalizer();
+
+		this.rangeMin = other.getRangeMin();
+		this.rangeMax = other.getRangeMax();
+
+		this.topology = other.getTopology();
+		if (topology.length < 2)
+			throw new IllegalArgumentException("Cannot initialize FloatNeuralNetwork with less than two layers.");
+
+		this.floatLayers = new FloatDenseLayer[topology.length - 1];
+		for (int d = 0; d < floatLayers.length; d++)
+			floatLayers[d] = new FloatDenseLayer(other.getDenseLayer(d));
+
+		this.summations = new float[topology.length][];
+		this.values = new float[topology.length][];
+		this.deltas = new float[topology.length][];
+		this.derivatives = new float[topology.length][];
+		for (int l = 0; l < topology.length; l++)
+		{
+			summations[l] = new float[topology[l]];
+			values[l] = new float[topology[l]];
+			deltas[l] = new float[topology[l]];
+			derivatives[l] = new float[topology[l]];
+		}
+
+		this.lastError = other.getLastError();
+		this.recentAvgError = other.getRecentAvgError();
+		this.recentAvgSmoothing = other.getRecentAvgSmoothing();
+		this.rprop = other.getRpropParameters();
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Feed-Forward
+
+	/**
+	 * Inputs given <code>inputVals</code> into the neural network and iterates through the network to update all neuron values.
+	 * @param inputVals the values to input into the first layer. Size must match size of first layer.
+	 * @throws IllegalArgumentException if the size of inputVals does not match the number of neurons in the first layer.
+	 */
+	public void feedForward(final float[] inputVals) throws IllegalArgumentException
+	{
+		if (inputVals.length != topology[0])
+			throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
+
+		System.arraycopy(inputVals, 0, values[0], 0, inputVals.length);
+		if (normalizer != null)
+			normalizer.apply(values[0], 0, 1);
+
+		for (int l = 1; l < topology.length; l++)
+			floatLayers[l - 1].forward(kernels[l - 1], values[l - 1], summations[l], values[l], derivatives[l]);
+	}
+
+	/**
+	 * Returns the output layer of the neural network.
+	 * @return the output layer of the neural network as an array of floats.
+	 */
+	public float[] fetchResults()
+	{
+		return values[topology.length - 1].clone();
+	}
+
+	/**
+	 * Feeds given <code>inputVals</code> through the neural network without touching its own activations, using scratch buffers
+	 * private to the calling thread. Any number of threads may predict concurrently as long as no thread is training the network.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	public float[] predict(final float[] inputVals, final float[] outputVals) throws IllegalArgumentException
+	{
+		return predict(inputVals, outputVals, scratch.get());
+	}
+
+	/**
+	 * Feeds given <code>inputVals</code> through the neural network without touching its own activations, using caller-supplied
+	 * scratch buffers. No memory is allocated.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @param scratch the buffers created by {@link #createScratch()}, which must not be shared by concurrent calls.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	public float[] predict(final float[] inputVals, final float[] outputVals, final float[][] scratch) throws IllegalArgumentException
+	{
+		final int outIndex = topology.length - 1;
+
+		if (inputVals.length != topology[0])
+			throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
+
+		if (outputVals.length != topology[outIndex])
+			throw new IllegalArgumentException("Size of output values array does not match the number of output-layer neurons.");
+
+		float[] in = inputVals;
+		if (normalizer != null)
+		{
+			System.arraycopy(inputVals, 0, scratch[2], 0, inputVals.length);
+			normalizer.apply(scratch[2], 0, 1);
+			in = scratch[2];
+		}
+
+		for (int l = 1; l <= outIndex; l++)
+		{
+			float[] out = (l == outIndex ? outputVals : scratch[l & 1]);
+
+			floatLayers[l - 1].forwardBatch(kernels[l - 1], in, 0, 1, out, 0);
+			in = out;
+		}
+
+		return outputVals;
+	}
+
+	/**
+	 * Feeds a block of patterns through the neural network, running each layer as a matrix-matrix product.
+	 * @param inputs the packed input patterns, one first-layer sized row after another.
+	 * @param rows the number of patterns.
+	 * @param results the preallocated array receiving the packed output-layer values of every pattern.
+	 * @return results.
+	 * @throws IllegalArgumentException if inputs or results are too small to hold the given number of patterns.
+	 */
+	public float[] predictBatch(final float[] inputs, final int rows, final float[] results) throws IllegalArgumentException
+	{
+		final int outIndex = topology.length - 1;
+
+		if (inputs.length < (long)rows * topology[0])
+			throw new IllegalArgumentException("Size of input values array is less than the number of rows times the number of first-layer neurons.");
+
+		if (results.length < (long)rows * topology[outIndex])
+			throw new IllegalArgumentException("Size of results array is less than the number of rows times the number of output-layer neurons.");
+
+		float[][] buffers = createScratch();
+		for (int b = 0; b < buffers.length; b++)
+			buffers[b] = new float[buffers[b].length * BATCH_ROWS];
+
+		for (int start = 0; start < rows; start += BATCH_ROWS)
+		{
+			int count = Math.min(BATCH_ROWS, rows - start);
+
+			float[] in = inputs;
+			int offset = start * topology[0];
+
+			// normalize a copy of the block rather than the caller's inputs
+			if (normalizer != null)
+			{
+				System.arraycopy(inputs, offset, buffers[2], 0, count * topology[0]);
+				normalizer.apply(buffers[2], 0, count);
+
+				in = buffers[2];
+				offset = 0;
+			}
+
+			for (int l = 1; l <= outIndex; l++)
+			{
+				float[] out = (l == outIndex ? results : buffers[l & 1]);
+				int outOffset = (l == outIndex ? start * topology[outIndex] : 0);
+
+				floatLayers[l - 1].forwardBatch(kernels[l - 1], in, offset, count, out, outOffset);
+
+				in = out;
+				offset = outOffset;
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Creates a pair of buffers large enough to hold any hidden layer and one holding the normalized input, for use with
+	 * {@link #predict(float[], float[], float[][])}.
+	 * @return the scratch buffers.
+	 */
+	public float[][] createScratch()
+	{
+		int width = 0;
+		for (int l = 1; l < topology.length - 1; l++)
+			width = Math.max(width, topology[l]);
+
+		return new float[][] { new float[width], new float[width], new float[topology[0]] };
+	}
+
+	// #END: Feed-Forward
+
+
+	// #BEGIN: Training
+
+	/**
+	 * Applies one iRPROP+ step using the gradients of the pattern last fed forward.
+	 * @param expectedVals the expected values of the output layer.
+	 * @throws IllegalArgumentException if the size of expectedVals does not match the number of neurons in the output layer.
+	 */
+	public void iRPROP(final float[] expectedVals) throws IllegalArgumentException
+	{
+		double error = backPropagate(expectedVals, false);
+
+		updateWeights(Math.sqrt(error / topology[topology.length - 1]));
+	}
+
+	public void train(final float[][] data, final float[][] expectedVals)
+	{
+		train(data, expectedVals, 1);
+	}
+
+	/**
+	 * Trains the neural network in batches. The gradients of every pattern in a batch are summed and a single iRPROP+ step is
+	 * applied per batch, using the RMS error over the whole batch for weight backtracking.
+	 * @param data the input values of each pattern.
+	 * @param expectedVals the expected output values of each pattern.
+	 * @param batchSize the number of patterns to accumulate before each weight update.
+	 * @throws IllegalArgumentException if batchSize is less than 1.
+	 */
+	public void train(final float[][] data, final float[][] expectedVals, final int batchSize) throws IllegalArgumentException
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1.");
+
+		int min = Math.min(data.length, expectedVals.length);
+
+		for (int start = 0; start < min; start += batchSize)
+		{
+			int end = Math.min(start + batchSize, min);
+			double error = Constants.DBL_ZERO;
+
+			for (int i = start; i < end; i++)
+			{
+				feedForward(data[i]);
+				error += backPropagate(expectedVals[i], i > start);
+			}
+
+			updateWeights(Math.sqrt(error / ((end - start) * topology[topology.length - 1])));
+		}
+	}
+
+	private double backPropagate(final float[] expectedVals, final boolean accumulate) throws IllegalArgumentException
+	{
+		final int outIndex = topology.length - 1;
+
+		if (expectedVals.length != topology[outIndex])
+			throw new IllegalArgumentException("Expected values dimensions do not match number of output-layer neurons.");
+
+		double error = floatLayers[outIndex - 1].outputDeltas(expectedVals, values[outIndex], derivatives[outIndex], deltas[outIndex]);
+
+		for (int l = outIndex - 1; l > 0; l--)
+			floatLayers[l].backPropagate(deltas[l + 1], derivatives[l], deltas[l]);
+
+		for (int l = outIndex; l > 0; l--)
+		{
+			if (accumulate)
+				floatLayers[l - 1].accumulateGradients(deltas[l], values[l - 1]);
+			else
+				floatLayers[l - 1].inputGradients(deltas[l], values[l - 1]);
+		}
+
+		return error;
+	}
+
+	private void updateWeights(final double error)
+	{
+		recentAvgError = (recentAvgError * recentAvgSmoothing + error) /
+				(recentAvgSmoothing + 1.0);
+
+		for (FloatDenseLayer layer : floatLayers)
+			layer.updateWeights(error, this.lastError, rprop);
+
+		this.lastError = error;
+	}
+
+	// #END: Training
+
+
+	// #BEGIN: Fields
+
+	public double getRangeMin()
+	{
+		return rangeMin;
+	}
+
+	public double getRangeMax()
+	{
+		return rangeMax;
+	}
+
+	public boolean isUseBias()
+	{
+		return useBias;
+	}
+
+	public Normalizer getNormalizer()
+	{
+		return normalizer;
+	}
+
+	/**
+	 * Returns the activation function of the output layer.
+	 * @return the activation function of the output layer.
+	 */
+	public ActivationFunction getActivationFunction()
+	{
+		return activations[activations.length - 1];
+	}
+
+	/**
+	 * Returns the activation function of each layer after the input layer.
+	 * @return a copy of the activation functions, where index 0 belongs to the first layer after the input layer.
+	 */
+	public ActivationFunction[] getActivationFunctions()
+	{
+		return activations.clone();
+	}
+
+	public Double getLastError()
+	{
+		return this.lastError;
+	}
+
+	public RpropParameters getRpropParameters()
+	{
+		return rprop;
+	}
+
+	/**
+	 * Sets the step-size constants of iRPROP+ and resets every learn delta to their initial learn delta, restarting the
+	 * step-size adaptation.
+	 * @param params the iRPROP+ parameters.
+	 */
+	public void setRpropParameters(final RpropParameters params)
+	{
+		this.rprop = params;
+
+		for (FloatDenseLayer layer : floatLayers)
+			layer.resetLearnDeltas(params.getInitLearnDelta());
+	}
+
+	/**
+	 * Returns the number of neurons in each layer of the neural network.
+	 * @return a copy of the topology array, where index 0 is the input layer.
+	 */
+	public int[] getTopology()
+	{
+		return topology.clone();
+	}
+
+	// #END: Fields
+}
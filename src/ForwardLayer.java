@@ -0,0 +1,39 @@
+/**
+ * The weights feeding one layer of a neural network, as seen by inference: a block of patterns goes in, the activated values of
+ * the layer come out.
+ * <p>
+ * Implemented by the dense, sparse and mapped storages, so {@link FeedForward} carries patterns through any of them with the same
+ * scratch buffers and normalization.
+ */
+interface ForwardLayer
+{
+
+	/**
+	 * Calculates the activated values of this layer for a block of patterns.
+	 * @param kernel the activation function of this layer.
+	 * @param input the packed input patterns, <code>inputs</code> values per pattern.
+	 * @param inOffset the index of the first input value.
+	 * @param rows the number of patterns.
+	 * @param output the array receiving the packed activated values, <code>neurons</code> values per pattern.
+	 * @param outOffset the index of the first output value.
+	 */
+	void forwardBatch(ActivationKernel kernel, double[] input, int inOffset, int rows, double[] output, int outOffset);
+
+	/**
+	 * Returns the number of neurons in the previous layer.
+	 * @return the number of inputs of each neuron, excluding bias.
+	 */
+	int getInputs();
+
+	/**
+	 * Returns the number of neurons in this layer.
+	 * @return the number of neurons.
+	 */
+	int getNeurons();
+
+	/**
+	 * Returns whether each neuron has a bias connection.
+	 * @return true if bias is used.
+	 */
+	boolean isUseBias();
+}
@@ -0,0 +1,485 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Serves concurrent single-pattern predictions of a trained {@link NeuralNetwork} by coalescing them into batches.
+ * <p>
+ * {@link #submit(double[])} queues a pattern and returns a future of its output values. A dispatcher thread takes the oldest
+ * queued pattern, gathers whatever else arrives until the batch holds <code>maxBatchSize</code> patterns or the oldest one has
+ * waited <code>maxWait</code>, runs the whole batch through {@link NeuralNetwork#predictBatch(double[], int, double[])} and completes
+ * every future. Under light load a pattern waits at most <code>maxWait</code> for company; under heavy load batches fill up
+ * without waiting and each layer runs as one matrix-matrix product. The queue is bounded: once it is full, <code>submit</code>
+ * blocks and {@link #trySubmit(double[])} refuses, so callers are slowed down instead of memory growing without limit.
+ * <p>
+ * The network must not be trained while a dispatcher serves it. {@link #latencyReport} measures the latency and throughput of a
+ * range of batch sizes under a given number of concurrent clients.
+ */
+public final class InferenceDispatcher implements AutoCloseable
+{
+
+	// #BEGIN: Declarations
+	// queued by close() to wake the dispatcher thread
+	private static final Request CLOSE = new Request(null);
+
+	private final NeuralNetwork network;
+	private final int inputCount;
+	private final int outputCount;
+
+	private final int maxBatchSize;
+	private final long maxWaitNanos;
+
+	private final BlockingQueue<Request> queue;
+	private final Thread dispatcher;
+	private volatile boolean closed = false;
+
+	// set by the dispatcher thread before it drains the queue for the last time
+	private volatile boolean terminated = false;
+
+	// packed inputs and outputs of the batch being run, only touched by the dispatcher thread
+	private final double[] inputs;
+	private final double[] results;
+	private final List<Request> batch;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a dispatcher and starts its thread.
+	 * @param network the trained neural network to serve.
+	 * @param maxBatchSize the largest number of patterns run as one batch.
+	 * @param maxWait the longest time the oldest queued pattern waits for others to join its batch.
+	 * @param unit the unit of maxWait.
+	 * @param capacity the number of patterns the queue holds before submitting blocks.
+	 * @throws IllegalArgumentException if maxBatchSize or capacity is less than 1, or maxWait is negative.
+	 */
+	public InferenceDispatcher(final NeuralNetwork network, final int maxBatchSize, final long maxWait, final TimeUnit unit, final int capacity) throws IllegalArgumentException
+	{
+		if (maxBatchSize < 1 || capacity < 1)
+			throw new IllegalArgumentException("Batch size and queue capacity must be at least 1.");
+
+		if (maxWait < 0)
+			throw new IllegalArgumentException("Maximum wait cannot be negative.");
+
+		final int[] topology = network.getTopology();
+
+		this.network = network;
+		this.inputCount = topology[0];
+		this.outputCount = topology[topology.length - 1];
+
+		this.maxBatchSize = maxBatchSize;
+		this.maxWaitNanos = unit.toNanos(maxWait);
+
+		this.queue = new ArrayBlockingQueue<Request>(capacity);
+		this.inputs = new double[maxBatchSize * inputCount];
+		this.results = new double[maxBatchSize * outputCount];
+		this.batch = new ArrayList<Request>(maxBatchSize);
+
+		this.dispatcher = new Thread(this::dispatch, "inference-dispatcher");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Requests
+
+	/**
+	 * Queues a pattern for prediction, waiting for room in the queue if it is full.
+	 * @param inputVals the values to input into the first layer, which must not change until the future completes.
+	 * @return the future of the values of the output layer.
+	 * @throws IllegalArgumentException if the size of inputVals does not match the number of neurons in the first layer.
+	 * @throws IllegalStateException if the dispatcher is closed, or the calling thread is interrupted while waiting. A pattern
+	 * queued while the dispatcher closes fails its future with this exception instead.
+	 */
+	public CompletableFuture<double[]> submit(final double[] inputVals) throws IllegalArgumentException, IllegalStateException
+	{
+		Request request = request(inputVals);
+
+		try
+		{
+			queue.put(request);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for room in the queue.", e);
+		}
+
+		return queued(request);
+	}
+
+	/**
+	 * Queues a pattern for prediction unless the queue is full.
+	 * @param inputVals the values to input into the first layer, which must not change until the future completes.
+	 * @return the future of the values of the output layer, or null if the queue is full.
+	 * @throws IllegalArgumentException if the size of inputVals does not match the number of neurons in the first layer.
+	 * @throws IllegalStateException if the dispatcher is closed. A pattern queued while the dispatcher closes fails its future
+	 * with this exception instead.
+	 */
+	public CompletableFuture<double[]> trySubmit(final double[] inputVals) throws IllegalArgumentException, IllegalStateException
+	{
+		Request request = request(inputVals);
+		return (queue.offer(request) ? queued(request) : null);
+	}
+
+	/**
+	 * Stops accepting patterns, waits for every queued pattern to be predicted and stops the dispatcher thread.
+	 */
+	@Override
+	public synchronized void close()
+	{
+		if (closed)
+			return;
+
+		closed = true;
+
+		try
+		{
+			queue.put(CLOSE);
+			dispatcher.join();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Request request(final double[] inputVals) throws IllegalArgumentException, IllegalStateException
+	{
+		if (inputVals.length != inputCount)
+			throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
+
+		if (closed)
+			throw new IllegalStateException("Inference dispatcher is closed.");
+
+		return new Request(inputVals);
+	}
+
+	/**
+	 * Fails a request that was queued after the dispatcher thread drained the queue for the last time. A request queued before
+	 * <code>terminated</code> is set is always seen by that drain, so no future is left pending.
+	 */
+	private CompletableFuture<double[]> queued(final Request request)
+	{
+		if (terminated && queue.remove(request))
+			request.future.completeExceptionally(new IllegalStateException("Inference dispatcher is closed."));
+
+		return request.future;
+	}
+
+	// #END: Requests
+
+
+	// #BEGIN: Dispatcher
+
+	/**
+	 * The loop of the dispatcher thread: gathers a batch, runs it and completes its futures, until closed or interrupted. However
+	 * it ends, the dispatcher is then closed and every request still queued fails.
+	 */
+	private void dispatch()
+	{
+		try
+		{
+			gather();
+		}
+		finally
+		{
+			closed = true;
+			terminated = true;
+
+			// a batch cut short by an error; completing a future twice has no effect
+			for (Request request : batch)
+				request.future.completeExceptionally(new IllegalStateException("Inference dispatcher is closed."));
+
+			// anything queued after the close request was submitted too late
+			Request late;
+			while ((late = queue.poll()) != null)
+			{
+				if (late != CLOSE)
+					late.future.completeExceptionally(new IllegalStateException("Inference dispatcher is closed."));
+			}
+		}
+	}
+
+	private void gather()
+	{
+		boolean running = true;
+		while (running)
+		{
+			batch.clear();
+
+			try
+			{
+				Request first = queue.take();
+				if (first == CLOSE)
+					break;
+
+				batch.add(first);
+
+				// gather more patterns until the batch is full or the first pattern has waited long enough
+				final long deadline = first.queued + maxWaitNanos;
+				while (batch.size() < maxBatchSize)
+				{
+					Request next = queue.poll();
+					if (next == null)
+					{
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0 || (next = queue.poll(remaining, TimeUnit.NANOSECONDS)) == null)
+							break;
+					}
+
+					if (next == CLOSE)
+					{
+						running = false;
+						break;
+					}
+
+					batch.add(next);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				running = false;
+			}
+
+			run(batch);
+		}
+	}
+
+	/**
+	 * Runs a batch through the network and completes the future of each pattern with a copy of its outputs.
+	 */
+	private void run(final List<Request> batch)
+	{
+		final int rows = batch.size();
+		if (rows == 0)
+			return;
+
+		try
+		{
+			for (int r = 0; r < rows; r++)
+				System.arraycopy(batch.get(r).inputVals, 0, inputs, r * inputCount, inputCount);
+
+			network.predictBatch(inputs, rows, results);
+		}
+		catch (Throwable e)
+		{
+			for (Request request : batch)
+				request.future.completeExceptionally(e);
+
+			// an error also stops the dispatcher, whose finally fails everything still queued
+			if (e instanceof Error)
+				throw (Error)e;
+
+			return;
+		}
+
+		batches.incrementAndGet();
+		requests.addAndGet(rows);
+
+		for (int r = 0; r < rows; r++)
+			batch.get(r).future.complete(java.util.Arrays.copyOfRange(results, r * outputCount, (r + 1) * outputCount));
+	}
+
+	// #END: Dispatcher
+
+
+	// #BEGIN: Latency Report
+
+	/**
+	 * Measures latency and throughput with a number of clients each submitting one pattern at a time and waiting for its result,
+	 * first calling {@link NeuralNetwork#predict(double[], double[])} directly and then through dispatchers with increasing
+	 * batch sizes.
+	 * @param network the trained neural network to serve.
+	 * @param patterns the input patterns the clients cycle through.
+	 * @param clients the number of concurrent client threads.
+	 * @param requests the number of patterns each client submits per measurement, after as many unmeasured warm-up patterns.
+	 * @param maxBatchSizes the batch sizes to measure.
+	 * @param maxWaitMicros the longest wait, in microseconds, for a batch to fill.
+	 * @return a table of batch size, mean batch, throughput and the 50th, 99th and 100th percentile latency.
+	 */
+	public static String latencyReport(final NeuralNetwork network, final double[][] patterns, final int clients, final int requests, final int[] maxBatchSizes, final long maxWaitMicros)
+	{
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%10s %10s %14s %10s %10s %10s%n", "max batch", "mean batch", "requests/s", "p50 us", "p99 us", "max us"));
+
+		for (int m = -1; m < maxBatchSizes.length; m++)
+		{
+			InferenceDispatcher dispatcher = (m < 0 ? null : new InferenceDispatcher(network, maxBatchSizes[m], maxWaitMicros, TimeUnit.MICROSECONDS, Math.max(clients, maxBatchSizes[m]) * 2));
+
+			try
+			{
+				// warm up before timing
+				measure(network, dispatcher, patterns, clients, requests);
+
+				long batches = (dispatcher != null ? dispatcher.getBatches() : 0);
+				long served = (dispatcher != null ? dispatcher.getRequests() : 0);
+
+				long begin = System.nanoTime();
+				long[] latencies = measure(network, dispatcher, patterns, clients, requests);
+				double seconds = (System.nanoTime() - begin) / 1e9;
+
+				java.util.Arrays.sort(latencies);
+				double meanBatch = (dispatcher != null ? (double)(dispatcher.getRequests() - served) / (dispatcher.getBatches() - batches) : 1.0);
+
+				report.append(String.format("%10s %10.1f %14.0f %10.1f %10.1f %10.1f%n", (m < 0 ? "direct" : String.valueOf(maxBatchSizes[m])),
+						meanBatch, latencies.length / seconds, percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3,
+						latencies[latencies.length - 1] / 1e3));
+			}
+			finally
+			{
+				if (dispatcher != null)
+					dispatcher.close();
+			}
+		}
+
+		return report.toString();
+	}
+
+	/**
+	 * Runs the clients, each predicting its share of the patterns one at a time, and returns the latency of every prediction.
+	 */
+	private static long[] measure(final NeuralNetwork network, final InferenceDispatcher dispatcher, final double[][] patterns, final int clients, final int requests)
+	{
+		final long[] latencies = new long[clients * requests];
+		final Thread[] threads = new Thread[clients];
+		final RuntimeException[] failure = new RuntimeException[1];
+
+		for (int c = 0; c < clients; c++)
+		{
+			final int client = c;
+			threads[c] = new Thread(() ->
+			{
+				double[] outputVals = new double[network.getTopology()[network.getTopology().length - 1]];
+
+				try
+				{
+					for (int i = 0; i < requests; i++)
+					{
+						double[] inputVals = patterns[(client * requests + i) % patterns.length];
+
+						long start = System.nanoTime();
+						if (dispatcher == null)
+							network.predict(inputVals, outputVals);
+						else
+							dispatcher.submit(inputVals).get();
+
+						latencies[client * requests + i] = System.nanoTime() - start;
+					}
+				}
+				catch (InterruptedException | ExecutionException | RuntimeException e)
+				{
+					synchronized (failure)
+					{
+						failure[0] = new IllegalStateException("Client failed.", e);
+					}
+				}
+			}, "latency-client-" + c);
+
+			threads[c].start();
+		}
+
+		for (Thread thread : threads)
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while measuring latency.", e);
+			}
+		}
+
+		synchronized (failure)
+		{
+			if (failure[0] != null)
+				throw failure[0];
+		}
+
+		return latencies;
+	}
+
+	private static double percentile(final long[] sorted, final double fraction)
+	{
+		return sorted[Math.min(sorted.length - 1, (int)Math.ceil(fraction * sorted.length) - 1)];
+	}
+
+	// #END: Latency Report
+
+
+	// #BEGIN: Fields
+
+	public int getMaxBatchSize()
+	{
+		return maxBatchSize;
+	}
+
+	public long getMaxWaitNanos()
+	{
+		return maxWaitNanos;
+	}
+
+	/**
+	 * Returns the number of patterns predicted so far.
+	 * @return the number of patterns.
+	 */
+	public long getRequests()
+	{
+		return requests.get();
+	}
+
+	/**
+	 * Returns the number of batches run so far; the mean batch size is {@link #getRequests()} divided by this.
+	 * @return the number of batches.
+	 */
+	public long getBatches()
+	{
+		return batches.get();
+	}
+
+	/**
+	 * Returns the number of patterns waiting in the queue.
+	 * @return the queue length.
+	 */
+	public int getQueued()
+	{
+		return queue.size();
+	}
+
+	// #END: Fields
+
+
+	// #BEGIN: Request
+
+	/**
+	 * A queued pattern and the future of its outputs.
+	 */
+	private static final class Request
+	{
+		private final double[] inputVals;
+		private final long queued;
+		private final CompletableFuture<double[]> future = new CompletableFuture<double[]>();
+
+		Request(final double[] inputVals)
+		{
+			this.inputVals = inputVals;
+			this.queued = System.nanoTime();
+		}
+	}
+
+	// #END: Request
+}
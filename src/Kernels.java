@@ -0,0 +1,130 @@
+import java.nio.ByteBuffer;
+
+
+/**
+ * The inner loops of the dense layers: matrix products, vector updates and the element-wise iRPROP+ step.
+ * <p>
+ * {@link #INSTANCE} is the Vector API backend (<code>VectorKernels</code>) when it has been compiled in and the
+ * <code>jdk.incubator.vector</code> module is present, and the scalar backend otherwise. Setting the system property
+ * <code>ann.kernels=scalar</code> forces the scalar backend.
+ */
+interface Kernels
+{
+	/**
+	 * The kernels used by every dense layer.
+	 */
+	Kernels INSTANCE = Loader.load();
+
+
+	/**
+	 * Multiplies a block of packed patterns by a weight matrix: <code>output[r][j] = sum(input[r][i] * weights[j][i])</code>.
+	 * @param input the packed input patterns, <code>inputs</code> values per pattern.
+	 * @param inOffset the index of the first input value.
+	 * @param rows the number of patterns.
+	 * @param inputs the number of values per pattern.
+	 * @param weights the row-major weight matrix, one row of <code>stride</code> values per neuron.
+	 * @param stride the length of a weight row.
+	 * @param neurons the number of weight rows.
+	 * @param output the array receiving the packed sums, <code>neurons</code> values per pattern.
+	 * @param outOffset the index of the first output value.
+	 */
+	void multiply(double[] input, int inOffset, int rows, int inputs, double[] weights, int stride, int neurons, double[] output, int outOffset);
+
+	/**
+	 * Off-heap form of {@link #multiply(double[], int, int, int, double[], int, int, double[], int)}, reading the weight matrix from
+	 * a little-endian buffer such as a mapped model file. Every sum accumulates in the same order, so results are identical.
+	 * @param weights the buffer holding the row-major weight matrix from its byte index 0, in little-endian order.
+	 */
+	void multiply(double[] input, int inOffset, int rows, int inputs, ByteBuffer weights, int stride, int neurons, double[] output, int outOffset);
+
+	/**
+	 * Adds a scaled vector to another: <code>y[i] += alpha * x[i]</code>.
+	 */
+	void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+	/**
+	 * Sets a vector to a scaled vector: <code>y[i] = alpha * x[i]</code>.
+	 */
+	void scale(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+	/**
+	 * Applies a per-column affine transform to a block of packed rows in place, <code>values[r][c] = fma(values[r][c], scale[c], shift[c])</code>.
+	 * The fused multiply-add rounds once, so every backend returns the same result.
+	 * @param values the packed rows, <code>scale.length</code> values per row.
+	 * @param offset the index of the first value.
+	 * @param rows the number of rows.
+	 * @param scale the factor of each column.
+	 * @param shift the term added to each column.
+	 */
+	void affine(double[] values, int offset, int rows, double[] scale, double[] shift);
+
+	/**
+	 * Applies one iRPROP+ step to the elements <code>[from, to)</code> of the given arrays.
+	 * @param backtrack the boolean determining whether weight changes are reverted where the gradient changed sign.
+	 * @return the number of elements whose gradient changed sign.
+	 */
+	int rprop(double[] weights, double[] lastWeightChanges, double[] gradients, double[] lastGradients, double[] learnDeltas, int from, int to,
+			boolean backtrack, double posEta, double negEta, double minDelta, double maxDelta);
+
+
+	/**
+	 * Single-precision form of {@link #multiply(double[], int, int, int, double[], int, int, double[], int)}.
+	 */
+	void multiply(float[] input, int inOffset, int rows, int inputs, float[] weights, int stride, int neurons, float[] output, int outOffset);
+
+	/**
+	 * Single-precision form of {@link #axpy(double, double[], int, double[], int, int)}.
+	 */
+	void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+	/**
+	 * Single-precision form of {@link #scale(double, double[], int, double[], int, int)}.
+	 */
+	void scale(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+	/**
+	 * Single-precision form of {@link #rprop(double[], double[], double[], double[], double[], int, int, boolean, double, double, double, double)}.
+	 */
+	int rprop(float[] weights, float[] lastWeightChanges, float[] gradients, float[] lastGradients, float[] learnDeltas, int from, int to,
+			boolean backtrack, float posEta, float negEta, float minDelta, float maxDelta);
+
+
+	/**
+	 * Multiplies a block of packed 8-bit patterns by an 8-bit weight matrix with <code>inputs</code> values per row, accumulating
+	 * in <code>int</code>: <code>output[r][j] = sum(input[r][i] * weights[j][i])</code>. Integer sums are exact, so every backend
+	 * returns the same result as long as they cannot overflow.
+	 */
+	void multiply(byte[] input, int rows, int inputs, byte[] weights, int neurons, int[] output);
+
+
+	/**
+	 * Selects the kernel backend once, when the interface is initialized.
+	 */
+	final class Loader
+	{
+		private Loader()
+		{
+		}
+
+		static Kernels load()
+		{
+			if ("scalar".equalsIgnoreCase(System.getProperty("ann.kernels")))
+				return new ScalarKernels();
+
+			try
+			{
+				return (Kernels)Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+			}
+			catch (Exception e)
+			{
+				// not compiled in
+				return new ScalarKernels();
+			}
+			catch (LinkageError e)
+			{
+				// compiled in, but jdk.incubator.vector is not in the module graph
+				return new ScalarKernels();
+			}
+		}
+	}
+}
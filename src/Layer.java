@@ -22,6 +22,11 @@ class Layer
 		neurons = new ArrayList<Neuron>(size);
 	}
 	
+	public Layer(final ArrayList<Neuron> neurons)
+	{
+		this.neurons = neurons;
+	}
+	
 	// #END: Public Functions
 	
 	
@@ -0,0 +1,116 @@
+import java.nio.ByteBuffer;
+
+
+/**
+ * The weights feeding one layer of a neural network, read in place from a little-endian buffer rather than copied into an array,
+ * for inference only.
+ * <p>
+ * The buffer holds <code>neurons * stride</code> doubles in the layout of {@link DenseLayer}, typically a read-only mapping of a
+ * model file. Sums accumulate in the same order as the array kernels, so results match a {@link DenseLayer} with the same weights
+ * exactly.
+ */
+class MappedLayer implements ForwardLayer
+{
+
+	// #BEGIN: Declarations
+	private final int inputs;
+	private final int neurons;
+	private final int stride;
+	private final boolean useBias;
+
+	private final ByteBuffer weights;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a layer around a buffer of weights.
+	 * @param inputs the number of neurons in the previous layer.
+	 * @param neurons the number of neurons in this layer.
+	 * @param useBias whether the last column of each row is a bias weight.
+	 * @param weights the little-endian weights, starting at index 0.
+	 * @throws IllegalArgumentException if the buffer does not hold exactly <code>neurons * stride</code> doubles.
+	 */
+	public MappedLayer(final int inputs, final int neurons, final boolean useBias, final ByteBuffer weights) throws IllegalArgumentException
+	{
+		this.inputs = inputs;
+		this.neurons = neurons;
+		this.stride = inputs + (useBias ? 1 : 0);
+		this.useBias = useBias;
+
+		if (weights.capacity() != (long)neurons * stride * 8)
+			throw new IllegalArgumentException("Size of weights buffer does not match the number of neurons and inputs.");
+
+		this.weights = weights;
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Kernels
+
+	/**
+	 * Calculates the activated values of this layer for a block of patterns.
+	 * @param kernel the activation function of this layer.
+	 * @param input the packed input patterns, <code>inputs</code> values per pattern.
+	 * @param inOffset the index of the first input value.
+	 * @param rows the number of patterns.
+	 * @param output the array receiving the packed activated values, <code>neurons</code> values per pattern.
+	 * @param outOffset the index of the first output value.
+	 */
+	@Override
+	public void forwardBatch(final ActivationKernel kernel, final double[] input, final int inOffset, final int rows, final double[] output, final int outOffset)
+	{
+		Kernels.INSTANCE.multiply(input, inOffset, rows, inputs, weights, stride, neurons, output, outOffset);
+
+		// add bias (always multiplied by 1.0)
+		if (useBias)
+		{
+			for (int r = 0, o = outOffset; r < rows; r++, o += neurons)
+				for (int j = 0, row = 0; j < neurons; j++, row += stride)
+					output[o + j] += weights.getDouble((row + inputs) << 3);
+		}
+
+		kernel.activate(output, outOffset, rows * neurons);
+	}
+
+	// #END: Kernels
+
+
+	// #BEGIN: Fields
+
+	@Override
+	public int getInputs()
+	{
+		return inputs;
+	}
+
+	@Override
+	public int getNeurons()
+	{
+		return neurons;
+	}
+
+	public int getStride()
+	{
+		return stride;
+	}
+
+	@Override
+	public boolean isUseBias()
+	{
+		return useBias;
+	}
+
+	/**
+	 * Returns the number of bytes of weights this layer reads.
+	 * @return the size of the weights buffer.
+	 */
+	public long getByteCount()
+	{
+		return weights.capacity();
+	}
+
+	// #END: Fields
+}
@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+
+/**
+ * An inference-only view of a saved {@link NeuralNetwork} whose weights stay in the model file, mapped read-only into memory
+ * instead of being copied onto the heap.
+ * <p>
+ * The operating system backs a read-only mapping with the pages of its file cache, so every process on a host that maps the same
+ * file shares one physical copy of the weights, and none of them spends heap or garbage collection time on it. Only the weights
+ * of each layer are mapped; the iRPROP+ state stored next to them is never touched, so it is never paged in. The file must not
+ * be rewritten while it is mapped; save new models to a new file and map that instead.
+ * <p>
+ * Predictions are identical to those of the network loaded from the same file with {@link NeuralNetwork#load(Path)}.
+ * <pre>
+ * MappedNetwork network = MappedNetwork.map(Paths.get("model.bin"));
+ * network.predict(inputVals, outputVals);
+ * </pre>
+ */
+public final class MappedNetwork
+{
+
+	// #BEGIN: Declarations
+	private final ActivationFunction[] activations;
+
+	// mappedLayers[l] holds the weights feeding layer l + 1
+	private final MappedLayer[] mappedLayers;
+	private final FeedForward forward;
+
+	private final double rangeMin;
+	private final double rangeMax;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a mapped network around the layers of a mapped model file.
+	 * @param activationFuncs the activation function of each layer after the input layer.
+	 * @param rangeMin the lower-bound of the suggested input range.
+	 * @param rangeMax the upper-bound of the suggested input range.
+	 * @param normalizer the normalizer applied to every input, or null.
+	 * @param mappedLayers the weights feeding each layer after the input layer.
+	 * @throws IllegalArgumentException if there are no layers, the layers do not fit together or there is not one activation
+	 * function per layer.
+	 */
+	MappedNetwork(final ActivationFunction[] activationFuncs, final double rangeMin, final double rangeMax, final Normalizer normalizer, final MappedLayer[] mappedLayers) throws IllegalArgumentException
+	{
+		this.forward = new FeedForward("MappedNetwork", activationFuncs, normalizer, mappedLayers);
+		this.activations = activationFuncs.clone();
+		this.mappedLayers = mappedLayers;
+
+		this.rangeMin = rangeMin;
+		this.rangeMax = rangeMax;
+	}
+
+	/**
+	 * Maps the weights of a model file saved by {@link NeuralNetwork#save(Path)}. The file can be closed or mapped again by other
+	 * processes at any time; the mapping lasts until the network is garbage collected.
+	 * @param path the file to map.
+	 * @return the mapped network.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the file is not a model of a supported version, or a layer is larger than 2 GB.
+	 */
+	public static MappedNetwork map(final Path path) throws IOException, IllegalArgumentException
+	{
+		return ModelFile.map(path);
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Feed-Forward
+
+	/**
+	 * Feeds given <code>inputVals</code> through the network, using scratch buffers private to the calling thread.
+	 * Any number of threads may predict concurrently.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	public double[] predict(final double[] inputVals, final double[] outputVals) throws IllegalArgumentException
+	{
+		return forward.predict(inputVals, outputVals);
+	}
+
+	/**
+	 * Feeds given <code>inputVals</code> through the network using caller-supplied scratch buffers. No memory is allocated.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @param scratch the buffers created by {@link #createScratch()}, which must not be shared by concurrent calls.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	public double[] predict(final double[] inputVals, final double[] outputVals, final double[][] scratch) throws IllegalArgumentException
+	{
+		return forward.predict(inputVals, outputVals, scratch);
+	}
+
+	/**
+	 * Feeds a block of patterns through the network, carrying up to 128 patterns through every layer together so each page of
+	 * weights is read once per block. Results are identical to calling {@link #predict(double[], double[])} on each pattern.
+	 * @param inputs the packed input patterns, one first-layer sized row after another.
+	 * @param rows the number of patterns.
+	 * @param results the preallocated array receiving the packed output-layer values of every pattern.
+	 * @return results.
+	 * @throws IllegalArgumentException if inputs or results are too small to hold the given number of patterns.
+	 */
+	public double[] predictBatch(final double[] inputs, final int rows, final double[] results) throws IllegalArgumentException
+	{
+		return forward.predictBatch(inputs, rows, results);
+	}
+
+	/**
+	 * Creates the scratch buffers needed by {@link #predict(double[], double[], double[][])}: two arrays as wide as the widest
+	 * hidden layer and one holding the normalized input.
+	 * @return the scratch buffers.
+	 */
+	public double[][] createScratch()
+	{
+		return forward.createScratch();
+	}
+
+	// #END: Feed-Forward
+
+
+	// #BEGIN: Fields
+
+	public double getRangeMin()
+	{
+		return rangeMin;
+	}
+
+	public double getRangeMax()
+	{
+		return rangeMax;
+	}
+
+	public boolean isUseBias()
+	{
+		return forward.isUseBias();
+	}
+
+	public Normalizer getNormalizer()
+	{
+		return forward.getNormalizer();
+	}
+
+	/**
+	 * Returns the activation function of each layer after the input layer.
+	 * @return a copy of the activation functions, where index 0 belongs to the first layer after the input layer.
+	 */
+	public ActivationFunction[] getActivationFunctions()
+	{
+		return activations.clone();
+	}
+
+	/**
+	 * Returns the number of neurons in each layer of the network.
+	 * @return a copy of the topology array, where index 0 is the input layer.
+	 */
+	public int[] getTopology()
+	{
+		return forward.getTopology().clone();
+	}
+
+	/**
+	 * Returns the number of bytes of the model file mapped for the weights, which is all prediction ever reads from it.
+	 * @return the number of mapped bytes.
+	 */
+	public long getMappedBytes()
+	{
+		long bytes = 0;
+		for (MappedLayer layer : mappedLayers)
+			bytes += layer.getByteCount();
+
+		return bytes;
+	}
+
+	// #END: Fields
+}
@@ -0,0 +1,550 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Versioned binary format for a trained {@link NeuralNetwork}.
+ * <p>
+ * All values are little-endian. The header holds a magic number, the format version, the activation function of the output
+ * layer, a flag word (bias, last error present), the input range, the error statistics, the topology and (since version 2) the
+ * activation function of every layer after the input layer, padded to a multiple of 8 bytes.
+ * It is followed, for each dense layer in order, by five <code>neurons * stride</code> double arrays in the layout of
+ * {@link DenseLayer}: weights, gradients, last gradients, learn deltas and last weight changes. When the network has been pruned
+ * (since version 3) each layer also stores the sorted indices of its pruned connections, as a count followed by the indices,
+ * padded to a multiple of 8 bytes. When the network has a {@link Normalizer} (since version 4) the layers are followed by its mode,
+ * column count, pattern count and target range and by the minimum, maximum, mean and standard deviation of every column.
+ * Since version 5 the header ends with the iRPROP+ parameters of the network, so a resumed run steps exactly as before; older
+ * files load with {@link RpropParameters#DEFAULT}.
+ * <p>
+ * Because every array starts on an 8-byte boundary, loading streams the file through a small buffer and moves each array into
+ * its layer with bulk copies; no value is parsed individually, and files larger than 2 GB load like any other.
+ */
+final class ModelFile
+{
+
+	// #BEGIN: Declarations
+	// "ANN" followed by a format byte
+	static final int MAGIC = 0x414E4E00;
+	static final int VERSION = 5;
+
+	private static final int FLAG_BIAS = 1;
+	private static final int FLAG_LAST_ERROR = 2;
+	private static final int FLAG_PRUNED = 4;
+	private static final int FLAG_NORMALIZER = 8;
+
+	// mode, column count, pattern count, target min/max
+	private static final int NORMALIZER_HEADER = 4 + 4 + 8 + 2 * 8;
+
+	// magic, version, activation, flags, range min/max, last error, recent average error/smoothing, layer count
+	private static final int FIXED_HEADER = 4 * 4 + 5 * 8 + 4;
+
+	// posEta, negEta, min/max delta, initial learn delta
+	private static final int RPROP_HEADER = 5 * 8;
+
+	// size of the buffer used to stream arrays to disk
+	private static final int WRITE_CHUNK = 1 << 16;
+	// #END: Declarations
+
+
+	private ModelFile()
+	{
+	}
+
+
+	// #BEGIN: Public Functions
+
+	/**
+	 * Writes a neural network to a file, replacing any existing content.
+	 * @param network the neural network to write.
+	 * @param path the file to write.
+	 * @throws IOException if the file cannot be written.
+	 */
+	static void save(final NeuralNetwork network, final Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			write(network, channel);
+		}
+	}
+
+	/**
+	 * Writes a neural network to the current position of a channel.
+	 * @param network the neural network to write.
+	 * @param channel the channel to write to.
+	 * @throws IOException if the channel cannot be written.
+	 */
+	static void write(final NeuralNetwork network, final FileChannel channel) throws IOException
+	{
+		final int[] topology = network.getTopology();
+
+		final ActivationFunction[] activations = network.getActivationFunctions();
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(WRITE_CHUNK, headerSize(VERSION, topology.length))).order(ByteOrder.LITTLE_ENDIAN);
+
+		Double lastError = network.getLastError();
+		int flags = (network.isUseBias() ? FLAG_BIAS : 0) | (lastError != null ? FLAG_LAST_ERROR : 0);
+		for (int d = 0; d < network.getDenseLayerCount(); d++)
+			if (network.getDenseLayer(d).getPruned().length > 0)
+				flags |= FLAG_PRUNED;
+
+		final Normalizer normalizer = network.getNormalizer();
+		if (normalizer != null)
+			flags |= FLAG_NORMALIZER;
+
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(network.getActivationFunction().ordinal()).putInt(flags);
+		buffer.putDouble(network.getRangeMin()).putDouble(network.getRangeMax());
+		buffer.putDouble(lastError != null ? lastError : Constants.DBL_ZERO);
+		buffer.putDouble(network.getRecentAvgError()).putDouble(network.getRecentAvgSmoothing());
+		buffer.putInt(topology.length);
+		for (int size : topology)
+			buffer.putInt(size);
+		for (ActivationFunction func : activations)
+			buffer.putInt(func.ordinal());
+		while (buffer.position() < headerSize(VERSION, topology.length) - RPROP_HEADER)
+			buffer.put((byte)0);
+
+		final RpropParameters rprop = network.getRpropParameters();
+		buffer.putDouble(rprop.getPosEta()).putDouble(rprop.getNegEta());
+		buffer.putDouble(rprop.getMinDelta()).putDouble(rprop.getMaxDelta()).putDouble(rprop.getInitLearnDelta());
+
+		for (int d = 0; d < network.getDenseLayerCount(); d++)
+		{
+			DenseLayer dense = network.getDenseLayer(d);
+
+			write(dense.getWeights(), buffer, channel);
+			write(dense.getGradients(), buffer, channel);
+			write(dense.getLastGradients(), buffer, channel);
+			write(dense.getLearnDeltas(), buffer, channel);
+			write(dense.getLastWeightChanges(), buffer, channel);
+
+			if ((flags & FLAG_PRUNED) != 0)
+				write(dense.getPruned(), buffer, channel);
+		}
+
+		if (normalizer != null)
+			write(normalizer, buffer, channel);
+
+		flush(buffer, channel);
+	}
+
+	/**
+	 * Loads a neural network from a file, reading it in chunks so it may exceed 2 GB.
+	 * @param path the file to read.
+	 * @return the neural network.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the file is not a model of a supported version.
+	 */
+	static NeuralNetwork load(final Path path) throws IOException, IllegalArgumentException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			return read(new ModelInput(channel, 0));
+		}
+	}
+
+	/**
+	 * Reads a neural network from an input, starting at its current position. The position is advanced past the model.
+	 * @param in the input holding the model.
+	 * @return the neural network.
+	 * @throws IOException if the input cannot be read.
+	 * @throws IllegalArgumentException if the input does not hold a complete model of a supported version.
+	 */
+	static NeuralNetwork read(final ModelInput in) throws IOException, IllegalArgumentException
+	{
+		try
+		{
+			Header header = readHeader(in);
+			final int[] topology = header.topology;
+
+			DenseLayer[] denseLayers = new DenseLayer[topology.length - 1];
+			for (int d = 0; d < denseLayers.length; d++)
+			{
+				DenseLayer dense = new DenseLayer(topology[d], topology[d + 1], header.useBias);
+
+				read(in, dense.getWeights());
+				read(in, dense.getGradients());
+				read(in, dense.getLastGradients());
+				read(in, dense.getLearnDeltas());
+				read(in, dense.getLastWeightChanges());
+
+				if (header.pruned)
+					dense.setPruned(readInts(in, dense.getWeights().length));
+
+				denseLayers[d] = dense;
+			}
+
+			NeuralNetwork network = new NeuralNetwork(header.activations, header.useBias, header.rangeMin, header.rangeMax, denseLayers,
+					header.lastError, header.recentAvgError, header.recentAvgSmoothing, header.rprop);
+
+			if (header.normalized)
+				network.setNormalizer(readNormalizer(in));
+
+			return network;
+		}
+		catch (java.nio.BufferUnderflowException e)
+		{
+			throw new IllegalArgumentException("Model file is truncated.", e);
+		}
+	}
+
+	/**
+	 * Maps the weights of a model file read-only for inference, leaving them in the file instead of copying them onto the heap.
+	 * Only the header and the normalizer are read; each layer's weights are mapped on their own, so the file may exceed 2 GB as
+	 * long as no single layer does.
+	 * @param path the file to map.
+	 * @return the mapped network.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the file is not a model of a supported version, or a layer is too large to map.
+	 */
+	static MappedNetwork map(final Path path) throws IOException, IllegalArgumentException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			ModelInput in = new ModelInput(channel, 0);
+
+			Header header = readHeader(in);
+			final int[] topology = header.topology;
+			final int stride = (header.useBias ? 1 : 0);
+
+			long offset = in.position();
+			MappedLayer[] mappedLayers = new MappedLayer[topology.length - 1];
+			for (int d = 0; d < mappedLayers.length; d++)
+			{
+				long size = (long)topology[d + 1] * (topology[d] + stride) * 8;
+				if (size > Integer.MAX_VALUE)
+					throw new IllegalArgumentException("Layer " + (d + 1) + " is too large to map.");
+
+				if (offset + 5 * size > in.size())
+					throw new IllegalArgumentException("Model file is truncated.");
+
+				// the weights are the first of the five arrays of each layer
+				ByteBuffer weights = channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+				mappedLayers[d] = new MappedLayer(topology[d], topology[d + 1], header.useBias, weights);
+
+				offset += 5 * size;
+
+				// skip the pruned indices, a count and the indices padded to 8 bytes
+				if (header.pruned)
+				{
+					in.position(offset);
+					int length = in.getInt();
+					offset += 4 + 4L * (length + ((length & 1) == 0 ? 1 : 0));
+				}
+			}
+
+			Normalizer normalizer = null;
+			if (header.normalized)
+			{
+				in.position(offset);
+				normalizer = readNormalizer(in);
+			}
+
+			return new MappedNetwork(header.activations, header.rangeMin, header.rangeMax, normalizer, mappedLayers);
+		}
+		catch (java.nio.BufferUnderflowException e)
+		{
+			throw new IllegalArgumentException("Model file is truncated.", e);
+		}
+	}
+
+	// #END: Public Functions
+
+
+	// #BEGIN: Private Functions
+
+	/**
+	 * The header fields of a model file.
+	 */
+	private static final class Header
+	{
+		private ActivationFunction[] activations;
+		private int[] topology;
+		private boolean useBias;
+		private boolean pruned;
+		private boolean normalized;
+
+		private double rangeMin;
+		private double rangeMax;
+		private Double lastError;
+		private double recentAvgError;
+		private double recentAvgSmoothing;
+		private RpropParameters rprop;
+	}
+
+	/**
+	 * Reads the header of a model file from the current position of an input and positions it at the first layer.
+	 */
+	private static Header readHeader(final ModelInput in) throws IOException, IllegalArgumentException
+	{
+		final long start = in.position();
+
+		if (in.getInt() != MAGIC)
+			throw new IllegalArgumentException("Not a neural network model file.");
+
+		int version = in.getInt();
+		if (version < 1 || version > VERSION)
+			throw new IllegalArgumentException("Unsupported model file version " + version + ".");
+
+		ActivationFunction output = activation(in.getInt());
+
+		Header header = new Header();
+
+		int flags = in.getInt();
+		header.useBias = (flags & FLAG_BIAS) != 0;
+		header.pruned = (flags & FLAG_PRUNED) != 0;
+		header.normalized = (flags & FLAG_NORMALIZER) != 0;
+
+		header.rangeMin = in.getDouble();
+		header.rangeMax = in.getDouble();
+		double lastError = in.getDouble();
+		header.lastError = ((flags & FLAG_LAST_ERROR) != 0 ? lastError : null);
+		header.recentAvgError = in.getDouble();
+		header.recentAvgSmoothing = in.getDouble();
+
+		int[] topology = new int[in.getInt()];
+		if (topology.length < 2)
+			throw new IllegalArgumentException("Cannot load a neural network with less than two layers.");
+		for (int l = 0; l < topology.length; l++)
+			topology[l] = in.getInt();
+		header.topology = topology;
+
+		// version 1 used one activation function for every layer
+		ActivationFunction[] activations = new ActivationFunction[topology.length - 1];
+		for (int l = 0; l < activations.length; l++)
+			activations[l] = (version >= 2 ? activation(in.getInt()) : output);
+		header.activations = activations;
+
+		header.rprop = RpropParameters.DEFAULT;
+		if (version >= 5)
+		{
+			in.position(start + headerSize(version, topology.length) - RPROP_HEADER);
+			header.rprop = new RpropParameters(in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+		}
+
+		in.position(start + headerSize(version, topology.length));
+
+		return header;
+	}
+
+	private static int headerSize(final int version, final int layers)
+	{
+		int size = FIXED_HEADER + 4 * layers + (version >= 2 ? 4 * (layers - 1) : 0);
+
+		return ((size + 7) & ~7) + (version >= 5 ? RPROP_HEADER : 0);
+	}
+
+	/**
+	 * Reads a normalizer written by {@link #write(Normalizer, ByteBuffer, FileChannel)}.
+	 */
+	static Normalizer readNormalizer(final ModelInput in) throws IOException, IllegalArgumentException
+	{
+		int ordinal = in.getInt();
+		if (ordinal < 0 || ordinal >= Normalizer.Mode.values().length)
+			throw new IllegalArgumentException("Unknown normalizer mode " + ordinal + ".");
+
+		int width = in.getInt();
+		if (width < 1)
+			throw new IllegalArgumentException("Invalid normalizer width " + width + ".");
+
+		long count = in.getLong();
+		double targetMin = in.getDouble();
+		double targetMax = in.getDouble();
+
+		double[][] stats = new double[4][width];
+		for (double[] column : stats)
+			read(in, column);
+
+		return new Normalizer(Normalizer.Mode.values()[ordinal], targetMin, targetMax, count, stats[0], stats[1], stats[2], stats[3]);
+	}
+
+	private static ActivationFunction activation(final int ordinal) throws IllegalArgumentException
+	{
+		if (ordinal < 0 || ordinal >= ActivationFunction.values().length)
+			throw new IllegalArgumentException("Unknown activation function " + ordinal + ".");
+
+		return ActivationFunction.values()[ordinal];
+	}
+
+	/**
+	 * Streams a normalizer to a channel through a buffer: its mode, column count, pattern count and target range, followed by the
+	 * minimum, maximum, mean and standard deviation of every column.
+	 */
+	static void write(final Normalizer normalizer, final ByteBuffer buffer, final FileChannel channel) throws IOException
+	{
+		if (buffer.remaining() < NORMALIZER_HEADER)
+			flush(buffer, channel);
+
+		buffer.putInt(normalizer.getMode().ordinal()).putInt(normalizer.getWidth()).putLong(normalizer.getCount());
+		buffer.putDouble(normalizer.getTargetMin()).putDouble(normalizer.getTargetMax());
+
+		write(normalizer.getMin(), buffer, channel);
+		write(normalizer.getMax(), buffer, channel);
+		write(normalizer.getMean(), buffer, channel);
+		write(normalizer.getStdDev(), buffer, channel);
+	}
+
+	/**
+	 * Streams an array of doubles to a channel through a buffer, flushing the buffer whenever it is full.
+	 */
+	static void write(final double[] values, final ByteBuffer buffer, final FileChannel channel) throws IOException
+	{
+		for (int k = 0; k < values.length; )
+		{
+			if (buffer.remaining() < 8)
+				flush(buffer, channel);
+
+			int count = Math.min(values.length - k, buffer.remaining() / 8);
+			buffer.asDoubleBuffer().put(values, k, count);
+			buffer.position(buffer.position() + count * 8);
+			k += count;
+		}
+	}
+
+	/**
+	 * Streams an array of ints to a channel through a buffer as its length followed by its values, padded to a multiple of 8 bytes.
+	 */
+	static void write(final int[] values, final ByteBuffer buffer, final FileChannel channel) throws IOException
+	{
+		if (buffer.remaining() < 4)
+			flush(buffer, channel);
+		buffer.putInt(values.length);
+
+		for (int k = 0; k < values.length; )
+		{
+			if (buffer.remaining() < 4)
+				flush(buffer, channel);
+
+			int count = Math.min(values.length - k, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(values, k, count);
+			buffer.position(buffer.position() + count * 4);
+			k += count;
+		}
+
+		// pad so that the next array starts on an 8-byte boundary
+		if ((values.length & 1) == 0)
+		{
+			if (buffer.remaining() < 4)
+				flush(buffer, channel);
+			buffer.putInt(0);
+		}
+	}
+
+	/**
+	 * Streams an array of floats to a channel through a buffer, padded to a multiple of 8 bytes.
+	 */
+	static void write(final float[] values, final ByteBuffer buffer, final FileChannel channel) throws IOException
+	{
+		for (int k = 0; k < values.length; )
+		{
+			if (buffer.remaining() < 4)
+				flush(buffer, channel);
+
+			int count = Math.min(values.length - k, buffer.remaining() / 4);
+			buffer.asFloatBuffer().put(values, k, count);
+			buffer.position(buffer.position() + count * 4);
+			k += count;
+		}
+
+		pad(values.length * 4L, buffer, channel);
+	}
+
+	/**
+	 * Streams an array of bytes to a channel through a buffer, padded to a multiple of 8 bytes.
+	 */
+	static void write(final byte[] values, final ByteBuffer buffer, final FileChannel channel) throws IOException
+	{
+		for (int k = 0; k < values.length; )
+		{
+			if (!buffer.hasRemaining())
+				flush(buffer, channel);
+
+			int count = Math.min(values.length - k, buffer.remaining());
+			buffer.put(values, k, count);
+			k += count;
+		}
+
+		pad(values.length, buffer, channel);
+	}
+
+	private static void pad(final long length, final ByteBuffer buffer, final FileChannel channel) throws IOException
+	{
+		for (long k = length; (k & 7) != 0; k++)
+		{
+			if (!buffer.hasRemaining())
+				flush(buffer, channel);
+			buffer.put((byte)0);
+		}
+	}
+
+	/**
+	 * Writes the content of a buffer to a channel and clears the buffer.
+	 */
+	static void flush(final ByteBuffer buffer, final FileChannel channel) throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Reads an array of doubles from the current position of an input with bulk copies.
+	 */
+	static void read(final ModelInput in, final double[] values) throws IOException
+	{
+		in.get(values);
+	}
+
+	/**
+	 * Reads an array of floats written by {@link #write(float[], ByteBuffer, FileChannel)} with bulk copies.
+	 */
+	static void read(final ModelInput in, final float[] values) throws IOException
+	{
+		in.get(values);
+		in.skip(padded(values.length * 4L) - values.length * 4L);
+	}
+
+	/**
+	 * Reads an array of bytes written by {@link #write(byte[], ByteBuffer, FileChannel)} with bulk copies.
+	 */
+	static void read(final ModelInput in, final byte[] values) throws IOException
+	{
+		in.get(values);
+		in.skip(padded(values.length) - values.length);
+	}
+
+	private static long padded(final long length)
+	{
+		return (length + 7) & ~7L;
+	}
+
+	/**
+	 * Reads an array of ints written by {@link #write(int[], ByteBuffer, FileChannel)}.
+	 * @param in the input to read from.
+	 * @param max the largest valid length of the array.
+	 * @return the array.
+	 * @throws IOException if the input cannot be read.
+	 * @throws IllegalArgumentException if the length is negative or greater than max.
+	 */
+	static int[] readInts(final ModelInput in, final int max) throws IOException, IllegalArgumentException
+	{
+		int length = in.getInt();
+		if (length < 0 || length > max)
+			throw new IllegalArgumentException("Invalid array length " + length + ".");
+
+		int[] values = new int[length];
+		in.get(values);
+
+		// the count and the ints are padded to 8 bytes
+		if ((length & 1) == 0)
+			in.skip(4);
+
+		return values;
+	}
+
+	// #END: Private Functions
+}
@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Reads the little-endian values of a model file from a channel through a small heap buffer, the reading counterpart of the
+ * chunked writes of {@link ModelFile}.
+ * <p>
+ * Nothing is mapped, so files and arrays of any size can be read; bulk reads copy each array through the buffer one chunk at a
+ * time. Reading past the end of the file throws a {@link BufferUnderflowException}, as reading past the end of a buffer would.
+ */
+final class ModelInput
+{
+
+	// #BEGIN: Declarations
+	// bytes read from the channel at a time
+	private static final int READ_CHUNK = 1 << 16;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(READ_CHUNK).order(ByteOrder.LITTLE_ENDIAN);
+
+	// position in the channel of the first byte not yet read into the buffer
+	private long next;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes an input reading a channel from a given position.
+	 * @param channel the channel to read, which is left open.
+	 * @param position the position of the first value.
+	 */
+	ModelInput(final FileChannel channel, final long position)
+	{
+		this.channel = channel;
+		this.next = position;
+
+		buffer.limit(0);
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Reading
+
+	int getInt() throws IOException
+	{
+		return fill(4).getInt();
+	}
+
+	long getLong() throws IOException
+	{
+		return fill(8).getLong();
+	}
+
+	float getFloat() throws IOException
+	{
+		return fill(4).getFloat();
+	}
+
+	double getDouble() throws IOException
+	{
+		return fill(8).getDouble();
+	}
+
+	/**
+	 * Reads an array of doubles, one chunk at a time.
+	 */
+	void get(final double[] values) throws IOException
+	{
+		for (int i = 0; i < values.length; )
+		{
+			int count = Math.min(values.length - i, fill(8).remaining() / 8);
+			buffer.asDoubleBuffer().get(values, i, count);
+			buffer.position(buffer.position() + count * 8);
+			i += count;
+		}
+	}
+
+	/**
+	 * Reads an array of floats, one chunk at a time.
+	 */
+	void get(final float[] values) throws IOException
+	{
+		for (int i = 0; i < values.length; )
+		{
+			int count = Math.min(values.length - i, fill(4).remaining() / 4);
+			buffer.asFloatBuffer().get(values, i, count);
+			buffer.position(buffer.position() + count * 4);
+			i += count;
+		}
+	}
+
+	/**
+	 * Reads an array of ints, one chunk at a time.
+	 */
+	void get(final int[] values) throws IOException
+	{
+		for (int i = 0; i < values.length; )
+		{
+			int count = Math.min(values.length - i, fill(4).remaining() / 4);
+			buffer.asIntBuffer().get(values, i, count);
+			buffer.position(buffer.position() + count * 4);
+			i += count;
+		}
+	}
+
+	/**
+	 * Reads an array of bytes, one chunk at a time.
+	 */
+	void get(final byte[] values) throws IOException
+	{
+		for (int i = 0; i < values.length; )
+		{
+			int count = Math.min(values.length - i, fill(1).remaining());
+			buffer.get(values, i, count);
+			i += count;
+		}
+	}
+
+	// #END: Reading
+
+
+	// #BEGIN: Position
+
+	/**
+	 * Returns the position in the channel of the next value.
+	 * @return the position.
+	 */
+	long position()
+	{
+		return next - buffer.remaining();
+	}
+
+	/**
+	 * Moves to a position in the channel, keeping the buffered bytes when the position is among them.
+	 * @param position the position of the next value.
+	 */
+	void position(final long position)
+	{
+		long start = next - buffer.limit();
+		if (position >= start && position <= next)
+		{
+			buffer.position((int)(position - start));
+			return;
+		}
+
+		buffer.limit(0);
+		next = position;
+	}
+
+	/**
+	 * Skips a number of bytes.
+	 * @param length the number of bytes to skip.
+	 */
+	void skip(final long length)
+	{
+		position(position() + length);
+	}
+
+	/**
+	 * Returns the size of the channel.
+	 * @return the size in bytes.
+	 * @throws IOException if the size cannot be read.
+	 */
+	long size() throws IOException
+	{
+		return channel.size();
+	}
+
+	// #END: Position
+
+
+	// #BEGIN: Private Functions
+
+	/**
+	 * Reads from the channel until at least a number of bytes are buffered.
+	 */
+	private ByteBuffer fill(final int length) throws IOException
+	{
+		if (buffer.remaining() >= length)
+			return buffer;
+
+		buffer.compact();
+		while (buffer.position() < length)
+		{
+			int read = channel.read(buffer, next);
+			if (read < 0)
+			{
+				buffer.flip();
+				throw new BufferUnderflowException();
+			}
+
+			next += read;
+		}
+
+		return buffer.flip();
+	}
+
+	// #END: Private Functions
+}
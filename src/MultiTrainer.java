@@ -0,0 +1,544 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+
+/**
+ * Trains several neural networks on the same data in one pass, such as the configurations of a hyperparameter sweep.
+ * <p>
+ * The networks may differ in hidden topology, activation functions, bias, weight initialization and {@link RpropParameters}, as
+ * long as they take the same inputs and produce the same outputs. Every block of patterns is read from the source once, and
+ * normalized once per distinct {@link Normalizer} among the networks, then handed to one task per network, so the tasks run in
+ * parallel across the worker threads while each network is trained exactly as {@link NeuralNetwork#train(SampleSource, int)}
+ * would train it. A sweep over K configurations therefore costs one pass over the data rather than K.
+ * {@link #leaderboard(double[][], double[][])} ranks the networks by their error on a validation set.
+ */
+public final class MultiTrainer
+{
+
+	// #BEGIN: Declarations
+	// number of patterns read from the source at a time and handed to every network
+	private static final int BLOCK_ROWS = 1024;
+
+	private final NeuralNetwork[] networks;
+	private final Model[] models;
+
+	// one buffer of normalized inputs per distinct normalizer, and the normalizer of each
+	private final Normalizer[] normalizers;
+	private final double[][] normalized;
+
+	private final double[] inputs;
+	private final double[] expected;
+	private final int inputCount;
+	private final int outputCount;
+
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a trainer running on its own ForkJoinPool.
+	 * @param networks the neural networks to train, which are trained in place. Their normalizers are looked up here, once.
+	 * @param threads the number of worker threads.
+	 * @throws IllegalArgumentException if there are no networks, threads is less than 1, a network is passed twice, or the networks
+	 * differ in their number of inputs or outputs.
+	 */
+	public MultiTrainer(final NeuralNetwork[] networks, final int threads) throws IllegalArgumentException
+	{
+		this(networks, pool(threads), true);
+	}
+
+	/**
+	 * Initializes a trainer running on a given executor. The executor is not shut down by {@link #shutdown()}.
+	 * @param networks the neural networks to train, which are trained in place. Their normalizers are looked up here, once.
+	 * @param executor the executor running one task per network for every block of patterns.
+	 * @throws IllegalArgumentException if there are no networks, a network is passed twice or the networks differ in their number
+	 * of inputs or outputs.
+	 */
+	public MultiTrainer(final NeuralNetwork[] networks, final ExecutorService executor) throws IllegalArgumentException
+	{
+		this(networks, executor, false);
+	}
+
+	private MultiTrainer(final NeuralNetwork[] networks, final ExecutorService executor, final boolean ownsExecutor) throws IllegalArgumentException
+	{
+		if (networks.length == 0)
+			throw new IllegalArgumentException("Cannot initialize MultiTrainer without networks.");
+
+		final int[] first = networks[0].getTopology();
+		this.inputCount = first[0];
+		this.outputCount = first[first.length - 1];
+
+		// group the networks by normalizer, so each distinct normalizer runs once per block
+		IdentityHashMap<Normalizer, Integer> groups = new IdentityHashMap<Normalizer, Integer>();
+		List<Normalizer> distinct = new ArrayList<Normalizer>();
+
+		// each network is trained by its own task, so one instance must not appear twice
+		IdentityHashMap<NeuralNetwork, Integer> seen = new IdentityHashMap<NeuralNetwork, Integer>();
+
+		this.networks = networks.clone();
+		this.models = new Model[networks.length];
+		for (int k = 0; k < networks.length; k++)
+		{
+			final int[] topology = networks[k].getTopology();
+			if (topology[0] != inputCount || topology[topology.length - 1] != outputCount)
+				throw new IllegalArgumentException("Networks differ in their number of inputs or outputs.");
+
+			Integer previous = seen.put(networks[k], k);
+			if (previous != null)
+				throw new IllegalArgumentException("Network " + k + " is the same instance as network " + previous + ".");
+
+			Normalizer normalizer = networks[k].getNormalizer();
+			Integer group = groups.get(normalizer);
+			if (group == null)
+			{
+				group = distinct.size();
+				groups.put(normalizer, group);
+				distinct.add(normalizer);
+			}
+
+			models[k] = new Model(networks[k], group);
+		}
+
+		this.inputs = new double[BLOCK_ROWS * inputCount];
+		this.expected = new double[BLOCK_ROWS * outputCount];
+
+		this.normalizers = distinct.toArray(new Normalizer[distinct.size()]);
+		this.normalized = new double[normalizers.length][];
+		for (int g = 0; g < normalizers.length; g++)
+			normalized[g] = (normalizers[g] == null ? inputs : new double[inputs.length]);
+
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	private static ExecutorService pool(final int threads) throws IllegalArgumentException
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("Cannot initialize MultiTrainer with less than one thread.");
+
+		return new ForkJoinPool(threads);
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Training
+
+	/**
+	 * Trains every network for one pass over the patterns.
+	 * @param data the input values of each pattern.
+	 * @param expectedVals the expected output values of each pattern.
+	 * @param batchSize the number of patterns each network accumulates before each weight update.
+	 * @throws IllegalArgumentException if batchSize is less than 1 or the patterns do not match the networks.
+	 */
+	public void train(final double[][] data, final double[][] expectedVals, final int batchSize) throws IllegalArgumentException
+	{
+		try
+		{
+			train(new ArraySampleSource(data, expectedVals), batchSize);
+		}
+		catch (IOException e)
+		{
+			// arrays cannot fail to be read
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Trains every network for one pass over a sample source, reading each block of patterns once for all of them. Each network
+	 * applies one iRPROP+ step per batch with its own parameters, and reports the pass to its own {@link TrainingListener}.
+	 * Wrap the source in a {@link PrefetchingSource} to read the next block while the networks train on the current one.
+	 * @param source the source of the patterns, which is rewound before the pass.
+	 * @param batchSize the number of patterns each network accumulates before each weight update.
+	 * @throws IOException if the source cannot be read.
+	 * @throws IllegalArgumentException if batchSize is less than 1 or the patterns do not match the networks.
+	 */
+	public void train(final SampleSource source, final int batchSize) throws IOException, IllegalArgumentException
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1.");
+
+		if (source.getInputCount() != inputCount || source.getOutputCount() != outputCount)
+			throw new IllegalArgumentException("Sample source dimensions do not match the first and output layers.");
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(models.length);
+
+		source.rewind();
+
+		try
+		{
+			for (Model model : models)
+				model.begin(batchSize);
+
+			int rows;
+			while ((rows = source.read(inputs, expected, BLOCK_ROWS)) > 0)
+			{
+				for (int g = 0; g < normalizers.length; g++)
+				{
+					if (normalizers[g] != null)
+					{
+						System.arraycopy(inputs, 0, normalized[g], 0, rows * inputCount);
+						normalizers[g].apply(normalized[g], 0, rows);
+					}
+				}
+
+				tasks.clear();
+				for (Model model : models)
+					tasks.add(model.task(normalized[model.group], expected, rows));
+
+				invokeAll(tasks);
+			}
+
+			// last, partial batches
+			tasks.clear();
+			for (Model model : models)
+				tasks.add(model.task(null, null, 0));
+
+			invokeAll(tasks);
+
+			for (Model model : models)
+				model.network.endEpoch();
+		}
+		finally
+		{
+			// a pass that failed is neither committed nor reported, and leaves no partial batch behind
+			for (Model model : models)
+				model.clear();
+		}
+	}
+
+	/**
+	 * Shuts down the ForkJoinPool created by this trainer. Executors supplied by the caller are left running.
+	 */
+	public void shutdown()
+	{
+		if (ownsExecutor)
+			executor.shutdown();
+	}
+
+	// #END: Training
+
+
+	// #BEGIN: Leaderboard
+
+	/**
+	 * Ranks the networks by their training error over the last pass, measured before each weight update.
+	 * @return one result per network, lowest training error first.
+	 */
+	public Result[] leaderboard()
+	{
+		Result[] results = new Result[models.length];
+		for (int k = 0; k < models.length; k++)
+			results[k] = new Result(k, networks[k], models[k].getError(), Double.NaN);
+
+		java.util.Arrays.sort(results, (a, b) -> compare(a.trainingError, b.trainingError, a.index, b.index));
+		return results;
+	}
+
+	/**
+	 * Scores every network on a validation set, in parallel, and ranks the networks by their validation error.
+	 * @param validationData the input values of each validation pattern.
+	 * @param validationExpected the expected output values of each validation pattern.
+	 * @return one result per network, lowest validation error first.
+	 * @throws IllegalArgumentException if the validation set is empty or does not match the networks.
+	 */
+	public Result[] leaderboard(final double[][] validationData, final double[][] validationExpected) throws IllegalArgumentException
+	{
+		final int rows = Math.min(validationData.length, validationExpected.length);
+		if (rows == 0)
+			throw new IllegalArgumentException("Validation set is empty.");
+
+		for (int r = 0; r < rows; r++)
+		{
+			if (validationExpected[r].length != outputCount)
+				throw new IllegalArgumentException("Expected values dimensions do not match number of output-layer neurons.");
+		}
+
+		final double[][] patterns = (rows == validationData.length ? validationData : java.util.Arrays.copyOf(validationData, rows));
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(models.length);
+		final Result[] results = new Result[models.length];
+
+		for (int k = 0; k < models.length; k++)
+		{
+			final int index = k;
+			tasks.add(() ->
+			{
+				double[] predicted = networks[index].predictBatch(patterns, new double[rows * outputCount]);
+
+				double error = Constants.DBL_ZERO;
+				for (int r = 0, o = 0; r < rows; r++)
+				{
+					for (int j = 0; j < outputCount; j++, o++)
+					{
+						double delta = validationExpected[r][j] - predicted[o];
+						error += delta * delta;
+					}
+				}
+
+				results[index] = new Result(index, networks[index], models[index].getError(), Math.sqrt(error / ((double)rows * outputCount)));
+				return null;
+			});
+		}
+
+		invokeAll(tasks);
+
+		java.util.Arrays.sort(results, (a, b) -> compare(a.validationError, b.validationError, a.index, b.index));
+		return results;
+	}
+
+	/**
+	 * Orders errors ascending, NaN last, and equal errors by the index of their network.
+	 */
+	private static int compare(final double a, final double b, final int indexA, final int indexB)
+	{
+		int order = Double.compare(a, b);
+		return (order != 0 ? order : Integer.compare(indexA, indexB));
+	}
+
+	// #END: Leaderboard
+
+
+	// #BEGIN: Private Functions
+
+	private void invokeAll(final List<Callable<Void>> tasks)
+	{
+		List<Future<Void>> futures;
+		try
+		{
+			futures = executor.invokeAll(tasks);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while training.", e);
+		}
+
+		for (Future<Void> future : futures)
+		{
+			try
+			{
+				future.get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while training.", e);
+			}
+			catch (ExecutionException e)
+			{
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause();
+
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	// #END: Private Functions
+
+
+	// #BEGIN: Fields
+
+	/**
+	 * Returns the networks being trained, in the order they were given.
+	 * @return a copy of the array of networks.
+	 */
+	public NeuralNetwork[] getNetworks()
+	{
+		return networks.clone();
+	}
+
+	// #END: Fields
+
+
+	// #BEGIN: Model
+
+	/**
+	 * The training state of one network: its workspace and the batch it is accumulating across blocks.
+	 */
+	private static final class Model
+	{
+		private final NeuralNetwork network;
+		private final int group;
+
+		private final Workspace workspace;
+		private final double[] expectedVals;
+		private final int outputs;
+
+		// state of the running pass, only touched by one task at a time
+		private TrainingMetrics metrics;
+		private int batchSize;
+		private int inBatch;
+		private double batchError;
+
+		// squared error and patterns of the last pass
+		private double passError;
+		private long passPatterns;
+
+		Model(final NeuralNetwork network, final int group)
+		{
+			this.network = network;
+			this.group = group;
+
+			final int[] topology = network.getTopology();
+			this.workspace = new Workspace(topology);
+			this.outputs = topology[topology.length - 1];
+			this.expectedVals = new double[outputs];
+		}
+
+		void begin(final int batchSize)
+		{
+			this.batchSize = batchSize;
+			this.inBatch = 0;
+			this.batchError = Constants.DBL_ZERO;
+			this.passError = Constants.DBL_ZERO;
+			this.passPatterns = 0;
+
+			this.metrics = network.beginEpoch();
+		}
+
+		/**
+		 * Forgets the pass in progress, including any partial batch, so a failed pass does not leak into the next one.
+		 */
+		void clear()
+		{
+			inBatch = 0;
+			batchError = Constants.DBL_ZERO;
+			metrics = null;
+
+			network.clearEpoch();
+		}
+
+		/**
+		 * Returns the task training the network on a block of patterns, or applying the last, partial batch if rows is 0.
+		 */
+		Callable<Void> task(final double[] inputs, final double[] expected, final int rows)
+		{
+			return () ->
+			{
+				final double[] first = workspace.getValues(0);
+				final TrainingMetrics m = metrics;
+
+				for (int r = 0; r < rows; r++)
+				{
+					System.arraycopy(inputs, r * first.length, first, 0, first.length);
+					System.arraycopy(expected, r * outputs, expectedVals, 0, outputs);
+
+					long t0 = TrainingMetrics.tick(m);
+					network.forward(workspace);
+					long t1 = TrainingMetrics.tick(m);
+					double e = network.backPropagate(workspace, expectedVals, null, inBatch > 0);
+
+					if (m != null)
+						m.patterns(1, t1 - t0, System.nanoTime() - t1, e);
+
+					batchError += e;
+
+					if (++inBatch == batchSize)
+						update();
+				}
+
+				if (rows == 0 && inBatch > 0)
+					update();
+
+				return null;
+			};
+		}
+
+		private void update()
+		{
+			// Root Mean Square over every output of every pattern in the batch
+			network.updateWeights(Math.sqrt(batchError / (inBatch * outputs)));
+
+			passError += batchError;
+			passPatterns += inBatch;
+
+			inBatch = 0;
+			batchError = Constants.DBL_ZERO;
+		}
+
+		/**
+		 * Returns the Root Mean Square error over every output of every pattern of the last pass.
+		 */
+		double getError()
+		{
+			return (passPatterns > 0 ? Math.sqrt(passError / (passPatterns * outputs)) : Double.NaN);
+		}
+	}
+
+	// #END: Model
+
+
+	// #BEGIN: Result
+
+	/**
+	 * The standing of one network on a leaderboard.
+	 */
+	public static final class Result
+	{
+		private final int index;
+		private final NeuralNetwork network;
+		private final double trainingError;
+		private final double validationError;
+
+		Result(final int index, final NeuralNetwork network, final double trainingError, final double validationError)
+		{
+			this.index = index;
+			this.network = network;
+			this.trainingError = trainingError;
+			this.validationError = validationError;
+		}
+
+		/**
+		 * Returns the position of the network in the array given to the trainer.
+		 * @return the index of the network.
+		 */
+		public int getIndex()
+		{
+			return index;
+		}
+
+		public NeuralNetwork getNetwork()
+		{
+			return network;
+		}
+
+		/**
+		 * Returns the RMS error of the network over the last training pass, measured before each weight update.
+		 * @return the training error, or NaN if the network has not been trained.
+		 */
+		public double getTrainingError()
+		{
+			return trainingError;
+		}
+
+		/**
+		 * Returns the RMS error of the network over every output of every validation pattern.
+		 * @return the validation error, or NaN if the leaderboard was not scored on a validation set.
+		 */
+		public double getValidationError()
+		{
+			return validationError;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("#%d %s: training error %.6f, validation error %.6f, %s", index,
+					java.util.Arrays.toString(network.getTopology()), trainingError, validationError, network.getRpropParameters());
+		}
+	}
+
+	// #END: Result
+}
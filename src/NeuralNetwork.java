@@ -1,5 +1,7 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.ListIterator;
+import java.util.SplittableRandom;
 
 
 
@@ -7,20 +9,51 @@ public class NeuralNetwork
 {
 	
 	// #BEGIN: Declarations
+	// number of patterns pulled from a sample source at a time
+	private static final int STREAM_ROWS = 256;
+	
 	private ArrayList<Layer> layers;
 	private ActivationFunction activationFunction;
 	
+	// activation function of each layer after the input layer, and the kernel bound to it
+	private ActivationFunction[] activations;
+	private ActivationKernel[] kernels;
+	
+	// dense weight storage; denseLayers[l] holds the connections feeding layer l + 1
+	private int[] topology;
+	private DenseLayer[] denseLayers;
+	private Workspace workspace;
+	
+	// per-thread scratch buffers for predict, replaced whenever the topology grows
+	private ThreadLocal<double[][]> scratch = createScratchLocal();
+	
 	private double rangeMin;
 	private double rangeMax;
 	private double range;
 	
 	private boolean useBias;
 	
+	// feature-wise normalization applied to every input before the first layer, or null
+	private Normalizer normalizer = null;
+	
 	// statistics about recent error correction
 	private double recentAvgError = Constants.DBL_ZERO;
 	private double recentAvgSmoothing = Constants.DBL_ZERO;
 	private Double lastError = null;
 	
+	// step-size constants of iRPROP+
+	private RpropParameters rprop = RpropParameters.DEFAULT;
+	
+	// incremented whenever the weights, topology or normalizer change, so cached predictions can tell they are stale
+	private volatile long version = 0;
+	
+	// training instrumentation; timing is the metrics of the running pass, or null when the pass is not timed
+	private TrainingListener listener = null;
+	private final TrainingMetrics metrics = new TrainingMetrics();
+	private TrainingMetrics timing = null;
+	private TrainingEpochEvent event = null;
+	private long epoch = 0;
+	
 	// #END: Declarations
 	
 	
@@ -34,11 +67,17 @@ public class NeuralNetwork
 	 */
 	public NeuralNetwork(final ActivationFunction activationFunc, final double rangeMin, final double rangeMax)
 	{
-		setLayers(new ArrayList<Layer>());
 		useBias = true;
 		
 		this.activationFunction = activationFunc;
 		this.setRange(rangeMin, rangeMax);
+		
+		this.activations = new ActivationFunction[0];
+		this.kernels = new ActivationKernel[0];
+		
+		this.topology = new int[0];
+		this.denseLayers = new DenseLayer[0];
+		this.workspace = new Workspace(topology);
 	}
 	
 	/**
@@ -52,7 +91,55 @@ public class NeuralNetwork
 	 */
 	public NeuralNetwork(final ActivationFunction activationFunc, final int[] topology, final boolean useBias, final double rangeMin, final double rangeMax) throws IllegalArgumentException
 	{
-		this.activationFunction = activationFunc;
+		this(uniform(activationFunc, topology.length - 1), topology, useBias, rangeMin, rangeMax);
+	}
+	
+	/**
+	 * Initializes a fully connected neural-network with seeded weights.
+	 * @param activationFunc the activation function to use for neurons in the neural network.
+	 * @param topology the array representing the topology of the neural network where 0 is the input layer and each integer value is the number of neurons in the respective layer.
+	 * @param useBias the boolean determining whether the neural network will employ bias neurons.
+	 * @param rangeMin the lower-bound of the suggested input range.
+	 * @param rangeMax the upper-bound of the suggested input range.
+	 * @param init the weight initialization scheme, or null to pick one per layer with {@link WeightInit#forActivation}.
+	 * @param seed the seed of the random weights; the same seed always gives the same weights.
+	 * @throws IllegalArgumentException if the topology array length is less than 2.
+	 */
+	public NeuralNetwork(final ActivationFunction activationFunc, final int[] topology, final boolean useBias, final double rangeMin, final double rangeMax, final WeightInit init, final long seed) throws IllegalArgumentException
+	{
+		this(uniform(activationFunc, topology.length - 1), topology, useBias, rangeMin, rangeMax, init, seed);
+	}
+	
+	/**
+	 * Initializes a fully connected neural-network with its own activation function for each layer. Weights are drawn from an
+	 * unseeded stream with the scheme suited to each layer's activation function.
+	 * @param activationFuncs the activation function of each layer after the input layer, e.g. tanh for the hidden layers and
+	 * sigmoid or linear for the output layer.
+	 * @param topology the array representing the topology of the neural network where 0 is the input layer and each integer value is the number of neurons in the respective layer.
+	 * @param useBias the boolean determining whether the neural network will employ bias neurons.
+	 * @param rangeMin the lower-bound of the suggested input range.
+	 * @param rangeMax the upper-bound of the suggested input range.
+	 * @throws IllegalArgumentException if the topology array length is less than 2 or there is not one activation function per layer after the input layer.
+	 */
+	public NeuralNetwork(final ActivationFunction[] activationFuncs, final int[] topology, final boolean useBias, final double rangeMin, final double rangeMax) throws IllegalArgumentException
+	{
+		this(activationFuncs, topology, useBias, rangeMin, rangeMax, null, new SplittableRandom().nextLong());
+	}
+	
+	/**
+	 * Initializes a fully connected neural-network with its own activation function for each layer and seeded weights. Each layer
+	 * draws its weights from its own stream, split from the seed in layer order, and fills them in parallel.
+	 * @param activationFuncs the activation function of each layer after the input layer.
+	 * @param topology the array representing the topology of the neural network where 0 is the input layer and each integer value is the number of neurons in the respective layer.
+	 * @param useBias the boolean determining whether the neural network will employ bias neurons.
+	 * @param rangeMin the lower-bound of the suggested input range.
+	 * @param rangeMax the upper-bound of the suggested input range.
+	 * @param init the weight initialization scheme, or null to pick one per layer with {@link WeightInit#forActivation}.
+	 * @param seed the seed of the random weights; the same seed always gives the same weights.
+	 * @throws IllegalArgumentException if the topology array length is less than 2 or there is not one activation function per layer after the input layer.
+	 */
+	public NeuralNetwork(final ActivationFunction[] activationFuncs, final int[] topology, final boolean useBias, final double rangeMin, final double rangeMax, final WeightInit init, final long seed) throws IllegalArgumentException
+	{
 		this.useBias = useBias;
 		
 		this.setRange(rangeMin, rangeMax);
@@ -60,47 +147,22 @@ public class NeuralNetwork
 		if (topology.length < 2)
 			throw new IllegalArgumentException("Cannot initialize NeuralNetwork with less than two layers.");
 		
+		this.setActivationFunctions(activationFuncs, topology.length - 1);
 		
-		// initialize ArrayList
-		setLayers(new ArrayList<Layer>(topology.length));
+		this.topology = topology.clone();
+		this.denseLayers = new DenseLayer[topology.length - 1];
 		
-		// fill and connect each layer
-		Layer previous = null;
-		for (int i = 0; i < topology.length;)
+		// create the connections feeding each layer, each drawn from its own stream
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int l = 1; l < topology.length; l++)
 		{
-			int current = topology[i];
-			
-			// create layer (also increments i and checks if last layer (disables bias))
-			Layer curLayer = new Layer(current);
-			
-			// get previous and next layer sizes (i previously incremented for 'outgoing' check)
-			int incoming = (previous == null ? 0 : previous.getNeurons().size());
-			int outgoing = (i == topology.length ? 0 : topology[i]);
+			DenseLayer dense = new DenseLayer(topology[l - 1], topology[l], useBias);
+			dense.initialize(init != null ? init : WeightInit.forActivation(activations[l - 1]), random.split());
 			
-			// create neurons
-			for (int j = 0; j < current; j++)
-			{
-				Neuron curNeuron = new Neuron(incoming, outgoing);
-				
-				// connect previous layer neurons to new Neuron
-				if (previous != null)
-				{
-					for (Neuron n : previous.getNeurons())
-						new Connection().connect(n, curNeuron);
-					
-					
-					// connect bias
-					if (useBias)
-						new Connection().connect(previous.getBiasNeuron(), curNeuron);
-				}
-				
-				curLayer.getNeurons().add(curNeuron);
-			}
-			
-			this.getLayers().add(curLayer);
-			previous = curLayer;
+			denseLayers[l - 1] = dense;
 		}
 		
+		this.workspace = new Workspace(this.topology);
 	}
 
 	/**
@@ -124,6 +186,72 @@ public class NeuralNetwork
 		this.recentAvgSmoothing = recentAvgSmoothing;
 	}
 	
+	/**
+	 * Initializes a deep copy of a given neural network, including all weights, iRPROP+ state and error statistics.
+	 * @param other the neural network to copy.
+	 */
+	public NeuralNetwork(final NeuralNetwork other)
+	{
+		this.activationFunction = other.activationFunction;
+		this.activations = other.activations.clone();
+		this.kernels = ActivationKernel.Factory.create(activations);
+		this.useBias = other.useBias;
+		
+		this.setRange(other.rangeMin, other.rangeMax);
+		
+		this.topology = other.topology.clone();
+		this.denseLayers = new DenseLayer[other.denseLayers.length];
+		
+		for (int l = 0; l < denseLayers.length; l++)
+		{
+			DenseLayer src = other.denseLayers[l];
+			
+			denseLayers[l] = new DenseLayer(src.getInputs(), src.getNeurons(), src.isUseBias());
+			denseLayers[l].copyFrom(src);
+		}
+		
+		this.workspace = new Workspace(this.topology);
+		this.normalizer = other.normalizer;
+		this.rprop = other.rprop;
+		
+		this.lastError = other.lastError;
+		this.recentAvgError = other.recentAvgError;
+		this.recentAvgSmoothing = other.recentAvgSmoothing;
+	}
+	
+	/**
+	 * Initializes a neural network around existing dense storage, such as the layers of a loaded model.
+	 * @param activationFuncs the activation function of each layer after the input layer.
+	 * @param useBias the boolean determining whether the neural network employs bias neurons.
+	 * @param rangeMin the lower-bound of the suggested input range.
+	 * @param rangeMax the upper-bound of the suggested input range.
+	 * @param denseLayers the connections feeding each layer after the input layer, which are used without copying.
+	 * @param lastError the last error value, or null if there is none.
+	 * @param recentAvgError the recent average error.
+	 * @param recentAvgSmoothing the recent average smoothing factor.
+	 * @param rprop the iRPROP+ parameters the learn deltas were adapted with.
+	 */
+	NeuralNetwork(final ActivationFunction[] activationFuncs, final boolean useBias, final double rangeMin, final double rangeMax, final DenseLayer[] denseLayers, final Double lastError, final double recentAvgError, final double recentAvgSmoothing, final RpropParameters rprop)
+	{
+		this.setActivationFunctions(activationFuncs, denseLayers.length);
+		this.useBias = useBias;
+		
+		this.setRange(rangeMin, rangeMax);
+		
+		this.topology = new int[denseLayers.length + 1];
+		this.topology[0] = denseLayers[0].getInputs();
+		for (int l = 0; l < denseLayers.length; l++)
+			this.topology[l + 1] = denseLayers[l].getNeurons();
+		
+		this.denseLayers = denseLayers;
+		this.workspace = new Workspace(this.topology);
+		
+		this.lastError = lastError;
+		this.recentAvgError = recentAvgError;
+		this.recentAvgSmoothing = recentAvgSmoothing;
+		this.rprop = rprop;
+	}
+	
 	// #END: Constructors
 	
 	
@@ -136,30 +264,37 @@ public class NeuralNetwork
 	 */
 	public void feedForward(final double[] inputVals) throws IllegalArgumentException
 	{
-		ListIterator<Layer> layIter = getLayers().listIterator();
-		
-		{
-			ArrayList<Neuron> firstLayNeurons = layIter.next().getNeurons();
-			// check for invalid size of input values
-			if (inputVals.length != firstLayNeurons.size())
-				throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
-			
-			
-			// plug input values into the neural network
-			for (int i = 0; i < inputVals.length; i++)
-				firstLayNeurons.get(i).setValue(inputVals[i]);
-		}
+		feedForward(workspace, inputVals);
+	}
+	
+	/**
+	 * Feeds given <code>inputVals</code> through the neural network, storing every layer's activations in a given workspace.
+	 * @param ws the workspace receiving the activations.
+	 * @param inputVals the values to input into the first layer.
+	 * @throws IllegalArgumentException if the size of inputVals does not match the number of neurons in the first layer.
+	 */
+	void feedForward(final Workspace ws, final double[] inputVals) throws IllegalArgumentException
+	{
+		// check for invalid size of input values
+		if (topology.length == 0 || inputVals.length != topology[0])
+			throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
 		
-		// feed forward the network
-		Layer curLay = null;
+		// plug input values into the neural network
+		System.arraycopy(inputVals, 0, ws.getValues(0), 0, inputVals.length);
+		if (normalizer != null)
+			normalizer.apply(ws.getValues(0), 0, 1);
 		
-		while (layIter.hasNext())
-		{
-			curLay = layIter.next();
-			
-			for (Neuron curNeuron : curLay.getNeurons())
-				curNeuron.updateValues(activationFunction);
-		}
+		forward(ws);
+	}
+	
+	/**
+	 * Feeds the values already in the first layer of a workspace through the neural network, without normalizing them.
+	 * @param ws the workspace holding the input values and receiving the activations.
+	 */
+	void forward(final Workspace ws)
+	{
+		for (int l = 1; l < topology.length; l++)
+			denseLayers[l - 1].forward(kernels[l - 1], ws.getValues(l - 1), ws.getSummations(l), ws.getValues(l), ws.getDerivatives(l));
 	}
 	
 	/**
@@ -168,116 +303,790 @@ public class NeuralNetwork
 	 */
 	public double[] fetchResults()
 	{
-		// get last layer neurons
-		ArrayList<Neuron> lastLayNeur = getLayers().get(getLayers().size() - 1).getNeurons();
+		return workspace.getValues(topology.length - 1).clone();
+	}
+	
+	/**
+	 * Feeds given <code>inputVals</code> through the neural network without touching its own activations, using scratch buffers
+	 * private to the calling thread. Any number of threads may predict concurrently as long as no thread is training the network.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	public double[] predict(final double[] inputVals, final double[] outputVals) throws IllegalArgumentException
+	{
+		return predict(inputVals, outputVals, scratch.get());
+	}
+	
+	/**
+	 * Feeds given <code>inputVals</code> through the neural network without touching its own activations, using caller-supplied
+	 * scratch buffers. No memory is allocated.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @param scratch the buffers created by {@link #createScratch()}, which must not be shared by concurrent calls.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	public double[] predict(final double[] inputVals, final double[] outputVals, final double[][] scratch) throws IllegalArgumentException
+	{
+		final int outIndex = topology.length - 1;
 		
-		// initialize ArrayList of results with proper size
-		double[] results = new double[lastLayNeur.size()];
+		if (topology.length == 0 || inputVals.length != topology[0])
+			throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
 		
-		for (int i = 0; i < lastLayNeur.size(); i++)
-			results[i] = lastLayNeur.get(i).getValue();
+		if (outputVals.length != topology[outIndex])
+			throw new IllegalArgumentException("Size of output values array does not match the number of output-layer neurons.");
+		
+		return FeedForward.predict(denseLayers, kernels, normalizer, inputVals, outputVals, scratch);
+	}
+	
+	/**
+	 * Feeds a block of patterns through the neural network, running each layer as a register-blocked matrix-matrix product.
+	 * Results are identical to calling {@link #predict(double[], double[])} on each pattern.
+	 * @param inputs the packed input patterns, one first-layer sized row after another.
+	 * @param rows the number of patterns.
+	 * @param results the preallocated array receiving the packed output-layer values of every pattern.
+	 * @return results.
+	 * @throws IllegalArgumentException if inputs or results are too small to hold the given number of patterns.
+	 */
+	public double[] predictBatch(final double[] inputs, final int rows, final double[] results) throws IllegalArgumentException
+	{
+		final int inSize = checkBatch(rows, results);
+		
+		if (inputs.length < (long)rows * inSize)
+			throw new IllegalArgumentException("Size of input values array is less than the number of rows times the number of first-layer neurons.");
+		
+		final double[][] buffers = FeedForward.createBatchBuffers(topology);
+		
+		for (int start = 0; start < rows; start += FeedForward.BATCH_ROWS)
+			FeedForward.predictBlock(denseLayers, kernels, normalizer, buffers, inputs, start * inSize, Math.min(FeedForward.BATCH_ROWS, rows - start), results, start * topology[topology.length - 1]);
 		
 		return results;
 	}
 	
+	/**
+	 * Feeds a set of patterns through the neural network, running each layer as a register-blocked matrix-matrix product.
+	 * Results are identical to calling {@link #predict(double[], double[])} on each pattern.
+	 * @param inputs the input patterns.
+	 * @param results the preallocated array receiving the packed output-layer values of every pattern.
+	 * @return results.
+	 * @throws IllegalArgumentException if a pattern does not match the first layer or results is too small to hold every pattern.
+	 */
+	public double[] predictBatch(final double[][] inputs, final double[] results) throws IllegalArgumentException
+	{
+		final int inSize = checkBatch(inputs.length, results);
+		
+		final double[][] buffers = FeedForward.createBatchBuffers(topology);
+		final double[] packed = new double[Math.min(FeedForward.BATCH_ROWS, inputs.length) * inSize];
+		
+		for (int start = 0; start < inputs.length; start += FeedForward.BATCH_ROWS)
+		{
+			int rows = Math.min(FeedForward.BATCH_ROWS, inputs.length - start);
+			
+			// pack the rows of the block into one contiguous array
+			for (int r = 0; r < rows; r++)
+			{
+				if (inputs[start + r].length != inSize)
+					throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
+				
+				System.arraycopy(inputs[start + r], 0, packed, r * inSize, inSize);
+			}
+			
+			FeedForward.predictBlock(denseLayers, kernels, normalizer, buffers, packed, 0, rows, results, start * topology[topology.length - 1]);
+		}
+		
+		return results;
+	}
+	
+	private int checkBatch(final int rows, final double[] results) throws IllegalArgumentException
+	{
+		if (topology.length == 0)
+			throw new IllegalArgumentException("Cannot predict with a NeuralNetwork without layers.");
+		
+		if (results.length < (long)rows * topology[topology.length - 1])
+			throw new IllegalArgumentException("Size of results array is less than the number of rows times the number of output-layer neurons.");
+		
+		return topology[0];
+	}
+	
+	/**
+	 * Creates the buffers needed by {@link #predict(double[], double[], double[][])}: a pair large enough to hold any hidden layer
+	 * and one holding the normalized input.
+	 * @return the scratch buffers.
+	 */
+	public double[][] createScratch()
+	{
+		return FeedForward.createScratch(topology);
+	}
+	
+	private ThreadLocal<double[][]> createScratchLocal()
+	{
+		return new ThreadLocal<double[][]>()
+		{
+			@Override
+			protected double[][] initialValue()
+			{
+				return createScratch();
+			}
+		};
+	}
+	
 	// #END: Feed-Forward
 	
 	
 	// #BEGIN: Training
 	
+	/**
+	 * Applies one iRPROP+ step using the gradients of the pattern last fed forward.
+	 * @param expectedVals the expected values of the output layer.
+	 * @throws IllegalArgumentException if the size of expectedVals does not match the number of neurons in the output layer.
+	 */
 	public void iRPROP(final double[] expectedVals) throws IllegalArgumentException
 	{
-		Layer outLay = getLayers().get(getLayers().size() - 1);
+		// calculate error and gradients of the pattern
+		double error = backPropagate(workspace, expectedVals, null, false);
 		
-		// check for matching expected and output layer sizes
-		if (expectedVals.length != outLay.getNeurons().size())
-			throw new IllegalArgumentException("Expected values dimensions do not match number of output-layer neurons.");
+		// divide to get average (account for bias)
+		error /= topology[topology.length - 1];
 		
-		double error = Constants.DBL_ZERO;
+		// get the Root Mean Square
+		updateWeights(Math.sqrt(error));
+	}
+	
+	public void train(final double[][] data, final double[][] expectedVals)
+	{
+		train(data, expectedVals, 1);
+	}
+	
+	/**
+	 * Trains the neural network in batches. The gradients of every pattern in a batch are summed and a single iRPROP+ step is
+	 * applied per batch, using the RMS error over the whole batch for weight backtracking. A batch size of 1 trains per pattern,
+	 * and a batch size of at least the number of patterns trains in full-epoch batch mode.
+	 * @param data the input values of each pattern.
+	 * @param expectedVals the expected output values of each pattern.
+	 * @param batchSize the number of patterns to accumulate before each weight update.
+	 * @throws IllegalArgumentException if batchSize is less than 1.
+	 */
+	public void train(final double[][] data, final double[][] expectedVals, final int batchSize) throws IllegalArgumentException
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1.");
 		
-		// calculate error and gradients of output layer
+		int min = Math.min(data.length, expectedVals.length);
+		
+		final TrainingMetrics m = beginEpoch();
+		
+		try
 		{
-			ArrayList<Neuron> outLayNeurons = outLay.getNeurons();
-			
-			for (int i = 0; i < expectedVals.length; i++)
+			for (int start = 0; start < min; start += batchSize)
 			{
-				Neuron nextNeur = outLayNeurons.get(i);
-				double nextExpVal = expectedVals[i];
+				int end = Math.min(start + batchSize, min);
+				double error = Constants.DBL_ZERO;
 				
-				// calculate error
-				double delta = nextExpVal - nextNeur.getValue();
-				error += delta * delta;
+				long t0 = TrainingMetrics.tick(m);
+				for (int i = start; i < end; i++)
+				{
+					feedForward(data[i]);
+					long t1 = TrainingMetrics.tick(m);
+					double e = backPropagate(workspace, expectedVals[i], null, i > start);
+					long t2 = TrainingMetrics.tick(m);
+					
+					if (m != null)
+						m.patterns(1, t1 - t0, t2 - t1, e);
+					
+					error += e;
+					t0 = t2;
+				}
+				
+				// Root Mean Square over every output of every pattern in the batch
+				updateWeights(Math.sqrt(error / ((end - start) * topology[topology.length - 1])));
+			}
+			
+			endEpoch();
+		}
+		finally
+		{
+			// a pass that failed is neither committed nor reported
+			clearEpoch();
+		}
+	}
+	
+	/**
+	 * Trains the neural network in batches with early stopping: after every epoch a snapshot of the weights is scored on a
+	 * validation set in the background while the next epoch trains, and training stops once the validation error has not improved
+	 * for <code>patience</code> epochs. The weights with the lowest validation error are restored at the end. See {@link EarlyStopping}.
+	 * @param data the input values of each pattern.
+	 * @param expectedVals the expected output values of each pattern.
+	 * @param batchSize the number of patterns to accumulate before each weight update.
+	 * @param validationData the input values of each validation pattern.
+	 * @param validationExpected the expected output values of each validation pattern.
+	 * @param maxEpochs the maximum number of passes over the patterns.
+	 * @param patience the number of epochs without improvement after which training stops.
+	 * @return the number of epochs trained.
+	 * @throws IllegalArgumentException if batchSize or patience is less than 1, or the validation set does not match the network.
+	 */
+	public int train(final double[][] data, final double[][] expectedVals, final int batchSize, final double[][] validationData, final double[][] validationExpected, final int maxEpochs, final int patience) throws IllegalArgumentException
+	{
+		try (EarlyStopping stopping = new EarlyStopping(validationData, validationExpected, patience))
+		{
+			int epochs = 0;
+			while (epochs < maxEpochs)
+			{
+				train(data, expectedVals, batchSize);
+				epochs++;
 				
-				// calculate delta & gradients
-				nextNeur.updateOutputDelta(activationFunction, nextExpVal);
-				nextNeur.updateInputGradients();
+				if (!stopping.update(this))
+					break;
 			}
+			
+			stopping.finish(this);
+			return epochs;
 		}
+	}
+	
+	/**
+	 * Trains the neural network for one pass over a sample source, in batches as {@link #train(double[][], double[][], int)} does.
+	 * Patterns are pulled a few hundred at a time, so memory use does not depend on the size of the data set or the batch.
+	 * @param source the source of the patterns, which is rewound before the pass.
+	 * @param batchSize the number of patterns to accumulate before each weight update.
+	 * @throws IOException if the source cannot be read.
+	 * @throws IllegalArgumentException if batchSize is less than 1 or the patterns do not match the network's topology.
+	 */
+	public void train(final SampleSource source, final int batchSize) throws IOException, IllegalArgumentException
+	{
+		final int outIndex = topology.length - 1;
 		
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1.");
 		
-		// divide to get average (account for bias)
-		error /= outLay.getNeurons().size();
+		if (source.getInputCount() != topology[0] || source.getOutputCount() != topology[outIndex])
+			throw new IllegalArgumentException("Sample source dimensions do not match the first and output layers.");
 		
-		// get the Root Mean Square
-		error = Math.sqrt(error);
+		double[] inputs = new double[STREAM_ROWS * topology[0]];
+		double[] expected = new double[STREAM_ROWS * topology[outIndex]];
+		double[] inputVals = new double[topology[0]];
+		double[] expectedVals = new double[topology[outIndex]];
 		
-		// recent average error measurement
-		recentAvgError = (recentAvgError * recentAvgSmoothing + error) / 
-				(recentAvgSmoothing + 1.0);
-	
+		source.rewind();
+		
+		final TrainingMetrics m = beginEpoch();
 		
-		// calculate hidden layer errors and gradients
+		try
 		{
-			// get iterator from second to last layer
-			ListIterator<Layer> layIter = getLayers().listIterator(getLayers().size() - 2);
+			int inBatch = 0;
+			double error = Constants.DBL_ZERO;
 			
-			while (layIter.previousIndex() > 0)
+			int rows;
+			while ((rows = source.read(inputs, expected, STREAM_ROWS)) > 0)
 			{
-				ArrayList<Neuron> neurons = layIter.previous().getNeurons();
-				
-				for (Neuron n : neurons)
+				for (int r = 0; r < rows; r++)
 				{
-					n.updateHiddenDelta(activationFunction);
-					n.updateInputGradients();
+					System.arraycopy(inputs, r * inputVals.length, inputVals, 0, inputVals.length);
+					System.arraycopy(expected, r * expectedVals.length, expectedVals, 0, expectedVals.length);
+					
+					long t0 = TrainingMetrics.tick(m);
+					feedForward(workspace, inputVals);
+					long t1 = TrainingMetrics.tick(m);
+					double e = backPropagate(workspace, expectedVals, null, inBatch > 0);
+					
+					if (m != null)
+						m.patterns(1, t1 - t0, System.nanoTime() - t1, e);
+					
+					error += e;
+					
+					if (++inBatch == batchSize)
+					{
+						updateWeights(Math.sqrt(error / (inBatch * topology[outIndex])));
+						inBatch = 0;
+						error = Constants.DBL_ZERO;
+					}
 				}
 			}
+			
+			// last, partial batch
+			if (inBatch > 0)
+				updateWeights(Math.sqrt(error / (inBatch * topology[outIndex])));
+			
+			endEpoch();
+		}
+		finally
+		{
+			// a pass that failed is neither committed nor reported
+			clearEpoch();
 		}
+	}
+	
+	/**
+	 * Calculates the deltas of every layer and the gradients of every connection for the pattern last fed forward into a workspace.
+	 * @param ws the workspace holding the activations of the pattern.
+	 * @param expectedVals the expected values of the output layer.
+	 * @param gradients the gradient buffers to write, one per dense layer, or null to write the network's own gradients.
+	 * @param accumulate the boolean determining whether gradients are added to the current gradients instead of replacing them.
+	 * @return the sum of the squared errors of the output layer.
+	 * @throws IllegalArgumentException if the size of expectedVals does not match the number of neurons in the output layer.
+	 */
+	double backPropagate(final Workspace ws, final double[] expectedVals, final double[][] gradients, final boolean accumulate) throws IllegalArgumentException
+	{
+		final int outIndex = topology.length - 1;
 		
-		// update all weights
+		// check for matching expected and output layer sizes
+		if (expectedVals.length != topology[outIndex])
+			throw new IllegalArgumentException("Expected values dimensions do not match number of output-layer neurons.");
+		
+		// calculate error and deltas of output layer
+		double error = denseLayers[outIndex - 1].outputDeltas(expectedVals, ws.getValues(outIndex), ws.getDerivatives(outIndex), ws.getDeltas(outIndex));
+		
+		// calculate hidden layer deltas, from the last hidden layer back to the first
+		for (int l = outIndex - 1; l > 0; l--)
+			denseLayers[l].backPropagate(ws.getDeltas(l + 1), ws.getDerivatives(l), ws.getDeltas(l));
+		
+		// calculate gradients
+		for (int l = outIndex; l > 0; l--)
 		{
-			// get iterator from second to last layer
-			ListIterator<Layer> layIter = getLayers().listIterator(getLayers().size() - 2);
+			DenseLayer dense = denseLayers[l - 1];
+			double[] g = (gradients == null ? dense.getGradients() : gradients[l - 1]);
 			
-			while (layIter.previousIndex() > 0)
-			{
-				ArrayList<Neuron> neurons = layIter.previous().getNeurons();
-				
-				for (Neuron n : neurons)
-					n.updateInputWeights(error, this.lastError, Constants.MIN_DELTA, Constants.MAX_DELTA);
-				
-			}
+			if (accumulate)
+				dense.accumulateGradients(ws.getDeltas(l), ws.getValues(l - 1), g);
+			else
+				dense.inputGradients(ws.getDeltas(l), ws.getValues(l - 1), g);
 		}
 		
+		return error;
+	}
+	
+	/**
+	 * Applies one iRPROP+ step to every connection using the current gradients.
+	 * @param error the RMS error of the step.
+	 */
+	void updateWeights(final double error)
+	{
+		final long start = TrainingMetrics.tick(timing);
+		
+		// recent average error measurement
+		recentAvgError = (recentAvgError * recentAvgSmoothing + error) / 
+				(recentAvgSmoothing + 1.0);
+		
+		// update all weights
+		int flips = 0;
+		for (DenseLayer dense : denseLayers)
+			flips += dense.updateWeights(error, this.lastError, rprop);
+		
+		if (timing != null)
+			timing.update(System.nanoTime() - start, flips, lastError != null && error > lastError);
+		
 		// set last error to this error
 		this.lastError = error;
+		this.version++;
 	}
 	
-	public void train(final double[][] data, final double[][] expectedVals)
+	// #END: Training
+	
+	
+	// #BEGIN: Instrumentation
+	
+	/**
+	 * Starts a training pass. The pass is timed only if a listener is set or the JFR event is enabled.
+	 * @return the metrics recording the pass, or null if it is not timed.
+	 */
+	TrainingMetrics beginEpoch()
 	{
-		int min = Math.min(data.length, expectedVals.length);
+		epoch++;
+		
+		TrainingEpochEvent e = new TrainingEpochEvent();
+		if (listener == null && !e.isEnabled())
+			return (timing = null);
+		
+		e.begin();
+		event = e;
+		
+		metrics.begin(epoch, topology[topology.length - 1]);
+		return (timing = metrics);
+	}
+	
+	/**
+	 * Ends a training pass, summarizes its learn deltas, commits the JFR event and notifies the listener.
+	 */
+	void endEpoch()
+	{
+		if (timing == null)
+			return;
+		
+		timing = null;
+		metrics.end(denseLayers);
 		
-		for (int i = 0; i < min; i++)
+		if (event.shouldCommit())
 		{
-			feedForward(data[i]);
-			iRPROP(expectedVals[i]);
+			event.set(metrics);
+			event.commit();
 		}
+		event = null;
+		
+		if (listener != null)
+			listener.epochCompleted(metrics);
 	}
 	
-	// #END: Training
+	/**
+	 * Forgets the training pass in progress, if any, without committing its JFR event or notifying the listener. Called after
+	 * every pass, so a pass ended by an exception does not leave later weight updates recording into its metrics.
+	 */
+	void clearEpoch()
+	{
+		timing = null;
+		event = null;
+	}
+	
+	// #END: Instrumentation
+	
+	
+	// #BEGIN: Pruning
+	
+	/**
+	 * Prunes every connection between neurons whose weight has a magnitude below a threshold. Pruned connections are held at zero
+	 * by any further training, so the remaining weights can be fine-tuned, and are skipped by a {@link SparseNetwork} compiled from
+	 * this network. Bias connections are never pruned.
+	 * @param threshold the smallest magnitude of a weight that is kept.
+	 * @return the total number of pruned connections, including those pruned before.
+	 */
+	public int prune(final double threshold)
+	{
+		int count = 0;
+		for (DenseLayer dense : denseLayers)
+			count += dense.prune(threshold);
+		
+		// the error of the unpruned network says nothing about the next step
+		this.lastError = null;
+		this.version++;
+		
+		return count;
+	}
+	
+	/**
+	 * Prunes all but the <code>k</code> connections with the largest weight magnitudes feeding each layer. Bias connections are
+	 * never pruned and do not count towards <code>k</code>.
+	 * @param k the number of connections to keep per layer.
+	 * @return the total number of pruned connections, including those pruned before.
+	 * @throws IllegalArgumentException if k is negative.
+	 */
+	public int pruneTopK(final int k) throws IllegalArgumentException
+	{
+		if (k < 0)
+			throw new IllegalArgumentException("Number of connections to keep cannot be negative.");
+		
+		int count = 0;
+		for (DenseLayer dense : denseLayers)
+			count += dense.pruneTopK(k);
+		
+		this.lastError = null;
+		this.version++;
+		
+		return count;
+	}
+	
+	/**
+	 * Prunes the connections with the smallest weight magnitudes feeding each layer until the given fraction of them is pruned.
+	 * Bias connections are never pruned and are not counted.
+	 * @param sparsity the fraction of connections to prune in each layer, between 0 and 1.
+	 * @return the total number of pruned connections, including those pruned before.
+	 * @throws IllegalArgumentException if sparsity is not between 0 and 1.
+	 */
+	public int pruneToSparsity(final double sparsity) throws IllegalArgumentException
+	{
+		if (!(sparsity >= 0 && sparsity <= 1))
+			throw new IllegalArgumentException("Sparsity must be between 0 and 1.");
+		
+		int count = 0;
+		for (DenseLayer dense : denseLayers)
+			count += dense.pruneTopK((int)Math.round((1 - sparsity) * dense.getInputs() * dense.getNeurons()));
+		
+		this.lastError = null;
+		this.version++;
+		
+		return count;
+	}
+	
+	/**
+	 * Trains a pruned neural network for a number of epochs, adjusting only the connections that were kept.
+	 * @param data the input values of each pattern.
+	 * @param expectedVals the expected output values of each pattern.
+	 * @param batchSize the number of patterns to accumulate before each weight update.
+	 * @param epochs the number of passes over the patterns.
+	 * @return the RMS error of the last weight update.
+	 * @throws IllegalArgumentException if batchSize is less than 1.
+	 */
+	public double fineTune(final double[][] data, final double[][] expectedVals, final int batchSize, final int epochs) throws IllegalArgumentException
+	{
+		for (int e = 0; e < epochs; e++)
+			train(data, expectedVals, batchSize);
+		
+		return (lastError != null ? lastError : Constants.DBL_ZERO);
+	}
+	
+	/**
+	 * Returns the fraction of connections between neurons that have been pruned. Bias connections are not counted.
+	 * @return the sparsity of the neural network, between 0 and 1.
+	 */
+	public double getSparsity()
+	{
+		long pruned = 0;
+		long total = 0;
+		for (DenseLayer dense : denseLayers)
+		{
+			pruned += dense.getPruned().length;
+			total += (long)dense.getInputs() * dense.getNeurons();
+		}
+		
+		return (total > 0 ? (double)pruned / total : Constants.DBL_ZERO);
+	}
+	
+	// #END: Pruning
+
+	
+	
+	// #BEGIN: Growth
+	
+	/**
+	 * Adds neurons to a hidden layer, keeping the weights and iRPROP+ state of every existing connection. The incoming weights of
+	 * the new neurons are drawn with the scheme suited to the layer's activation function, and their outgoing weights start at
+	 * zero, so the outputs of the network are unchanged until it is trained again. A {@link ParallelTrainer} created before must
+	 * be created again.
+	 * @param layer the index of the hidden layer in the topology.
+	 * @param count the number of neurons to add.
+	 * @param seed the seed of the random incoming weights.
+	 * @throws IllegalArgumentException if layer is not a hidden layer or count is less than 1.
+	 */
+	public void addHiddenNeurons(final int layer, final int count, final long seed) throws IllegalArgumentException
+	{
+		if (layer < 1 || layer >= topology.length - 1)
+			throw new IllegalArgumentException("Only hidden layers can grow.");
+		
+		if (count < 1)
+			throw new IllegalArgumentException("Cannot add less than one neuron.");
+		
+		DenseLayer incoming = denseLayers[layer - 1].grow(0, count, rprop.getInitLearnDelta());
+		WeightInit.fill(WeightInit.forActivation(activations[layer - 1]), incoming.getWeights(), incoming.getStride(), incoming.getInputs(),
+				incoming.getNeurons(), topology[layer], topology[layer] + count, new SplittableRandom(seed));
+		
+		DenseLayer[] grown = denseLayers.clone();
+		grown[layer - 1] = incoming;
+		grown[layer] = denseLayers[layer].grow(count, 0, rprop.getInitLearnDelta());
+		
+		int[] newTopology = topology.clone();
+		newTopology[layer] += count;
+		
+		resize(newTopology, grown);
+	}
+	
+	/**
+	 * Copies all weights, iRPROP+ state and error statistics of another neural network into this one, taking its topology if it differs.
+	 * @param snapshot the neural network to copy, such as a snapshot taken before growing.
+	 * @throws IllegalArgumentException if the bias flags or the number of layers differ.
+	 */
+	void restore(final NeuralNetwork snapshot) throws IllegalArgumentException
+	{
+		if (!java.util.Arrays.equals(topology, snapshot.topology))
+		{
+			if (topology.length != snapshot.topology.length || useBias != snapshot.useBias)
+				throw new IllegalArgumentException("Cannot restore a neural network with a different number of layers.");
+			
+			DenseLayer[] restored = new DenseLayer[snapshot.denseLayers.length];
+			for (int l = 0; l < restored.length; l++)
+				restored[l] = new DenseLayer(snapshot.denseLayers[l].getInputs(), snapshot.denseLayers[l].getNeurons(), useBias);
+			
+			resize(snapshot.topology.clone(), restored);
+		}
+		
+		copyFrom(snapshot);
+	}
+	
+	/**
+	 * Replaces the topology and dense storage, and the buffers sized by them.
+	 */
+	private void resize(final int[] topology, final DenseLayer[] denseLayers)
+	{
+		this.topology = topology;
+		this.denseLayers = denseLayers;
+		
+		this.workspace = new Workspace(topology);
+		this.scratch = createScratchLocal();
+		this.layers = null;
+		this.version++;
+	}
+	
+	// #END: Growth
+	
+	
+	// #BEGIN: Persistence
+	
+	/**
+	 * Saves the neural network, including all weights, iRPROP+ state and error statistics, in the binary format of {@link ModelFile}.
+	 * @param path the file to write, replacing any existing content.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void save(final Path path) throws IOException
+	{
+		ModelFile.save(this, path);
+	}
+	
+	/**
+	 * Loads a neural network saved by {@link #save(Path)}. The file is read in chunks and each weight matrix is filled with
+	 * bulk copies, so loading time is bound by the size of the model rather than by parsing, and models may exceed 2 GB.
+	 * @param path the file to read.
+	 * @return the neural network.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the file is not a model of a supported version.
+	 */
+	public static NeuralNetwork load(final Path path) throws IOException, IllegalArgumentException
+	{
+		return ModelFile.load(path);
+	}
+	
+	/**
+	 * Copies all weights, iRPROP+ state and error statistics of another neural network with the same topology into this one.
+	 * @param other the neural network to copy.
+	 * @throws IllegalArgumentException if the topologies or bias flags differ.
+	 */
+	void copyFrom(final NeuralNetwork other) throws IllegalArgumentException
+	{
+		if (!java.util.Arrays.equals(topology, other.topology) || useBias != other.useBias)
+			throw new IllegalArgumentException("Cannot copy a neural network with a different topology.");
+		
+		for (int l = 0; l < denseLayers.length; l++)
+			denseLayers[l].copyFrom(other.denseLayers[l]);
+		
+		this.activationFunction = other.activationFunction;
+		this.activations = other.activations.clone();
+		this.kernels = ActivationKernel.Factory.create(activations);
+		this.setRange(other.rangeMin, other.rangeMax);
+		this.normalizer = other.normalizer;
+		this.rprop = other.rprop;
+		
+		this.lastError = other.lastError;
+		this.recentAvgError = other.recentAvgError;
+		this.recentAvgSmoothing = other.recentAvgSmoothing;
+		this.version++;
+	}
+	
+	// #END: Persistence
+	
+	
+	// #BEGIN: Activation
+	
+	private static ActivationFunction[] uniform(final ActivationFunction activationFunc, final int layers)
+	{
+		ActivationFunction[] funcs = new ActivationFunction[Math.max(layers, 0)];
+		java.util.Arrays.fill(funcs, activationFunc);
+		
+		return funcs;
+	}
+	
+	/**
+	 * Sets the activation function of each layer after the input layer and binds each layer to the kernel of its function.
+	 * @param activationFuncs the activation functions.
+	 * @param layers the number of layers after the input layer.
+	 * @throws IllegalArgumentException if the number of activation functions does not match the number of layers.
+	 */
+	private void setActivationFunctions(final ActivationFunction[] activationFuncs, final int layers) throws IllegalArgumentException
+	{
+		if (activationFuncs.length != layers)
+			throw new IllegalArgumentException("Number of activation functions does not match the number of layers after the input layer.");
+		
+		this.activations = activationFuncs.clone();
+		this.kernels = ActivationKernel.Factory.create(activations);
+		this.activationFunction = activations[layers - 1];
+	}
+	
+	// #END: Activation
+	
+	
+	// #BEGIN: Object Graph
+	
+	/**
+	 * Builds a Layer/Neuron/Connection view over the dense storage. Connections read and write the dense weight matrices and
+	 * neurons read and write the activation buffers of the last feed-forward, so changes made through the view are seen by the network.
+	 * @return the list of layers making up the view.
+	 */
+	private ArrayList<Layer> buildView()
+	{
+		ArrayList<Layer> view = new ArrayList<Layer>(topology.length);
+		
+		Layer previous = null;
+		for (int l = 0; l < topology.length; l++)
+		{
+			int outgoing = (l == topology.length - 1 ? 0 : topology[l + 1]);
+			int incoming = (previous == null ? 0 : previous.getNeurons().size() + (useBias ? 1 : 0));
+			
+			ArrayList<Neuron> neurons = new ArrayList<Neuron>(topology[l]);
+			for (int j = 0; j < topology[l]; j++)
+				neurons.add(new Neuron(incoming, outgoing, workspace.getSummations(l), workspace.getValues(l), workspace.getDeltas(l), j));
+			
+			Layer curLayer = new Layer(neurons);
+			
+			// connect previous layer neurons (and bias) to each neuron through its row of the dense matrices
+			if (previous != null)
+			{
+				DenseLayer dense = denseLayers[l - 1];
+				ArrayList<Neuron> prevNeurons = previous.getNeurons();
+				
+				for (int j = 0, row = 0; j < neurons.size(); j++, row += dense.getStride())
+				{
+					for (int i = 0; i < prevNeurons.size(); i++)
+						new Connection(dense, row + i).connect(prevNeurons.get(i), neurons.get(j));
+					
+					if (dense.isUseBias())
+						new Connection(dense, row + dense.getInputs()).connect(previous.getBiasNeuron(), neurons.get(j));
+				}
+			}
+			
+			view.add(curLayer);
+			previous = curLayer;
+		}
+		
+		return view;
+	}
+	
+	// #END: Object Graph
 	
 	
 	// #BEGIN: Normalize
 	
+	/**
+	 * Fits a feature-wise normalizer to the input columns of a data set and applies it to every input from now on. MIN_MAX maps
+	 * each column onto the suggested input range of the neural network.
+	 * @param data the input values of each pattern, typically the training set.
+	 * @param mode how the columns are normalized.
+	 * @return the normalizer.
+	 * @throws IllegalArgumentException if the data set is empty or does not match the first layer.
+	 */
+	public Normalizer fitNormalizer(final double[][] data, final Normalizer.Mode mode) throws IllegalArgumentException
+	{
+		Normalizer fitted = Normalizer.fit(data, mode, rangeMin, rangeMax);
+		setNormalizer(fitted);
+		
+		return fitted;
+	}
+	
+	public Normalizer getNormalizer()
+	{
+		return normalizer;
+	}
+	
+	/**
+	 * Sets the feature-wise normalizer applied to a copy of every input before the first layer, when feeding forward, predicting
+	 * and training. The normalizer is saved with the model.
+	 * @param normalizer the normalizer, or null to use inputs as they are.
+	 * @throws IllegalArgumentException if the normalizer does not have one column per first-layer neuron.
+	 */
+	public void setNormalizer(final Normalizer normalizer) throws IllegalArgumentException
+	{
+		if (normalizer != null && (topology.length == 0 || normalizer.getWidth() != topology[0]))
+			throw new IllegalArgumentException("Number of normalized columns does not match the number of first-layer neurons.");
+		
+		this.normalizer = normalizer;
+		this.version++;
+	}
+	
 	public int normalize(final int val, final int origMin)
 	{
 		return (int)Math.round((val - origMin) / (range));
@@ -329,8 +1138,15 @@ public class NeuralNetwork
 	
 	// #BEGIN: Fields
 	
+	/**
+	 * Returns the object graph view of the neural network, building it on first use.
+	 * @return the layers of the neural network.
+	 */
 	public ArrayList<Layer> getLayers()
 	{
+		if (layers == null)
+			setLayers(buildView());
+		
 		return layers;
 	}
 
@@ -376,16 +1192,101 @@ public class NeuralNetwork
 		this.useBias = useBias;
 	}
 
+	/**
+	 * Returns the activation function of the output layer, which is the activation function of every layer unless the neural
+	 * network was created with one per layer.
+	 * @return the activation function of the output layer.
+	 */
 	public ActivationFunction getActivationFunction()
 	{
 		return activationFunction;
 	}
 	
+	/**
+	 * Returns the activation function of each layer after the input layer.
+	 * @return a copy of the activation functions, where index 0 belongs to the first layer after the input layer.
+	 */
+	public ActivationFunction[] getActivationFunctions()
+	{
+		return activations.clone();
+	}
+	
 	public Double getLastError()
 	{
 		return this.lastError;
 	}
 	
+	public double getRecentAvgError()
+	{
+		return recentAvgError;
+	}
+	
+	public double getRecentAvgSmoothing()
+	{
+		return recentAvgSmoothing;
+	}
+	
+	public TrainingListener getTrainingListener()
+	{
+		return listener;
+	}
+	
+	/**
+	 * Sets the listener receiving the metrics of every training pass. Listeners are not copied with the network.
+	 * @param listener the listener, or null to stop timing training passes (unless the JFR event is enabled).
+	 */
+	public void setTrainingListener(final TrainingListener listener)
+	{
+		this.listener = listener;
+	}
+	
+	public RpropParameters getRpropParameters()
+	{
+		return rprop;
+	}
+	
+	/**
+	 * Sets the step-size constants of iRPROP+ and resets every learn delta to their initial learn delta, restarting the
+	 * step-size adaptation. The parameters are copied and saved with the network.
+	 * @param params the iRPROP+ parameters.
+	 */
+	public void setRpropParameters(final RpropParameters params)
+	{
+		this.rprop = params;
+		
+		for (DenseLayer dense : denseLayers)
+			dense.resetLearnDeltas(params.getInitLearnDelta());
+	}
+	
+	/**
+	 * Returns the number of neurons in each layer of the neural network.
+	 * @return a copy of the topology array, where index 0 is the input layer.
+	 */
+	public int[] getTopology()
+	{
+		return topology.clone();
+	}
+	
+	DenseLayer getDenseLayer(final int index)
+	{
+		return denseLayers[index];
+	}
+	
+	int getDenseLayerCount()
+	{
+		return denseLayers.length;
+	}
+	
+	/**
+	 * Returns a counter that changes whenever the weights, topology or normalizer of the neural network change through its own
+	 * methods. Weights written through the object graph view of {@link #getLayers()} are not counted.
+	 * @return the version of the weights.
+	 */
+	long getVersion()
+	{
+		return version;
+	}
+	
 	// #END: Fields
 	
 }
\ No newline at end of file
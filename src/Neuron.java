@@ -7,11 +7,11 @@ class Neuron
 	private ArrayList<Connection> connIn;
 	private ArrayList<Connection> connOut;
 	
-	private double summation = Constants.DBL_ZERO;
-	private double value = Constants.DBL_ZERO;
-	
-	
-	private double delta = Constants.DBL_ZERO;
+	// activation state lives in (possibly shared) arrays so the neuron can act as a view over a Workspace
+	private final double[] summations;
+	private final double[] values;
+	private final double[] deltas;
+	private final int index;
 	// #END: Declarations
 	
 	
@@ -19,26 +19,39 @@ class Neuron
 	
 	public Neuron()
 	{
-		connIn = new ArrayList<Connection>(8);
-		connOut = new ArrayList<Connection>(8);
-		
-		this.value = Constants.DBL_ZERO;
-		
-		this.delta = Constants.DBL_ZERO;
+		this(8, 8);
 	}
 	
 	public Neuron(final int incomingCount, final int outgoingCount)
 	{
-		connIn = new ArrayList<Connection>(incomingCount);
-		connOut = new ArrayList<Connection>(outgoingCount);
+		this(incomingCount, outgoingCount, new double[1], new double[1], new double[1], 0);
 	}
 	
 	public Neuron(final int incomingCount, final int outgoingCount, final double initValue)
+	{
+		this(incomingCount, outgoingCount);
+		
+		this.setValue(initValue);
+	}
+	
+	/**
+	 * Initializes a neuron whose summation, value and delta are stored at a given index of the given arrays.
+	 * @param incomingCount the expected number of incoming connections.
+	 * @param outgoingCount the expected number of outgoing connections.
+	 * @param summations the array holding the summation of the neuron.
+	 * @param values the array holding the value of the neuron.
+	 * @param deltas the array holding the delta of the neuron.
+	 * @param index the index of the neuron within the arrays.
+	 */
+	public Neuron(final int incomingCount, final int outgoingCount, final double[] summations, final double[] values, final double[] deltas, final int index)
 	{
 		connIn = new ArrayList<Connection>(incomingCount);
 		connOut = new ArrayList<Connection>(outgoingCount);
 		
-		this.value = initValue;
+		this.summations = summations;
+		this.values = values;
+		this.deltas = deltas;
+		this.index = index;
 	}
 	
 	// #END: Constructors
@@ -77,14 +90,16 @@ class Neuron
 	
 	public void updateValues(final ActivationFunction func)
 	{
-		this.summation = calcSummation();
-		this.value = ActivationFunction.calcActivation(func, this.summation);
+		final double summation = calcSummation();
+		
+		summations[index] = summation;
+		values[index] = ActivationFunction.calcActivation(func, summation);
 	}
 	
 	public void updateOutputDelta(final ActivationFunction func, final double targetVal)
 	{
 		double diff = targetVal - this.getValue();
-		this.delta = diff * ActivationFunction.calcDerivative(func, this.summation);
+		deltas[index] = diff * ActivationFunction.calcDerivativeFromValue(func, values[index]);
 	}
 	
 	public void updateHiddenDelta(final ActivationFunction func)
@@ -92,15 +107,17 @@ class Neuron
 		double sum = Constants.DBL_ZERO;
 		
 		for (Connection c : connOut)
-			sum += (c.getWeight() * c.getToNeuron().delta);
+			sum += (c.getWeight() * c.getToNeuron().getDelta());
 		
-		this.delta = sum * ActivationFunction.calcDerivative(func, this.summation);
+		deltas[index] = sum * ActivationFunction.calcDerivativeFromValue(func, values[index]);
 	}
 	
 	public void updateInputGradients()
 	{
+		final double delta = deltas[index];
+		
 		for (Connection c : connIn)
-			c.setGradient(this.delta * c.getFromNeuron().getValue());
+			c.setGradient(delta * c.getFromNeuron().getValue());
 	}
 	
 	public void updateInputWeights(double error, Double lastError, double minDelta, double maxDelta)
@@ -124,7 +141,7 @@ class Neuron
 					c.setLearnDelta(learnDelta);
 					
 					// continue in same direction with weight change
-					weightChange = -Math.signum(gradient) * learnDelta;
+					weightChange = Math.signum(gradient) * learnDelta;
 					
 					// set current gradient as last gradient
 					c.setLastGradient(gradient);
@@ -152,7 +169,7 @@ class Neuron
 					double gradient = c.getGradient();
 					
 					// make no changes to learn delta
-					weightChange = -Math.signum(gradient) * c.getLearnDelta();
+					weightChange = Math.signum(gradient) * c.getLearnDelta();
 					
 					// set current gradient as last gradient
 					c.setLastGradient(gradient);
@@ -189,12 +206,22 @@ class Neuron
 
 	public double getValue()
 	{
-		return value;
+		return values[index];
 	}
 
 	public void setValue(final double value)
 	{
-		this.value = value;
+		values[index] = value;
+	}
+	
+	public double getSummation()
+	{
+		return summations[index];
+	}
+	
+	public double getDelta()
+	{
+		return deltas[index];
 	}
 	
 	// #END: Fields
@@ -0,0 +1,370 @@
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+
+/**
+ * Feature-wise normalization of the inputs of a {@link NeuralNetwork}, fitted to the statistics of a data set.
+ * <p>
+ * {@link #fit(double[][], Mode, double, double)} gathers the minimum, maximum, mean and standard deviation of every input column in a
+ * single pass, in parallel over fixed blocks of rows whose partial statistics are merged in block order, so the result does not
+ * depend on the number of threads. The normalization of each column is then reduced to <code>x * scale + shift</code> and applied
+ * to whole packed batches by {@link Kernels#affine}. Set on a network with {@link NeuralNetwork#setNormalizer(Normalizer)}, it is
+ * applied to a copy of every input before the first layer and saved with the model, so callers pass raw values.
+ * <p>
+ * Normalizers are immutable and may be shared between networks and threads.
+ */
+public final class Normalizer
+{
+
+	/**
+	 * How the columns are normalized.
+	 */
+	public enum Mode
+	{
+		// linearly map each column's [min, max] onto the target range; shift to zero mean and scale to unit variance
+		MIN_MAX, STANDARD;
+	}
+
+
+	// #BEGIN: Declarations
+	// number of rows whose statistics each parallel task gathers
+	private static final int FIT_CHUNK = 4096;
+
+	// number of patterns pulled from a sample source at a time
+	private static final int STREAM_ROWS = 256;
+
+	private final Mode mode;
+	private final double targetMin;
+	private final double targetMax;
+
+	// statistics of the data set, per column
+	private final long count;
+	private final double[] min;
+	private final double[] max;
+	private final double[] mean;
+	private final double[] stdDev;
+
+	// the normalization of each column as x * scale + shift
+	private final double[] scale;
+	private final double[] shift;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a normalizer from the statistics of a data set, such as those of a loaded model.
+	 * @param mode how the columns are normalized.
+	 * @param targetMin the lower-bound of the range MIN_MAX maps each column onto.
+	 * @param targetMax the upper-bound of the range MIN_MAX maps each column onto.
+	 * @param count the number of patterns the statistics were gathered from.
+	 * @param min the minimum of each column.
+	 * @param max the maximum of each column.
+	 * @param mean the mean of each column.
+	 * @param stdDev the (population) standard deviation of each column.
+	 * @throws IllegalArgumentException if the statistics arrays differ in length or are empty.
+	 */
+	Normalizer(final Mode mode, final double targetMin, final double targetMax, final long count, final double[] min, final double[] max, final double[] mean, final double[] stdDev) throws IllegalArgumentException
+	{
+		final int width = min.length;
+
+		if (width == 0 || max.length != width || mean.length != width || stdDev.length != width)
+			throw new IllegalArgumentException("Normalizer statistics arrays must have one value per column.");
+
+		this.mode = mode;
+		this.targetMin = targetMin;
+		this.targetMax = targetMax;
+
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.mean = mean;
+		this.stdDev = stdDev;
+
+		this.scale = new double[width];
+		this.shift = new double[width];
+
+		for (int c = 0; c < width; c++)
+		{
+			switch (mode)
+			{
+				case MIN_MAX:
+				{
+					// a constant column maps to the middle of the target range
+					double span = max[c] - min[c];
+					scale[c] = (span > 0 ? (targetMax - targetMin) / span : Constants.DBL_ZERO);
+					shift[c] = (span > 0 ? targetMin - min[c] * scale[c] : (targetMin + targetMax) / 2);
+					break;
+				}
+
+				case STANDARD:
+				{
+					// a constant column maps to zero
+					scale[c] = (stdDev[c] > 0 ? 1.0 / stdDev[c] : Constants.DBL_ZERO);
+					shift[c] = -mean[c] * scale[c];
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fits a normalizer to the input columns of a data set.
+	 * @param data the input values of each pattern.
+	 * @param mode how the columns are normalized.
+	 * @param targetMin the lower-bound of the range MIN_MAX maps each column onto, typically the network's range minimum.
+	 * @param targetMax the upper-bound of the range MIN_MAX maps each column onto, typically the network's range maximum.
+	 * @return the normalizer.
+	 * @throws IllegalArgumentException if the data set is empty or its patterns differ in size.
+	 */
+	public static Normalizer fit(final double[][] data, final Mode mode, final double targetMin, final double targetMax) throws IllegalArgumentException
+	{
+		if (data.length == 0)
+			throw new IllegalArgumentException("Cannot fit a normalizer to an empty data set.");
+
+		final int width = data[0].length;
+		final int chunks = (data.length + FIT_CHUNK - 1) / FIT_CHUNK;
+
+		Statistics[] partial = IntStream.range(0, chunks).parallel().mapToObj(c ->
+		{
+			Statistics stats = new Statistics(width);
+			for (int r = c * FIT_CHUNK; r < Math.min(data.length, (c + 1) * FIT_CHUNK); r++)
+			{
+				if (data[r].length != width)
+					throw new IllegalArgumentException("Patterns differ in size.");
+
+				stats.add(data[r], 0, 1);
+			}
+
+			return stats;
+		}).toArray(Statistics[]::new);
+
+		Statistics total = partial[0];
+		for (int c = 1; c < chunks; c++)
+			total.merge(partial[c]);
+
+		return total.toNormalizer(mode, targetMin, targetMax);
+	}
+
+	/**
+	 * Fits a normalizer to the input columns of a sample source in one pass, reading a few hundred patterns at a time.
+	 * @param source the source of the patterns, which is rewound before the pass.
+	 * @param mode how the columns are normalized.
+	 * @param targetMin the lower-bound of the range MIN_MAX maps each column onto.
+	 * @param targetMax the upper-bound of the range MIN_MAX maps each column onto.
+	 * @return the normalizer.
+	 * @throws IOException if the source cannot be read.
+	 * @throws IllegalArgumentException if the source holds no patterns.
+	 */
+	public static Normalizer fit(final SampleSource source, final Mode mode, final double targetMin, final double targetMax) throws IOException, IllegalArgumentException
+	{
+		final int width = source.getInputCount();
+
+		double[] inputs = new double[STREAM_ROWS * width];
+		double[] expected = new double[STREAM_ROWS * source.getOutputCount()];
+
+		Statistics stats = new Statistics(width);
+
+		source.rewind();
+
+		int rows;
+		while ((rows = source.read(inputs, expected, STREAM_ROWS)) > 0)
+			stats.add(inputs, 0, rows);
+
+		if (stats.count == 0)
+			throw new IllegalArgumentException("Cannot fit a normalizer to an empty data set.");
+
+		return stats.toNormalizer(mode, targetMin, targetMax);
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Normalize
+
+	/**
+	 * Normalizes a block of packed patterns in place.
+	 * @param values the packed input values, {@link #getWidth()} values per pattern.
+	 * @param offset the index of the first value.
+	 * @param rows the number of patterns.
+	 */
+	public void apply(final double[] values, final int offset, final int rows)
+	{
+		Kernels.INSTANCE.affine(values, offset, rows, scale, shift);
+	}
+
+	/**
+	 * Single-precision form of {@link #apply(double[], int, int)}. Each value is normalized in double precision and then narrowed.
+	 * @param values the packed input values, {@link #getWidth()} values per pattern.
+	 * @param offset the index of the first value.
+	 * @param rows the number of patterns.
+	 */
+	public void apply(final float[] values, final int offset, final int rows)
+	{
+		for (int r = 0, o = offset; r < rows; r++)
+			for (int c = 0; c < scale.length; c++, o++)
+				values[o] = (float)(values[o] * scale[c] + shift[c]);
+	}
+
+	/**
+	 * Normalizes one pattern into a separate array.
+	 * @param inputVals the raw input values.
+	 * @param normalized the array receiving the normalized values.
+	 * @return normalized.
+	 * @throws IllegalArgumentException if either array does not have one value per column.
+	 */
+	public double[] apply(final double[] inputVals, final double[] normalized) throws IllegalArgumentException
+	{
+		if (inputVals.length != scale.length || normalized.length != scale.length)
+			throw new IllegalArgumentException("Size of values array does not match the number of normalized columns.");
+
+		System.arraycopy(inputVals, 0, normalized, 0, scale.length);
+		apply(normalized, 0, 1);
+
+		return normalized;
+	}
+
+	// #END: Normalize
+
+
+	// #BEGIN: Fields
+
+	public Mode getMode()
+	{
+		return mode;
+	}
+
+	public double getTargetMin()
+	{
+		return targetMin;
+	}
+
+	public double getTargetMax()
+	{
+		return targetMax;
+	}
+
+	/**
+	 * Returns the number of columns, which must match the first layer of the network.
+	 * @return the number of columns.
+	 */
+	public int getWidth()
+	{
+		return scale.length;
+	}
+
+	/**
+	 * Returns the number of patterns the statistics were gathered from.
+	 * @return the number of patterns.
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	public double[] getMin()
+	{
+		return min.clone();
+	}
+
+	public double[] getMax()
+	{
+		return max.clone();
+	}
+
+	public double[] getMean()
+	{
+		return mean.clone();
+	}
+
+	public double[] getStdDev()
+	{
+		return stdDev.clone();
+	}
+
+	// #END: Fields
+
+
+	// #BEGIN: Statistics
+
+	/**
+	 * Running per-column statistics, using Welford's update within a block and Chan's formula to merge blocks.
+	 */
+	private static final class Statistics
+	{
+		private long count = 0;
+
+		private final double[] min;
+		private final double[] max;
+		private final double[] mean;
+		// sum of squared differences from the mean
+		private final double[] m2;
+
+		Statistics(final int width)
+		{
+			this.min = new double[width];
+			this.max = new double[width];
+			this.mean = new double[width];
+			this.m2 = new double[width];
+
+			java.util.Arrays.fill(min, Double.POSITIVE_INFINITY);
+			java.util.Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		}
+
+		void add(final double[] values, final int offset, final int rows)
+		{
+			final int width = mean.length;
+
+			for (int r = 0, o = offset; r < rows; r++, o += width)
+			{
+				final double inverse = 1.0 / ++count;
+
+				for (int c = 0; c < width; c++)
+				{
+					final double x = values[o + c];
+					final double delta = x - mean[c];
+
+					mean[c] += delta * inverse;
+					m2[c] += delta * (x - mean[c]);
+
+					min[c] = Math.min(min[c], x);
+					max[c] = Math.max(max[c], x);
+				}
+			}
+		}
+
+		void merge(final Statistics other)
+		{
+			if (other.count == 0)
+				return;
+
+			final long total = count + other.count;
+			final double weight = (double)other.count / total;
+			final double cross = (double)count * other.count / total;
+
+			for (int c = 0; c < mean.length; c++)
+			{
+				final double delta = other.mean[c] - mean[c];
+
+				mean[c] += delta * weight;
+				m2[c] += other.m2[c] + delta * delta * cross;
+
+				min[c] = Math.min(min[c], other.min[c]);
+				max[c] = Math.max(max[c], other.max[c]);
+			}
+
+			count = total;
+		}
+
+		Normalizer toNormalizer(final Mode mode, final double targetMin, final double targetMax)
+		{
+			double[] stdDev = new double[mean.length];
+			for (int c = 0; c < stdDev.length; c++)
+				stdDev[c] = Math.sqrt(m2[c] / count);
+
+			return new Normalizer(mode, targetMin, targetMax, count, min, max, mean, stdDev);
+		}
+	}
+
+	// #END: Statistics
+}
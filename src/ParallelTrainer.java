@@ -0,0 +1,326 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+
+/**
+ * Data-parallel iRPROP+ trainer for a {@link NeuralNetwork}.
+ * <p>
+ * Every batch is split into one contiguous shard per thread. Each worker feeds its patterns forward and back-propagates them
+ * into its own workspace and gradient buffers. The partial gradients are then summed in shard order and a single iRPROP+ step
+ * is applied to the network. Because shard boundaries and the reduction order depend only on the batch size and the thread
+ * count, results are deterministic for a fixed thread count.
+ */
+public class ParallelTrainer
+{
+
+	// #BEGIN: Declarations
+	private final NeuralNetwork network;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+
+	private final Shard[] shards;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a trainer running on its own ForkJoinPool.
+	 * @param network the neural network to train.
+	 * @param threads the number of worker threads (and shards per batch).
+	 * @throws IllegalArgumentException if threads is less than 1.
+	 */
+	public ParallelTrainer(final NeuralNetwork network, final int threads) throws IllegalArgumentException
+	{
+		this(network, threads, new ForkJoinPool(Math.max(threads, 1)), true);
+	}
+
+	/**
+	 * Initializes a trainer running on a given executor. The executor is not shut down by {@link #shutdown()}.
+	 * @param network the neural network to train.
+	 * @param threads the number of shards each batch is split into.
+	 * @param executor the executor running the shards.
+	 * @throws IllegalArgumentException if threads is less than 1.
+	 */
+	public ParallelTrainer(final NeuralNetwork network, final int threads, final ExecutorService executor) throws IllegalArgumentException
+	{
+		this(network, threads, executor, false);
+	}
+
+	private ParallelTrainer(final NeuralNetwork network, final int threads, final ExecutorService executor, final boolean ownsExecutor) throws IllegalArgumentException
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("Cannot initialize ParallelTrainer with less than one thread.");
+
+		this.network = network;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+
+		this.shards = new Shard[threads];
+		for (int t = 0; t < threads; t++)
+			shards[t] = new Shard(network);
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Training
+
+	/**
+	 * Trains the neural network in batches, splitting each batch across the worker threads.
+	 * @param data the input values of each pattern.
+	 * @param expectedVals the expected output values of each pattern.
+	 * @param batchSize the number of patterns to accumulate before each weight update.
+	 * @throws IllegalArgumentException if batchSize is less than 1 or a pattern does not match the network's topology.
+	 */
+	public void train(final double[][] data, final double[][] expectedVals, final int batchSize) throws IllegalArgumentException
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1.");
+
+		int min = Math.min(data.length, expectedVals.length);
+		int outputs = network.getDenseLayer(network.getDenseLayerCount() - 1).getNeurons();
+
+		List<Callable<Double>> tasks = new ArrayList<Callable<Double>>(shards.length);
+
+		final TrainingMetrics m = network.beginEpoch();
+
+		try
+		{
+			for (int start = 0; start < min; start += batchSize)
+			{
+				int end = Math.min(start + batchSize, min);
+				int count = end - start;
+
+				// split the batch into contiguous shards
+				tasks.clear();
+				for (int t = 0; t < shards.length; t++)
+				{
+					int from = start + (int)((long)count * t / shards.length);
+					int to = start + (int)((long)count * (t + 1) / shards.length);
+
+					tasks.add(shards[t].task(data, expectedVals, from, to, m != null));
+				}
+
+				double error = Constants.DBL_ZERO;
+				List<Future<Double>> results = invokeAll(tasks);
+				for (int t = 0; t < shards.length; t++)
+				{
+					double partial = join(results.get(t));
+					if (m != null)
+						m.patterns(shards[t].patterns, shards[t].forwardNanos, shards[t].backwardNanos, partial);
+
+					error += partial;
+				}
+
+				reduceGradients();
+
+				// Root Mean Square over every output of every pattern in the batch
+				network.updateWeights(Math.sqrt(error / ((double)count * outputs)));
+			}
+
+			network.endEpoch();
+		}
+		finally
+		{
+			// a pass that failed is neither committed nor reported
+			network.clearEpoch();
+		}
+	}
+
+	/**
+	 * Shuts down the ForkJoinPool created by this trainer. Executors supplied by the caller are left running.
+	 */
+	public void shutdown()
+	{
+		if (ownsExecutor)
+			executor.shutdown();
+	}
+
+	// #END: Training
+
+
+	// #BEGIN: Scaling Report
+
+	/**
+	 * Measures training throughput from 1 up to a given number of threads (doubling each step) on copies of the same network.
+	 * @param template the neural network whose copies are trained.
+	 * @param data the input values of each pattern.
+	 * @param expectedVals the expected output values of each pattern.
+	 * @param batchSize the number of patterns per weight update.
+	 * @param epochs the number of passes over the data timed for each thread count.
+	 * @param maxThreads the highest thread count to measure.
+	 * @return a table of thread count, time, samples per second, speedup and parallel efficiency.
+	 */
+	public static String scalingReport(final NeuralNetwork template, final double[][] data, final double[][] expectedVals, final int batchSize, final int epochs, final int maxThreads)
+	{
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%8s %12s %14s %9s %11s%n", "threads", "seconds", "samples/s", "speedup", "efficiency"));
+
+		double baseline = Double.NaN;
+		long samples = (long)Math.min(data.length, expectedVals.length) * epochs;
+
+		for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads))
+		{
+			ParallelTrainer trainer = new ParallelTrainer(new NeuralNetwork(template), threads);
+
+			try
+			{
+				// warm up before timing
+				trainer.train(data, expectedVals, batchSize);
+
+				long begin = System.nanoTime();
+				for (int e = 0; e < epochs; e++)
+					trainer.train(data, expectedVals, batchSize);
+				double seconds = (System.nanoTime() - begin) / 1e9;
+
+				if (threads == 1)
+					baseline = seconds;
+
+				report.append(String.format("%8d %12.3f %14.0f %9.2f %10.0f%%%n", threads, seconds, samples / seconds,
+						baseline / seconds, 100.0 * baseline / seconds / threads));
+			}
+			finally
+			{
+				trainer.shutdown();
+			}
+
+			if (threads >= maxThreads)
+				break;
+		}
+
+		return report.toString();
+	}
+
+	// #END: Scaling Report
+
+
+	// #BEGIN: Private Functions
+
+	private List<Future<Double>> invokeAll(final List<Callable<Double>> tasks)
+	{
+		try
+		{
+			return executor.invokeAll(tasks);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while training.", e);
+		}
+	}
+
+	private static double join(final Future<Double> future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while training.", e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Sums the gradient buffers of every shard, in shard order, into the network's own gradients.
+	 */
+	private void reduceGradients()
+	{
+		for (int d = 0; d < network.getDenseLayerCount(); d++)
+		{
+			double[] g = network.getDenseLayer(d).getGradients();
+			System.arraycopy(shards[0].gradients[d], 0, g, 0, g.length);
+
+			for (int t = 1; t < shards.length; t++)
+			{
+				double[] partial = shards[t].gradients[d];
+				for (int k = 0; k < g.length; k++)
+					g[k] += partial[k];
+			}
+		}
+	}
+
+	// #END: Private Functions
+
+
+	// #BEGIN: Shard
+
+	/**
+	 * The activation and gradient buffers owned by one worker.
+	 */
+	private static final class Shard
+	{
+		private final NeuralNetwork network;
+		private final Workspace workspace;
+		private final double[][] gradients;
+
+		// timings of the last task, read by the training thread once the task is joined
+		private int patterns;
+		private long forwardNanos;
+		private long backwardNanos;
+
+		Shard(final NeuralNetwork network)
+		{
+			this.network = network;
+			this.workspace = new Workspace(network.getTopology());
+
+			this.gradients = new double[network.getDenseLayerCount()][];
+			for (int d = 0; d < gradients.length; d++)
+				gradients[d] = new double[network.getDenseLayer(d).getGradients().length];
+		}
+
+		Callable<Double> task(final double[][] data, final double[][] expectedVals, final int from, final int to, final boolean timed)
+		{
+			return new Callable<Double>()
+			{
+				@Override
+				public Double call()
+				{
+					for (double[] g : gradients)
+						java.util.Arrays.fill(g, Constants.DBL_ZERO);
+
+					patterns = to - from;
+					forwardNanos = backwardNanos = 0;
+
+					double error = Constants.DBL_ZERO;
+					for (int i = from; i < to; i++)
+					{
+						if (timed)
+						{
+							long t0 = System.nanoTime();
+							network.feedForward(workspace, data[i]);
+							long t1 = System.nanoTime();
+							error += network.backPropagate(workspace, expectedVals[i], gradients, true);
+
+							forwardNanos += t1 - t0;
+							backwardNanos += System.nanoTime() - t1;
+						}
+						else
+						{
+							network.feedForward(workspace, data[i]);
+							error += network.backPropagate(workspace, expectedVals[i], gradients, true);
+						}
+					}
+
+					return error;
+				}
+			};
+		}
+	}
+
+	// #END: Shard
+}
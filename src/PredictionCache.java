@@ -0,0 +1,420 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A bounded cache of the predictions of a {@link NeuralNetwork}, for traffic that repeats the same input patterns.
+ * <p>
+ * Patterns are keyed by their values, or by their values rounded to a multiple of a given precision so that nearly equal
+ * patterns share one entry; a hit returns the outputs of whichever pattern of the entry was predicted first. Entries live in
+ * a fixed table of small sets of {@value #WAYS} slots, so the number of entries never exceeds the capacity. Reads are lock-free:
+ * a lookup hashes the key and compares it with the few slots of its set, each read atomically. On a miss the new entry replaces
+ * an empty or stale slot of its set, or else the slot used least often according to a frequency sketch, but only if the new key
+ * has been seen at least as often (TinyLFU admission), so a burst of one-off patterns cannot flush the popular ones. The sketch
+ * halves its counts periodically, so popularity fades with time.
+ * <p>
+ * Every entry records the version of the network's weights it was computed with. Training, pruning, growing or copying into
+ * the network, or changing its normalizer, makes every older entry stale at once without touching the table. Weights written
+ * through the object graph view are not seen; call {@link #clear()} after such changes.
+ */
+public final class PredictionCache
+{
+
+	// #BEGIN: Declarations
+	// number of slots per set
+	private static final int WAYS = 4;
+
+	// number of rows of the frequency sketch, and the largest count a row holds
+	private static final int SKETCH_ROWS = 4;
+	private static final int MAX_FREQUENCY = 15;
+
+	// odd multipliers deriving the sketch rows from the hash of a key
+	private static final long[] SKETCH_SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L };
+
+	private final NeuralNetwork network;
+	private final int inputCount;
+	private final int outputCount;
+	private final double precision;
+
+	private final AtomicReferenceArray<Entry> slots;
+	private final int setMask;
+
+	// approximate access counts; updates may race, which only loses counts
+	private final byte[] sketch;
+	private final int sketchShift;
+	private final int sampleLimit;
+	private int samples = 0;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a cache holding at most a given number of entries.
+	 * @param network the neural network whose predictions are cached.
+	 * @param maxEntries the largest number of entries; the capacity is the largest multiple of {@value #WAYS} times a power of two not above it.
+	 * @param precision the step input values are rounded to before keying, or 0 to key by exact values.
+	 * @throws IllegalArgumentException if maxEntries is less than {@value #WAYS} or precision is negative.
+	 */
+	public PredictionCache(final NeuralNetwork network, final int maxEntries, final double precision) throws IllegalArgumentException
+	{
+		if (maxEntries < WAYS)
+			throw new IllegalArgumentException("Prediction cache must hold at least " + WAYS + " entries.");
+
+		if (!(precision >= 0) || Double.isInfinite(precision))
+			throw new IllegalArgumentException("Precision must be a finite, non-negative step.");
+
+		final int[] topology = network.getTopology();
+
+		this.network = network;
+		this.inputCount = topology[0];
+		this.outputCount = topology[topology.length - 1];
+		this.precision = precision;
+
+		final int sets = Integer.highestOneBit(maxEntries / WAYS);
+		this.slots = new AtomicReferenceArray<Entry>(sets * WAYS);
+		this.setMask = sets - 1;
+
+		// one row of sketch counters per power of two of the capacity
+		final int width = Integer.highestOneBit(sets * WAYS);
+		this.sketch = new byte[SKETCH_ROWS * width];
+		this.sketchShift = 64 - Integer.numberOfTrailingZeros(width);
+		this.sampleLimit = 10 * sets * WAYS;
+	}
+
+	/**
+	 * Initializes a cache whose entries take at most about a given amount of memory.
+	 * @param network the neural network whose predictions are cached.
+	 * @param maxBytes the memory budget of the entries, in bytes.
+	 * @param precision the step input values are rounded to before keying, or 0 to key by exact values.
+	 * @return the cache.
+	 * @throws IllegalArgumentException if the budget does not cover {@value #WAYS} entries or precision is negative.
+	 */
+	public static PredictionCache withMemoryBudget(final NeuralNetwork network, final long maxBytes, final double precision) throws IllegalArgumentException
+	{
+		final int[] topology = network.getTopology();
+		return new PredictionCache(network, (int)Math.min(Integer.MAX_VALUE, maxBytes / entryBytes(topology[0], topology[topology.length - 1])), precision);
+	}
+
+	/**
+	 * Estimates the heap footprint of one entry: its object, its key, its outputs and its slot reference.
+	 */
+	private static long entryBytes(final int inputs, final int outputs)
+	{
+		return 40 + (16 + 8L * inputs) + (16 + 8L * outputs) + 4;
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Prediction
+
+	/**
+	 * Returns the cached outputs of a pattern, feeding it through the network with {@link NeuralNetwork#predict(double[], double[])}
+	 * on a miss. Any number of threads may predict concurrently as long as no thread is training the network.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	public double[] predict(final double[] inputVals, final double[] outputVals) throws IllegalArgumentException
+	{
+		if (inputVals.length != inputCount)
+			throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
+
+		if (outputVals.length != outputCount)
+			throw new IllegalArgumentException("Size of output values array does not match the number of output-layer neurons.");
+
+		final long[] key = key(inputVals);
+		final long hash = hash(key);
+		final int set = ((int)(hash ^ (hash >>> 32)) & setMask) * WAYS;
+
+		// read the version before predicting, so a change during the prediction leaves the new entry stale
+		final long version = network.getVersion();
+		final int frequency = record(hash);
+
+		for (int w = 0; w < WAYS; w++)
+		{
+			Entry entry = slots.get(set + w);
+			if (entry != null && entry.hash == hash && entry.version == version && java.util.Arrays.equals(entry.key, key))
+			{
+				hits.increment();
+				System.arraycopy(entry.outputs, 0, outputVals, 0, outputCount);
+				return outputVals;
+			}
+		}
+
+		misses.increment();
+		network.predict(inputVals, outputVals);
+
+		admit(set, new Entry(hash, key, outputVals.clone(), version), frequency);
+		return outputVals;
+	}
+
+	/**
+	 * Removes every entry and resets the frequency sketch. The counters are kept.
+	 */
+	public void clear()
+	{
+		for (int s = 0; s < slots.length(); s++)
+			slots.set(s, null);
+
+		synchronized (sketch)
+		{
+			java.util.Arrays.fill(sketch, (byte)0);
+			samples = 0;
+		}
+	}
+
+	// #END: Prediction
+
+
+	// #BEGIN: Private Functions
+
+	/**
+	 * Returns the key of a pattern: the bits of each value, or each finite value rounded to a multiple of the precision. With a
+	 * precision, NaN and the infinities get the three smallest keys, which no rounded value takes, so they never share an entry
+	 * with a finite pattern.
+	 */
+	private long[] key(final double[] inputVals)
+	{
+		long[] key = new long[inputCount];
+		for (int i = 0; i < inputCount; i++)
+		{
+			final double value = inputVals[i];
+
+			if (precision == 0)
+				key[i] = Double.doubleToLongBits(value + 0.0); // adding zero folds -0.0 into 0.0
+			else if (Double.isNaN(value))
+				key[i] = Long.MIN_VALUE;
+			else if (Double.isInfinite(value))
+				key[i] = Long.MIN_VALUE + (value > 0 ? 1 : 2);
+			else
+				key[i] = Math.max(Long.MIN_VALUE + 3, Math.round(value / precision));
+		}
+
+		return key;
+	}
+
+	private static long hash(final long[] key)
+	{
+		long h = 0x243F6A8885A308D3L;
+		for (long k : key)
+			h = (h ^ k) * 0x9E3779B97F4A7C15L;
+
+		// final avalanche of MurmurHash3
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Counts an access to a key in the frequency sketch and returns its estimated frequency, halving every count once enough
+	 * accesses have been sampled.
+	 */
+	private int record(final long hash)
+	{
+		int frequency = MAX_FREQUENCY;
+		for (int r = 0; r < SKETCH_ROWS; r++)
+		{
+			int index = sketchIndex(hash, r);
+			int count = sketch[index];
+			if (count < MAX_FREQUENCY)
+				sketch[index] = (byte)++count;
+
+			frequency = Math.min(frequency, count);
+		}
+
+		if (++samples >= sampleLimit)
+		{
+			synchronized (sketch)
+			{
+				if (samples >= sampleLimit)
+				{
+					for (int i = 0; i < sketch.length; i++)
+						sketch[i] >>= 1;
+
+					samples = 0;
+				}
+			}
+		}
+
+		return frequency;
+	}
+
+	private int frequency(final long hash)
+	{
+		int frequency = MAX_FREQUENCY;
+		for (int r = 0; r < SKETCH_ROWS; r++)
+			frequency = Math.min(frequency, sketch[sketchIndex(hash, r)]);
+
+		return frequency;
+	}
+
+	private int sketchIndex(final long hash, final int row)
+	{
+		return (row << (64 - sketchShift)) + (int)((hash * SKETCH_SEEDS[row]) >>> sketchShift);
+	}
+
+	/**
+	 * Stores a new entry in its set: in an empty or stale slot if there is one, or else in place of the least frequently used
+	 * entry if the new key is used at least as often.
+	 */
+	private void admit(final int set, final Entry entry, final int frequency)
+	{
+		int victim = -1;
+		int victimFrequency = Integer.MAX_VALUE;
+
+		for (int w = 0; w < WAYS; w++)
+		{
+			Entry current = slots.get(set + w);
+			if (current == null || current.version != entry.version)
+			{
+				slots.set(set + w, entry);
+				return;
+			}
+
+			int f = frequency(current.hash);
+			if (f < victimFrequency)
+			{
+				victim = set + w;
+				victimFrequency = f;
+			}
+		}
+
+		if (frequency >= victimFrequency)
+		{
+			slots.set(victim, entry);
+			evictions.increment();
+		}
+		else
+			rejections.increment();
+	}
+
+	// #END: Private Functions
+
+
+	// #BEGIN: Fields
+
+	/**
+	 * Returns the largest number of entries the cache holds.
+	 * @return the capacity.
+	 */
+	public int getCapacity()
+	{
+		return slots.length();
+	}
+
+	/**
+	 * Returns the number of entries computed with the current weights of the network.
+	 * @return the number of live entries.
+	 */
+	public int getSize()
+	{
+		final long version = network.getVersion();
+
+		int size = 0;
+		for (int s = 0; s < slots.length(); s++)
+		{
+			Entry entry = slots.get(s);
+			if (entry != null && entry.version == version)
+				size++;
+		}
+
+		return size;
+	}
+
+	/**
+	 * Returns the approximate heap footprint of a full cache, excluding the frequency sketch.
+	 * @return the number of bytes.
+	 */
+	public long getMemoryBytes()
+	{
+		return slots.length() * entryBytes(inputCount, outputCount);
+	}
+
+	public double getPrecision()
+	{
+		return precision;
+	}
+
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of live entries replaced by a more frequently used key. Stale entries replaced are not counted.
+	 * @return the number of evictions.
+	 */
+	public long getEvictions()
+	{
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the number of predictions not cached because their key was used less often than every entry of its set.
+	 * @return the number of rejections.
+	 */
+	public long getRejections()
+	{
+		return rejections.sum();
+	}
+
+	/**
+	 * Returns the fraction of predictions answered from the cache.
+	 * @return the hit rate, or 0 if nothing has been predicted.
+	 */
+	public double getHitRate()
+	{
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return (total > 0 ? (double)h / total : Constants.DBL_ZERO);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d rejections, %d of %d entries", getHits(),
+				getMisses(), 100 * getHitRate(), getEvictions(), getRejections(), getSize(), getCapacity());
+	}
+
+	// #END: Fields
+
+
+	// #BEGIN: Entry
+
+	/**
+	 * An immutable cached prediction.
+	 */
+	private static final class Entry
+	{
+		private final long hash;
+		private final long[] key;
+		private final double[] outputs;
+		private final long version;
+
+		Entry(final long hash, final long[] key, final double[] outputs, final long version)
+		{
+			this.hash = hash;
+			this.key = key;
+			this.outputs = outputs;
+			this.version = version;
+		}
+	}
+
+	// #END: Entry
+}
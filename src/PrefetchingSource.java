@@ -0,0 +1,359 @@
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A {@link SampleSource} that reads, transforms and packs patterns of another source on a background thread, ahead of the
+ * thread training on them.
+ * <p>
+ * Patterns travel through a fixed ring of buffers: the background thread takes a free buffer, fills it from the wrapped source,
+ * applies the optional {@link Transform} (e.g. normalization) and queues it; {@link #read(double[], double[], int)} copies from
+ * the oldest filled buffer and hands it back once it is used up. Nothing is allocated per pattern, and as long as producing a
+ * buffer takes no longer than training on one, reads never wait. {@link #getStalls()} counts the reads that did.
+ */
+public class PrefetchingSource implements SampleSource
+{
+
+	/**
+	 * An in-place transformation of packed patterns, run on the background thread.
+	 */
+	public interface Transform
+	{
+		/**
+		 * Transforms a block of patterns in place.
+		 * @param inputs the packed input values.
+		 * @param expected the packed expected values.
+		 * @param rows the number of patterns.
+		 */
+		void apply(double[] inputs, double[] expected, int rows);
+	}
+
+
+	// #BEGIN: Declarations
+	// number of patterns per buffer by default
+	public static final int DEFAULT_ROWS = 256;
+
+	private final SampleSource source;
+	private final Transform transform;
+	private final int rows;
+
+	private final BlockingQueue<Buffer> free;
+	private final BlockingQueue<Buffer> filled;
+	private final ExecutorService producer;
+
+	// the pass being produced, and the signal to abandon it
+	private Future<?> pass = null;
+	private volatile boolean stopped = false;
+
+	// the buffer being read and the read position in it
+	private Buffer current = null;
+	private int position = 0;
+	private boolean ended = false;
+
+	private long stalls = 0;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a prefetching source with a ring of buffers of {@value #DEFAULT_ROWS} patterns each.
+	 * @param source the source to read from, which is closed along with this one.
+	 * @param buffers the number of buffers in the ring.
+	 * @param transform the transformation applied to every buffer, or null for none.
+	 * @throws IllegalArgumentException if buffers is less than 2.
+	 */
+	public PrefetchingSource(final SampleSource source, final int buffers, final Transform transform) throws IllegalArgumentException
+	{
+		this(source, buffers, DEFAULT_ROWS, transform);
+	}
+
+	/**
+	 * Initializes a prefetching source.
+	 * @param source the source to read from, which is closed along with this one.
+	 * @param buffers the number of buffers in the ring.
+	 * @param rows the number of patterns per buffer.
+	 * @param transform the transformation applied to every buffer, or null for none.
+	 * @throws IllegalArgumentException if buffers is less than 2 or rows is less than 1.
+	 */
+	public PrefetchingSource(final SampleSource source, final int buffers, final int rows, final Transform transform) throws IllegalArgumentException
+	{
+		if (buffers < 2)
+			throw new IllegalArgumentException("Cannot initialize PrefetchingSource with less than two buffers.");
+
+		if (rows < 1)
+			throw new IllegalArgumentException("Buffer size must be at least 1 row.");
+
+		this.source = source;
+		this.transform = transform;
+		this.rows = rows;
+
+		this.free = new ArrayBlockingQueue<Buffer>(buffers);
+		this.filled = new ArrayBlockingQueue<Buffer>(buffers);
+		for (int b = 0; b < buffers; b++)
+			free.add(new Buffer(rows * source.getInputCount(), rows * source.getOutputCount()));
+
+		this.producer = Executors.newSingleThreadExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "sample-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Sample Source
+
+	@Override
+	public int read(final double[] inputs, final double[] expected, final int count) throws IOException
+	{
+		final int in = source.getInputCount();
+		final int out = source.getOutputCount();
+
+		if (pass == null)
+			start();
+
+		int read = 0;
+		while (read < count && !ended)
+		{
+			if (current == null)
+			{
+				current = filled.poll();
+				if (current == null)
+				{
+					stalls++;
+					current = take(filled);
+				}
+
+				position = 0;
+
+				if (current.failure != null)
+				{
+					Throwable failure = current.failure;
+					release();
+					ended = true;
+					rethrow(failure);
+				}
+
+				if (current.rows == 0)
+				{
+					release();
+					ended = true;
+					break;
+				}
+			}
+
+			int copy = Math.min(count - read, current.rows - position);
+			System.arraycopy(current.inputs, position * in, inputs, read * in, copy * in);
+			System.arraycopy(current.expected, position * out, expected, read * out, copy * out);
+
+			position += copy;
+			read += copy;
+
+			if (position == current.rows)
+				release();
+		}
+
+		return read;
+	}
+
+	@Override
+	public void rewind() throws IOException
+	{
+		stop();
+
+		source.rewind();
+		start();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			stop();
+		}
+		finally
+		{
+			producer.shutdown();
+			source.close();
+		}
+	}
+
+	@Override
+	public int getInputCount()
+	{
+		return source.getInputCount();
+	}
+
+	@Override
+	public int getOutputCount()
+	{
+		return source.getOutputCount();
+	}
+
+	// #END: Sample Source
+
+
+	// #BEGIN: Private Functions
+
+	private void start()
+	{
+		stopped = false;
+		ended = false;
+
+		pass = producer.submit(() ->
+		{
+			while (!stopped)
+			{
+				Buffer buffer = take(free);
+
+				try
+				{
+					buffer.failure = null;
+					buffer.rows = source.read(buffer.inputs, buffer.expected, rows);
+
+					if (buffer.rows > 0 && transform != null)
+						transform.apply(buffer.inputs, buffer.expected, buffer.rows);
+				}
+				catch (Throwable e)
+				{
+					// errors too, or the reader would wait forever for a buffer that never comes
+					buffer.failure = e;
+				}
+
+				filled.add(buffer);
+
+				// an empty or failed buffer ends the pass
+				if (buffer.rows == 0 || buffer.failure != null)
+					break;
+			}
+		});
+	}
+
+	private void stop() throws IOException
+	{
+		if (pass == null)
+			return;
+
+		stopped = true;
+
+		// keep handing buffers back so the producer is never left waiting for one
+		if (current != null)
+			release();
+		while (!pass.isDone())
+		{
+			Buffer buffer = poll(filled);
+			if (buffer != null)
+				free.add(buffer);
+		}
+
+		Buffer buffer;
+		while ((buffer = filled.poll()) != null)
+			free.add(buffer);
+
+		try
+		{
+			pass.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while prefetching samples.", e);
+		}
+		catch (ExecutionException e)
+		{
+			rethrow(e.getCause());
+		}
+		finally
+		{
+			pass = null;
+		}
+	}
+
+	private void release()
+	{
+		free.add(current);
+		current = null;
+	}
+
+	private static Buffer take(final BlockingQueue<Buffer> queue)
+	{
+		try
+		{
+			return queue.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while prefetching samples.", e);
+		}
+	}
+
+	private static Buffer poll(final BlockingQueue<Buffer> queue)
+	{
+		try
+		{
+			return queue.poll(1, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while prefetching samples.", e);
+		}
+	}
+
+	private static void rethrow(final Throwable failure) throws IOException
+	{
+		if (failure instanceof IOException)
+			throw (IOException)failure;
+
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException)failure;
+
+		if (failure instanceof Error)
+			throw (Error)failure;
+
+		throw new IllegalStateException(failure);
+	}
+
+	// #END: Private Functions
+
+
+	// #BEGIN: Fields
+
+	/**
+	 * Returns the number of times a read found no prefetched buffer and had to wait for the background thread.
+	 * @return the number of stalled reads.
+	 */
+	public long getStalls()
+	{
+		return stalls;
+	}
+
+	// #END: Fields
+
+
+	private static final class Buffer
+	{
+		private final double[] inputs;
+		private final double[] expected;
+
+		private int rows = 0;
+		private Throwable failure = null;
+
+		private Buffer(final int inputs, final int expected)
+		{
+			this.inputs = new double[inputs];
+			this.expected = new double[expected];
+		}
+	}
+}
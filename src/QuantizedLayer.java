@@ -0,0 +1,227 @@
+
+/**
+ * The connections feeding one layer of a neural network quantized to 8-bit integers, for inference only.
+ * <p>
+ * Weights are quantized symmetrically, <code>w = scale[j] * q</code> with <code>q</code> in [-127, 127], using one scale per neuron
+ * or one for the whole layer. The values of the previous layer are quantized asymmetrically over their calibrated range,
+ * <code>x = inScale * (q - inZero)</code> with <code>q</code> in [-128, 127], so that one-sided ranges such as those of the sigmoid
+ * use all 256 levels. Products are accumulated in <code>int</code>, and the zero point is removed with the precomputed sum of
+ * each neuron's weights: <code>sum = scale[j] * inScale * (acc - inZero * rowSum[j]) + bias[j]</code>.
+ */
+class QuantizedLayer
+{
+
+	// #BEGIN: Declarations
+	// largest number of inputs whose products cannot overflow an int accumulator
+	static final int MAX_INPUTS = Integer.MAX_VALUE / (127 * 128);
+
+	private final int inputs;
+	private final int neurons;
+
+	// neurons rows of inputs weights
+	private final byte[] weights;
+	private final float[] scales;
+	private final float[] bias;
+	private final int[] rowSums;
+
+	// quantization of the previous layer's values
+	private final float inScale;
+	private final int inZero;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Quantizes the weights of a dense layer.
+	 * @param dense the layer to quantize.
+	 * @param perNeuron whether each neuron has its own weight scale, rather than one for the layer.
+	 * @param inScale the step between quantized values of the previous layer.
+	 * @param inZero the quantized value representing zero in the previous layer.
+	 * @throws IllegalArgumentException if the layer has more than {@link #MAX_INPUTS} inputs.
+	 */
+	public QuantizedLayer(final DenseLayer dense, final boolean perNeuron, final float inScale, final int inZero) throws IllegalArgumentException
+	{
+		this.inputs = dense.getInputs();
+		this.neurons = dense.getNeurons();
+
+		if (inputs > MAX_INPUTS)
+			throw new IllegalArgumentException("Cannot quantize a layer with more than " + MAX_INPUTS + " inputs.");
+
+		final double[] w = dense.getWeights();
+		final int stride = dense.getStride();
+
+		this.weights = new byte[neurons * inputs];
+		this.scales = new float[neurons];
+		this.bias = new float[neurons];
+
+		double layerMax = Constants.DBL_ZERO;
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+			for (int i = 0; i < inputs; i++)
+				layerMax = Math.max(layerMax, Math.abs(w[row + i]));
+
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+		{
+			double max = layerMax;
+			if (perNeuron)
+			{
+				max = Constants.DBL_ZERO;
+				for (int i = 0; i < inputs; i++)
+					max = Math.max(max, Math.abs(w[row + i]));
+			}
+
+			// a row of zeros keeps a scale of 1 so dequantizing never divides by zero
+			final double scale = (max > 0 ? max / 127 : 1.0);
+			scales[j] = (float)scale;
+
+			for (int i = 0; i < inputs; i++)
+				weights[j * inputs + i] = (byte)Math.max(-127, Math.min(127, Math.round(w[row + i] / scale)));
+
+			if (dense.isUseBias())
+				bias[j] = (float)w[row + inputs];
+		}
+
+		this.inScale = inScale;
+		this.inZero = inZero;
+		this.rowSums = rowSums(weights, inputs, neurons);
+	}
+
+	/**
+	 * Initializes a layer from existing quantized arrays, such as those of a loaded model.
+	 * @param inputs the number of neurons in the previous layer.
+	 * @param neurons the number of neurons in this layer.
+	 * @param weights the quantized weights, one row of inputs per neuron.
+	 * @param scales the weight scale of each neuron.
+	 * @param bias the bias weight of each neuron.
+	 * @param inScale the step between quantized values of the previous layer.
+	 * @param inZero the quantized value representing zero in the previous layer.
+	 * @throws IllegalArgumentException if the arrays do not match the size of the layer.
+	 */
+	public QuantizedLayer(final int inputs, final int neurons, final byte[] weights, final float[] scales, final float[] bias, final float inScale, final int inZero) throws IllegalArgumentException
+	{
+		if (inputs > MAX_INPUTS)
+			throw new IllegalArgumentException("Cannot quantize a layer with more than " + MAX_INPUTS + " inputs.");
+
+		if (weights.length != (long)inputs * neurons || scales.length != neurons || bias.length != neurons)
+			throw new IllegalArgumentException("Quantized layer arrays do not match the number of inputs and neurons.");
+
+		if (inZero < -128 || inZero > 127)
+			throw new IllegalArgumentException("Zero point " + inZero + " is not an 8-bit value.");
+
+		this.inputs = inputs;
+		this.neurons = neurons;
+		this.weights = weights;
+		this.scales = scales;
+		this.bias = bias;
+		this.inScale = inScale;
+		this.inZero = inZero;
+		this.rowSums = rowSums(weights, inputs, neurons);
+	}
+
+	private static int[] rowSums(final byte[] weights, final int inputs, final int neurons)
+	{
+		int[] sums = new int[neurons];
+		for (int j = 0; j < neurons; j++)
+			for (int i = j * inputs; i < (j + 1) * inputs; i++)
+				sums[j] += weights[i];
+
+		return sums;
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Kernels
+
+	/**
+	 * Quantizes a range of values with the input quantization of this layer.
+	 * @param values the values to quantize.
+	 * @param offset the index of the first value.
+	 * @param quantized the array receiving the quantized values.
+	 * @param qOffset the index of the first quantized value.
+	 * @param length the number of values.
+	 */
+	public void quantize(final double[] values, final int offset, final byte[] quantized, final int qOffset, final int length)
+	{
+		final double inverse = 1.0 / inScale;
+		for (int i = 0; i < length; i++)
+			quantized[qOffset + i] = (byte)Math.max(-128, Math.min(127, Math.round(values[offset + i] * inverse) + inZero));
+	}
+
+	/**
+	 * Single-precision form of {@link #quantize(double[], int, byte[], int, int)}.
+	 */
+	public void quantize(final float[] values, final int offset, final byte[] quantized, final int qOffset, final int length)
+	{
+		final float inverse = 1.0f / inScale;
+		for (int i = 0; i < length; i++)
+			quantized[qOffset + i] = (byte)Math.max(-128, Math.min(127, Math.round(values[offset + i] * inverse) + inZero));
+	}
+
+	/**
+	 * Calculates the activated values of this layer for a block of quantized patterns.
+	 * @param kernel the activation function of this layer.
+	 * @param input the packed quantized input patterns, <code>inputs</code> values per pattern.
+	 * @param rows the number of patterns.
+	 * @param sums the array receiving the integer sums, at least <code>rows * neurons</code> long.
+	 * @param output the array receiving the packed activated values, <code>neurons</code> values per pattern.
+	 */
+	public void forwardBatch(final ActivationKernel kernel, final byte[] input, final int rows, final int[] sums, final float[] output)
+	{
+		Kernels.INSTANCE.multiply(input, rows, inputs, weights, neurons, sums);
+
+		for (int r = 0, o = 0; r < rows; r++)
+			for (int j = 0; j < neurons; j++, o++)
+				output[o] = dequantize(j, sums[o]);
+
+		kernel.activate(output, 0, rows * neurons);
+	}
+
+	private float dequantize(final int j, final int acc)
+	{
+		// the zero point correction can reach the magnitude of the sum itself, so it is subtracted in long
+		return scales[j] * inScale * (acc - (long)inZero * rowSums[j]) + bias[j];
+	}
+
+	// #END: Kernels
+
+
+	// #BEGIN: Fields
+
+	public int getInputs()
+	{
+		return inputs;
+	}
+
+	public int getNeurons()
+	{
+		return neurons;
+	}
+
+	public byte[] getWeights()
+	{
+		return weights;
+	}
+
+	public float[] getScales()
+	{
+		return scales;
+	}
+
+	public float[] getBias()
+	{
+		return bias;
+	}
+
+	public float getInScale()
+	{
+		return inScale;
+	}
+
+	public int getInZero()
+	{
+		return inZero;
+	}
+
+	// #END: Fields
+}
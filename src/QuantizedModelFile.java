@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Versioned binary format for a {@link QuantizedNetwork}.
+ * <p>
+ * All values are little-endian. The header holds a magic number, the format version, a flag word (bias, per-neuron scales), the
+ * layer count, the input range, the topology and the activation function of every layer after the input layer, padded to a
+ * multiple of 8 bytes. It is followed, for each layer in order, by the scale and zero point of its input, the weight scale and
+ * bias of each neuron as floats and the <code>neurons * inputs</code> weights as bytes, each array padded to a multiple of 8 bytes.
+ * When the network has a {@link Normalizer} (since version 2) the layers are followed by it, in the layout of {@link ModelFile}.
+ */
+final class QuantizedModelFile
+{
+
+	// #BEGIN: Declarations
+	// "ANN" followed by a format byte
+	static final int MAGIC = 0x414E4E02;
+	static final int VERSION = 2;
+
+	private static final int FLAG_BIAS = 1;
+	private static final int FLAG_PER_NEURON = 2;
+	private static final int FLAG_NORMALIZER = 4;
+
+	// magic, version, flags, layer count, range min/max
+	private static final int FIXED_HEADER = 4 * 4 + 2 * 8;
+
+	// size of the buffer used to stream arrays to disk
+	private static final int WRITE_CHUNK = 1 << 16;
+	// #END: Declarations
+
+
+	private QuantizedModelFile()
+	{
+	}
+
+
+	// #BEGIN: Public Functions
+
+	/**
+	 * Writes a quantized network to a file, replacing any existing content.
+	 * @param network the quantized network to write.
+	 * @param path the file to write.
+	 * @throws IOException if the file cannot be written.
+	 */
+	static void save(final QuantizedNetwork network, final Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			write(network, channel);
+		}
+	}
+
+	/**
+	 * Writes a quantized network to the current position of a channel.
+	 * @param network the quantized network to write.
+	 * @param channel the channel to write to.
+	 * @throws IOException if the channel cannot be written.
+	 */
+	static void write(final QuantizedNetwork network, final FileChannel channel) throws IOException
+	{
+		final int[] topology = network.getTopology();
+		final ActivationFunction[] activations = network.getActivationFunctions();
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(WRITE_CHUNK, headerSize(topology.length))).order(ByteOrder.LITTLE_ENDIAN);
+
+		final Normalizer normalizer = network.getNormalizer();
+
+		int flags = (network.isUseBias() ? FLAG_BIAS : 0) | (network.isPerNeuron() ? FLAG_PER_NEURON : 0) | (normalizer != null ? FLAG_NORMALIZER : 0);
+
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(topology.length);
+		buffer.putDouble(network.getRangeMin()).putDouble(network.getRangeMax());
+		for (int size : topology)
+			buffer.putInt(size);
+		for (ActivationFunction func : activations)
+			buffer.putInt(func.ordinal());
+		while (buffer.position() < headerSize(topology.length))
+			buffer.put((byte)0);
+
+		for (int d = 0; d < network.getQuantizedLayerCount(); d++)
+		{
+			QuantizedLayer layer = network.getQuantizedLayer(d);
+
+			if (buffer.remaining() < 8)
+				ModelFile.flush(buffer, channel);
+			buffer.putFloat(layer.getInScale()).putInt(layer.getInZero());
+
+			ModelFile.write(layer.getScales(), buffer, channel);
+			ModelFile.write(layer.getBias(), buffer, channel);
+			ModelFile.write(layer.getWeights(), buffer, channel);
+		}
+
+		if (normalizer != null)
+			ModelFile.write(normalizer, buffer, channel);
+
+		ModelFile.flush(buffer, channel);
+	}
+
+	/**
+	 * Loads a quantized network from a file, reading it in chunks so it may exceed 2 GB.
+	 * @param path the file to read.
+	 * @return the quantized network.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the file is not a quantized model of a supported version.
+	 */
+	static QuantizedNetwork load(final Path path) throws IOException, IllegalArgumentException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			return read(new ModelInput(channel, 0));
+		}
+	}
+
+	/**
+	 * Reads a quantized network from an input, starting at its current position. The position is advanced past the model.
+	 * @param in the input holding the model.
+	 * @return the quantized network.
+	 * @throws IOException if the input cannot be read.
+	 * @throws IllegalArgumentException if the input does not hold a complete quantized model of a supported version.
+	 */
+	static QuantizedNetwork read(final ModelInput in) throws IOException, IllegalArgumentException
+	{
+		final long start = in.position();
+
+		try
+		{
+			if (in.getInt() != MAGIC)
+				throw new IllegalArgumentException("Not a quantized neural network model file.");
+
+			int version = in.getInt();
+			if (version < 1 || version > VERSION)
+				throw new IllegalArgumentException("Unsupported quantized model file version " + version + ".");
+
+			final int flags = in.getInt();
+
+			int[] topology = new int[in.getInt()];
+			if (topology.length < 2)
+				throw new IllegalArgumentException("Cannot load a neural network with less than two layers.");
+
+			double rangeMin = in.getDouble();
+			double rangeMax = in.getDouble();
+
+			for (int l = 0; l < topology.length; l++)
+			{
+				topology[l] = in.getInt();
+				if (topology[l] < 1)
+					throw new IllegalArgumentException("Invalid layer size " + topology[l] + ".");
+			}
+
+			ActivationFunction[] activations = new ActivationFunction[topology.length - 1];
+			for (int l = 0; l < activations.length; l++)
+			{
+				int ordinal = in.getInt();
+				if (ordinal < 0 || ordinal >= ActivationFunction.values().length)
+					throw new IllegalArgumentException("Unknown activation function " + ordinal + ".");
+
+				activations[l] = ActivationFunction.values()[ordinal];
+			}
+
+			in.position(start + headerSize(topology.length));
+
+			QuantizedLayer[] layers = new QuantizedLayer[topology.length - 1];
+			for (int d = 0; d < layers.length; d++)
+			{
+				final int inputs = topology[d];
+				final int neurons = topology[d + 1];
+
+				if ((long)inputs * neurons > Integer.MAX_VALUE)
+					throw new IllegalArgumentException("Quantized layer is too large.");
+
+				float inScale = in.getFloat();
+				int inZero = in.getInt();
+
+				float[] scales = new float[neurons];
+				float[] bias = new float[neurons];
+				byte[] weights = new byte[inputs * neurons];
+
+				ModelFile.read(in, scales);
+				ModelFile.read(in, bias);
+				ModelFile.read(in, weights);
+
+				layers[d] = new QuantizedLayer(inputs, neurons, weights, scales, bias, inScale, inZero);
+			}
+
+			Normalizer normalizer = null;
+			if ((flags & FLAG_NORMALIZER) != 0)
+				normalizer = ModelFile.readNormalizer(in);
+
+			return new QuantizedNetwork(activations, rangeMin, rangeMax, (flags & FLAG_BIAS) != 0, (flags & FLAG_PER_NEURON) != 0, normalizer, layers);
+		}
+		catch (java.nio.BufferUnderflowException e)
+		{
+			throw new IllegalArgumentException("Quantized model file is truncated.", e);
+		}
+	}
+
+	// #END: Public Functions
+
+
+	// #BEGIN: Private Functions
+
+	private static int headerSize(final int layers)
+	{
+		return (FIXED_HEADER + 4 * layers + 4 * (layers - 1) + 7) & ~7;
+	}
+
+	// #END: Private Functions
+}
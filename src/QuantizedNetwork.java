@@ -0,0 +1,527 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+
+/**
+ * An inference-only copy of a trained {@link NeuralNetwork} with 8-bit integer weights and activations, calibrated on a sample
+ * of its inputs. Each weight takes one byte instead of eight, and every layer is an integer-accumulating product; see
+ * {@link QuantizedLayer} for the quantization scheme. {@link #accuracyReport} measures how far the results move from the network
+ * it was quantized from. The {@link Normalizer} of the network is kept and applied to every input before it is quantized.
+ */
+public final class QuantizedNetwork
+{
+
+	// #BEGIN: Declarations
+	// number of patterns carried through every layer together by predictBatch
+	private static final int BATCH_ROWS = 128;
+
+	private final ActivationFunction[] activations;
+	private final ActivationKernel[] kernels;
+
+	// quantizedLayers[l] holds the connections feeding layer l + 1
+	private final int[] topology;
+	private final QuantizedLayer[] quantizedLayers;
+
+	private final double rangeMin;
+	private final double rangeMax;
+
+	private final boolean useBias;
+	private final boolean perNeuron;
+
+	// feature-wise normalization applied to every input before the first layer, or null
+	private final Normalizer normalizer;
+
+	// buffers and output values of the last feed-forward
+	private final Buffers buffers;
+
+	// per-thread buffers for predict
+	private final ThreadLocal<Buffers> scratch = new ThreadLocal<Buffers>()
+	{
+		@Override
+		protected Buffers initialValue()
+		{
+			return new Buffers(1);
+		}
+	};
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Quantizes a neural network. The range of the values entering each layer is taken from feeding the calibration patterns
+	 * through the network, so they should be representative of the inputs it will see.
+	 * @param network the neural network to quantize.
+	 * @param calibration the calibration patterns.
+	 * @param perNeuron whether each neuron has its own weight scale, rather than one for each layer.
+	 * @throws IllegalArgumentException if the neural network has no layers, a layer is too wide to quantize, or there are no
+	 * calibration patterns or their size does not match the first layer.
+	 */
+	public QuantizedNetwork(final NeuralNetwork network, final double[][] calibration, final boolean perNeuron) throws IllegalArgumentException
+	{
+		this(network.getActivationFunctions(), network.getRangeMin(), network.getRangeMax(), network.isUseBias(), perNeuron,
+				network.getNormalizer(), quantize(network, calibration, perNeuron));
+	}
+
+	/**
+	 * Initializes a quantized network around existing layers, such as the layers of a loaded model.
+	 * @param activationFuncs the activation function of each layer after the input layer.
+	 * @param rangeMin the lower-bound of the suggested input range.
+	 * @param rangeMax the upper-bound of the suggested input range.
+	 * @param useBias whether the layers have bias weights.
+	 * @param perNeuron whether each neuron has its own weight scale.
+	 * @param normalizer the normalizer applied to every input, or null.
+	 * @param quantizedLayers the connections feeding each layer after the input layer.
+	 * @throws IllegalArgumentException if there are no layers, the layers do not fit together, there is not one activation
+	 * function per layer or the normalizer does not match the first layer.
+	 */
+	QuantizedNetwork(final ActivationFunction[] activationFuncs, final double rangeMin, final double rangeMax, final boolean useBias, final boolean perNeuron, final Normalizer normalizer, final QuantizedLayer[] quantizedLayers) throws IllegalArgumentException
+	{
+		if (quantizedLayers.length == 0)
+			throw new IllegalArgumentException("Cannot initialize QuantizedNetwork with less than two layers.");
+
+		if (activationFuncs.length != quantizedLayers.length)
+			throw new IllegalArgumentException("Number of activation functions does not match the number of layers after the input layer.");
+
+		this.topology = new int[quantizedLayers.length + 1];
+		topology[0] = quantizedLayers[0].getInputs();
+		for (int d = 0; d < quantizedLayers.length; d++)
+		{
+			if (quantizedLayers[d].getInputs() != topology[d])
+				throw new IllegalArgumentException("Quantized layers do not fit together.");
+
+			topology[d + 1] = quantizedLayers[d].getNeurons();
+		}
+
+		if (normalizer != null && normalizer.getWidth() != topology[0])
+			throw new IllegalArgumentException("Number of normalized columns does not match the number of first-layer neurons.");
+
+		this.activations = activationFuncs.clone();
+		this.kernels = ActivationKernel.Factory.create(activations);
+		this.quantizedLayers = quantizedLayers;
+
+		this.rangeMin = rangeMin;
+		this.rangeMax = rangeMax;
+		this.useBias = useBias;
+		this.perNeuron = perNeuron;
+		this.normalizer = normalizer;
+
+		this.buffers = new Buffers(1);
+	}
+
+	/**
+	 * Calibrates the range of the values entering each layer and quantizes every layer with it. The first layer is calibrated
+	 * on normalized inputs, as the network feeds them forward.
+	 */
+	private static QuantizedLayer[] quantize(final NeuralNetwork network, final double[][] calibration, final boolean perNeuron) throws IllegalArgumentException
+	{
+		final int[] topology = network.getTopology();
+
+		if (topology.length < 2)
+			throw new IllegalArgumentException("Cannot quantize a NeuralNetwork with less than two layers.");
+
+		if (calibration.length == 0)
+			throw new IllegalArgumentException("Cannot calibrate a QuantizedNetwork without patterns.");
+
+		double[] min = new double[topology.length - 1];
+		double[] max = new double[topology.length - 1];
+
+		Workspace ws = new Workspace(topology);
+		for (double[] pattern : calibration)
+		{
+			network.feedForward(ws, pattern);
+
+			for (int l = 0; l < min.length; l++)
+			{
+				for (double value : ws.getValues(l))
+				{
+					min[l] = Math.min(min[l], value);
+					max[l] = Math.max(max[l], value);
+				}
+			}
+		}
+
+		QuantizedLayer[] layers = new QuantizedLayer[topology.length - 1];
+		for (int d = 0; d < layers.length; d++)
+		{
+			// the range always includes zero, which is then represented exactly
+			final double scale = (max[d] > min[d] ? (max[d] - min[d]) / 255 : 1.0);
+			final int zero = (int)Math.max(-128, Math.min(127, Math.round(-128 - min[d] / scale)));
+
+			layers[d] = new QuantizedLayer(network.getDenseLayer(d), perNeuron, (float)scale, zero);
+		}
+
+		return layers;
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Feed-Forward
+
+	/**
+	 * Inputs given <code>inputVals</code> into the network and iterates through the network to update the output values.
+	 * @param inputVals the values to input into the first layer. Size must match size of first layer.
+	 * @throws IllegalArgumentException if the size of inputVals does not match the number of neurons in the first layer.
+	 */
+	public void feedForward(final double[] inputVals) throws IllegalArgumentException
+	{
+		if (inputVals.length != topology[0])
+			throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
+
+		forward(buffers, inputVals, 0, 1);
+	}
+
+	/**
+	 * Returns the output layer of the network.
+	 * @return the output layer of the last feed-forward as an array of doubles.
+	 */
+	public double[] fetchResults()
+	{
+		double[] results = new double[topology[topology.length - 1]];
+		for (int j = 0; j < results.length; j++)
+			results[j] = buffers.values[j];
+
+		return results;
+	}
+
+	/**
+	 * Feeds given <code>inputVals</code> through the network without touching the results of {@link #feedForward}, using
+	 * buffers private to the calling thread.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	public double[] predict(final double[] inputVals, final double[] outputVals) throws IllegalArgumentException
+	{
+		if (inputVals.length != topology[0])
+			throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
+
+		if (outputVals.length != topology[topology.length - 1])
+			throw new IllegalArgumentException("Size of output values array does not match the number of output-layer neurons.");
+
+		Buffers own = scratch.get();
+		forward(own, inputVals, 0, 1);
+
+		for (int j = 0; j < outputVals.length; j++)
+			outputVals[j] = own.values[j];
+
+		return outputVals;
+	}
+
+	/**
+	 * Feeds a block of patterns through the network, carrying up to 128 patterns through every layer together.
+	 * Results are identical to calling {@link #predict(double[], double[])} on each pattern.
+	 * @param inputs the packed input patterns, one first-layer sized row after another.
+	 * @param rows the number of patterns.
+	 * @param results the preallocated array receiving the packed output-layer values of every pattern.
+	 * @return results.
+	 * @throws IllegalArgumentException if inputs or results are too small to hold the given number of patterns.
+	 */
+	public double[] predictBatch(final double[] inputs, final int rows, final double[] results) throws IllegalArgumentException
+	{
+		final int inSize = topology[0];
+		final int outSize = topology[topology.length - 1];
+
+		if (inputs.length < (long)rows * inSize)
+			throw new IllegalArgumentException("Size of input values array is less than the number of rows times the number of first-layer neurons.");
+
+		if (results.length < (long)rows * outSize)
+			throw new IllegalArgumentException("Size of results array is less than the number of rows times the number of output-layer neurons.");
+
+		final Buffers block = new Buffers(Math.min(BATCH_ROWS, rows));
+
+		for (int start = 0; start < rows; start += BATCH_ROWS)
+		{
+			int count = Math.min(BATCH_ROWS, rows - start);
+			forward(block, inputs, start * inSize, count);
+
+			for (int k = 0, o = start * outSize; k < count * outSize; k++, o++)
+				results[o] = block.values[k];
+		}
+
+		return results;
+	}
+
+	/**
+	 * Carries a block of patterns through every layer, leaving the packed output values in the buffers.
+	 */
+	private void forward(final Buffers buf, final double[] inputs, final int inOffset, final int rows)
+	{
+		// normalize a copy of the block rather than the caller's inputs
+		if (normalizer != null)
+		{
+			System.arraycopy(inputs, inOffset, buf.normalized, 0, rows * topology[0]);
+			normalizer.apply(buf.normalized, 0, rows);
+
+			quantizedLayers[0].quantize(buf.normalized, 0, buf.quantized, 0, rows * topology[0]);
+		}
+		else
+			quantizedLayers[0].quantize(inputs, inOffset, buf.quantized, 0, rows * topology[0]);
+
+		for (int l = 1; l < topology.length; l++)
+		{
+			if (l > 1)
+				quantizedLayers[l - 1].quantize(buf.values, 0, buf.quantized, 0, rows * topology[l - 1]);
+
+			quantizedLayers[l - 1].forwardBatch(kernels[l - 1], buf.quantized, rows, buf.sums, buf.values);
+		}
+	}
+
+	// #END: Feed-Forward
+
+
+	// #BEGIN: Accuracy Report
+
+	/**
+	 * Compares the network with the neural network it was quantized from on a set of patterns: the difference of their outputs,
+	 * how often they agree on the largest output, and, given expected values, the RMS error and arg-max accuracy of each. It also
+	 * lists the size of the weights and the throughput of batched prediction.
+	 * @param reference the neural network to compare with.
+	 * @param data the input patterns.
+	 * @param expectedVals the expected values of each pattern, or null to skip the error and accuracy rows.
+	 * @return the report as a table with one row per measure.
+	 * @throws IllegalArgumentException if the topology of the reference differs or the patterns do not match it.
+	 */
+	public String accuracyReport(final NeuralNetwork reference, final double[][] data, final double[][] expectedVals) throws IllegalArgumentException
+	{
+		if (!java.util.Arrays.equals(topology, reference.getTopology()))
+			throw new IllegalArgumentException("Cannot compare with a neural network of a different topology.");
+
+		final int inSize = topology[0];
+		final int outSize = topology[topology.length - 1];
+		final int rows = data.length;
+
+		double[] packed = new double[rows * inSize];
+		for (int r = 0; r < rows; r++)
+		{
+			if (data[r].length != inSize)
+				throw new IllegalArgumentException("Size of input values array does not match the number of first-layer neurons.");
+
+			System.arraycopy(data[r], 0, packed, r * inSize, inSize);
+		}
+
+		double[] exact = new double[rows * outSize];
+		double[] quantized = new double[rows * outSize];
+
+		// warm up, then time the best of a few runs of each
+		double exactSeconds = Double.MAX_VALUE;
+		double quantizedSeconds = Double.MAX_VALUE;
+		for (int run = 0; run < 5; run++)
+		{
+			long begin = System.nanoTime();
+			reference.predictBatch(packed, rows, exact);
+			long middle = System.nanoTime();
+			predictBatch(packed, rows, quantized);
+			long end = System.nanoTime();
+
+			if (run > 0)
+			{
+				exactSeconds = Math.min(exactSeconds, (middle - begin) / 1e9);
+				quantizedSeconds = Math.min(quantizedSeconds, (end - middle) / 1e9);
+			}
+		}
+
+		double maxDiff = Constants.DBL_ZERO;
+		double sumDiff = Constants.DBL_ZERO;
+		double exactError = Constants.DBL_ZERO;
+		double quantizedError = Constants.DBL_ZERO;
+		int agree = 0;
+		int exactCorrect = 0;
+		int quantizedCorrect = 0;
+
+		for (int r = 0; r < rows; r++)
+		{
+			final int o = r * outSize;
+
+			for (int j = 0; j < outSize; j++)
+			{
+				double diff = Math.abs(exact[o + j] - quantized[o + j]);
+				maxDiff = Math.max(maxDiff, diff);
+				sumDiff += diff;
+
+				if (expectedVals != null)
+				{
+					exactError += (expectedVals[r][j] - exact[o + j]) * (expectedVals[r][j] - exact[o + j]);
+					quantizedError += (expectedVals[r][j] - quantized[o + j]) * (expectedVals[r][j] - quantized[o + j]);
+				}
+			}
+
+			int exactMax = argMax(exact, o, outSize);
+			int quantizedMax = argMax(quantized, o, outSize);
+			if (exactMax == quantizedMax)
+				agree++;
+
+			if (expectedVals != null)
+			{
+				int expectedMax = argMax(expectedVals[r], 0, outSize);
+				if (exactMax == expectedMax)
+					exactCorrect++;
+				if (quantizedMax == expectedMax)
+					quantizedCorrect++;
+			}
+		}
+
+		final double values = (double)rows * outSize;
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%-22s %14s %14s %14s%n", "measure", "double", "int8", "delta"));
+		report.append(String.format("%-22s %14s %14s %14.3g%n", "max |output diff|", "", "", maxDiff));
+		report.append(String.format("%-22s %14s %14s %14.3g%n", "mean |output diff|", "", "", sumDiff / values));
+		report.append(String.format("%-22s %14s %14s %13.2f%%%n", "arg-max agreement", "", "", 100.0 * agree / rows));
+
+		if (expectedVals != null)
+		{
+			double exactRms = Math.sqrt(exactError / values);
+			double quantizedRms = Math.sqrt(quantizedError / values);
+			report.append(String.format("%-22s %14.6f %14.6f %+14.6f%n", "RMS error", exactRms, quantizedRms, quantizedRms - exactRms));
+			report.append(String.format("%-22s %13.2f%% %13.2f%% %+13.2f%%%n", "arg-max accuracy", 100.0 * exactCorrect / rows,
+					100.0 * quantizedCorrect / rows, 100.0 * (quantizedCorrect - exactCorrect) / rows));
+		}
+
+		long exactBytes = 0;
+		for (int d = 0; d < quantizedLayers.length; d++)
+			exactBytes += 8L * reference.getDenseLayer(d).getWeights().length;
+
+		report.append(String.format("%-22s %14d %14d %13.1fx%n", "weight bytes", exactBytes, getWeightBytes(), (double)exactBytes / getWeightBytes()));
+		report.append(String.format("%-22s %14.0f %14.0f %13.2fx%n", "patterns/s", rows / exactSeconds, rows / quantizedSeconds, exactSeconds / quantizedSeconds));
+
+		return report.toString();
+	}
+
+	private static int argMax(final double[] values, final int offset, final int length)
+	{
+		int best = 0;
+		for (int j = 1; j < length; j++)
+			if (values[offset + j] > values[offset + best])
+				best = j;
+
+		return best;
+	}
+
+	// #END: Accuracy Report
+
+
+	// #BEGIN: Persistence
+
+	/**
+	 * Saves the network in the binary format of {@link QuantizedModelFile}.
+	 * @param path the file to write, replacing any existing content.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void save(final Path path) throws IOException
+	{
+		QuantizedModelFile.save(this, path);
+	}
+
+	/**
+	 * Loads a network saved by {@link #save(Path)}.
+	 * @param path the file to read.
+	 * @return the quantized network.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the file is not a quantized model of a supported version.
+	 */
+	public static QuantizedNetwork load(final Path path) throws IOException, IllegalArgumentException
+	{
+		return QuantizedModelFile.load(path);
+	}
+
+	// #END: Persistence
+
+
+	// #BEGIN: Fields
+
+	public double getRangeMin()
+	{
+		return rangeMin;
+	}
+
+	public double getRangeMax()
+	{
+		return rangeMax;
+	}
+
+	public boolean isUseBias()
+	{
+		return useBias;
+	}
+
+	public boolean isPerNeuron()
+	{
+		return perNeuron;
+	}
+
+	public Normalizer getNormalizer()
+	{
+		return normalizer;
+	}
+
+	/**
+	 * Returns the activation function of each layer after the input layer.
+	 * @return a copy of the activation functions, where index 0 belongs to the first layer after the input layer.
+	 */
+	public ActivationFunction[] getActivationFunctions()
+	{
+		return activations.clone();
+	}
+
+	/**
+	 * Returns the number of neurons in each layer of the network.
+	 * @return a copy of the topology array, where index 0 is the input layer.
+	 */
+	public int[] getTopology()
+	{
+		return topology.clone();
+	}
+
+	/**
+	 * Returns the memory taken by the weights: one byte per connection between neurons, plus a float scale and bias per neuron.
+	 * @return the size of the weights in bytes.
+	 */
+	public long getWeightBytes()
+	{
+		long bytes = 0;
+		for (QuantizedLayer layer : quantizedLayers)
+			bytes += layer.getWeights().length + 8L * layer.getNeurons();
+
+		return bytes;
+	}
+
+	QuantizedLayer getQuantizedLayer(final int index)
+	{
+		return quantizedLayers[index];
+	}
+
+	int getQuantizedLayerCount()
+	{
+		return quantizedLayers.length;
+	}
+
+	// #END: Fields
+
+
+	/**
+	 * The normalized inputs, the quantized values entering a layer, their integer sums and the activated values leaving it, for
+	 * a block of patterns.
+	 */
+	private final class Buffers
+	{
+		final double[] normalized;
+		final byte[] quantized;
+		final int[] sums;
+		final float[] values;
+
+		Buffers(final int rows)
+		{
+			int width = 0;
+			for (int size : topology)
+				width = Math.max(width, size);
+
+			this.normalized = new double[normalizer != null ? rows * topology[0] : 0];
+			this.quantized = new byte[rows * width];
+			this.sums = new int[rows * width];
+			this.values = new float[rows * width];
+		}
+	}
+}
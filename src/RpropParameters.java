@@ -0,0 +1,92 @@
+
+/**
+ * The step-size constants of iRPROP+ used by a {@link NeuralNetwork}.
+ * <p>
+ * Each connection keeps its own learn delta, which grows by <code>posEta</code> while its gradient keeps its sign and shrinks by
+ * <code>negEta</code> when the sign flips, bounded by <code>minDelta</code> and <code>maxDelta</code>. New learn deltas start
+ * at <code>initLearnDelta</code>. {@link #DEFAULT} holds the values in {@link Constants}.
+ * <p>
+ * Parameters are immutable and may be shared between networks.
+ */
+public final class RpropParameters
+{
+
+	/**
+	 * The standard parameters: posEta 1.2, negEta 0.5, learn deltas in [1e-6, 50] starting at 0.25.
+	 */
+	public static final RpropParameters DEFAULT = new RpropParameters(Constants.POS_ETA, Constants.NEG_ETA, Constants.MIN_DELTA, Constants.MAX_DELTA, Constants.INIT_LEARN_DELTA);
+
+
+	// #BEGIN: Declarations
+	private final double posEta;
+	private final double negEta;
+	private final double minDelta;
+	private final double maxDelta;
+	private final double initLearnDelta;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes a set of iRPROP+ parameters.
+	 * @param posEta the factor a learn delta grows by while its gradient keeps its sign.
+	 * @param negEta the factor a learn delta shrinks by when its gradient changes sign.
+	 * @param minDelta the lower-bound of the learn delta.
+	 * @param maxDelta the upper-bound of the learn delta.
+	 * @param initLearnDelta the learn delta of a connection that has not been trained.
+	 * @throws IllegalArgumentException unless 0 &lt; negEta &lt; 1 &lt; posEta and 0 &lt; minDelta &lt;= initLearnDelta &lt;= maxDelta.
+	 */
+	public RpropParameters(final double posEta, final double negEta, final double minDelta, final double maxDelta, final double initLearnDelta) throws IllegalArgumentException
+	{
+		if (!(posEta > 1.0) || !(negEta > 0 && negEta < 1.0))
+			throw new IllegalArgumentException("iRPROP+ requires 0 < negEta < 1 < posEta.");
+
+		if (!(minDelta > 0) || !(initLearnDelta >= minDelta) || !(maxDelta >= initLearnDelta))
+			throw new IllegalArgumentException("iRPROP+ requires 0 < minDelta <= initLearnDelta <= maxDelta.");
+
+		this.posEta = posEta;
+		this.negEta = negEta;
+		this.minDelta = minDelta;
+		this.maxDelta = maxDelta;
+		this.initLearnDelta = initLearnDelta;
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Fields
+
+	public double getPosEta()
+	{
+		return posEta;
+	}
+
+	public double getNegEta()
+	{
+		return negEta;
+	}
+
+	public double getMinDelta()
+	{
+		return minDelta;
+	}
+
+	public double getMaxDelta()
+	{
+		return maxDelta;
+	}
+
+	public double getInitLearnDelta()
+	{
+		return initLearnDelta;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("posEta %.3g, negEta %.3g, delta [%.3g, %.3g] from %.3g", posEta, negEta, minDelta, maxDelta, initLearnDelta);
+	}
+
+	// #END: Fields
+}
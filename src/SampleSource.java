@@ -0,0 +1,41 @@
+import java.io.IOException;
+
+
+/**
+ * A pull-based source of training patterns, read in passes. Patterns are copied into caller-supplied packed arrays, so a
+ * source can stream a data set of any size through a fixed amount of memory.
+ */
+public interface SampleSource extends AutoCloseable
+{
+
+	/**
+	 * Returns the number of input values of each pattern.
+	 * @return the number of input values.
+	 */
+	int getInputCount();
+
+	/**
+	 * Returns the number of expected output values of each pattern.
+	 * @return the number of expected output values.
+	 */
+	int getOutputCount();
+
+	/**
+	 * Reads the next patterns of the current pass.
+	 * @param inputs the array receiving the packed input values, <code>getInputCount()</code> values per pattern.
+	 * @param expected the array receiving the packed expected values, <code>getOutputCount()</code> values per pattern.
+	 * @param rows the maximum number of patterns to read.
+	 * @return the number of patterns read, which is less than rows only at the end of the pass and 0 once the pass is over.
+	 * @throws IOException if the patterns cannot be read.
+	 */
+	int read(double[] inputs, double[] expected, int rows) throws IOException;
+
+	/**
+	 * Starts a new pass over the patterns.
+	 * @throws IOException if the source cannot be rewound.
+	 */
+	void rewind() throws IOException;
+
+	@Override
+	void close() throws IOException;
+}
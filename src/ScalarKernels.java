@@ -0,0 +1,409 @@
+import java.nio.ByteBuffer;
+
+
+/**
+ * Plain Java kernels. Every sum accumulates in index order, so results do not depend on the hardware.
+ */
+final class ScalarKernels implements Kernels
+{
+
+	// #BEGIN: Declarations
+	// per-thread widened patterns and weight row of the 8-bit product
+	private static final ThreadLocal<int[][]> WIDE = new ThreadLocal<int[][]>()
+	{
+		@Override
+		protected int[][] initialValue()
+		{
+			return new int[][] { new int[0], new int[0] };
+		}
+	};
+	// #END: Declarations
+
+
+	// #BEGIN: Kernels
+
+	/**
+	 * Two patterns are multiplied against two weight rows at a time so every loaded input and weight is used twice and four
+	 * independent sums are in flight. Each sum still accumulates in index order, so a single pattern gives the same result.
+	 */
+	@Override
+	public void multiply(final double[] input, final int inOffset, final int rows, final int inputs, final double[] w, final int stride, final int neurons, final double[] output, final int outOffset)
+	{
+		int r = 0;
+		for (; r + 2 <= rows; r += 2)
+		{
+			final int a0 = inOffset + r * inputs;
+			final int a1 = a0 + inputs;
+			final int o0 = outOffset + r * neurons;
+			final int o1 = o0 + neurons;
+
+			int j = 0;
+			int row = 0;
+			for (; j + 2 <= neurons; j += 2, row += 2 * stride)
+			{
+				final int w1 = row + stride;
+				double s00 = Constants.DBL_ZERO, s01 = Constants.DBL_ZERO;
+				double s10 = Constants.DBL_ZERO, s11 = Constants.DBL_ZERO;
+
+				for (int i = 0; i < inputs; i++)
+				{
+					final double x0 = input[a0 + i];
+					final double x1 = input[a1 + i];
+					final double v0 = w[row + i];
+					final double v1 = w[w1 + i];
+
+					s00 += x0 * v0;
+					s01 += x0 * v1;
+					s10 += x1 * v0;
+					s11 += x1 * v1;
+				}
+
+				output[o0 + j] = s00;
+				output[o0 + j + 1] = s01;
+				output[o1 + j] = s10;
+				output[o1 + j + 1] = s11;
+			}
+
+			// odd neuron
+			for (; j < neurons; j++, row += stride)
+			{
+				output[o0 + j] = dot(input, a0, w, row, inputs);
+				output[o1 + j] = dot(input, a1, w, row, inputs);
+			}
+		}
+
+		// odd pattern
+		for (; r < rows; r++)
+			for (int j = 0, row = 0; j < neurons; j++, row += stride)
+				output[outOffset + r * neurons + j] = dot(input, inOffset + r * inputs, w, row, inputs);
+	}
+
+	@Override
+	public void multiply(final double[] input, final int inOffset, final int rows, final int inputs, final ByteBuffer w, final int stride, final int neurons, final double[] output, final int outOffset)
+	{
+		int r = 0;
+		for (; r + 2 <= rows; r += 2)
+		{
+			final int a0 = inOffset + r * inputs;
+			final int a1 = a0 + inputs;
+			final int o0 = outOffset + r * neurons;
+			final int o1 = o0 + neurons;
+
+			int j = 0;
+			int row = 0;
+			for (; j + 2 <= neurons; j += 2, row += 2 * stride)
+			{
+				final int w1 = row + stride;
+				double s00 = Constants.DBL_ZERO, s01 = Constants.DBL_ZERO;
+				double s10 = Constants.DBL_ZERO, s11 = Constants.DBL_ZERO;
+
+				for (int i = 0; i < inputs; i++)
+				{
+					final double x0 = input[a0 + i];
+					final double x1 = input[a1 + i];
+					final double v0 = w.getDouble((row + i) << 3);
+					final double v1 = w.getDouble((w1 + i) << 3);
+
+					s00 += x0 * v0;
+					s01 += x0 * v1;
+					s10 += x1 * v0;
+					s11 += x1 * v1;
+				}
+
+				output[o0 + j] = s00;
+				output[o0 + j + 1] = s01;
+				output[o1 + j] = s10;
+				output[o1 + j + 1] = s11;
+			}
+
+			// odd neuron
+			for (; j < neurons; j++, row += stride)
+			{
+				output[o0 + j] = dot(input, a0, w, row, inputs);
+				output[o1 + j] = dot(input, a1, w, row, inputs);
+			}
+		}
+
+		// odd pattern
+		for (; r < rows; r++)
+			for (int j = 0, row = 0; j < neurons; j++, row += stride)
+				output[outOffset + r * neurons + j] = dot(input, inOffset + r * inputs, w, row, inputs);
+	}
+
+	@Override
+	public void axpy(final double alpha, final double[] x, final int xOffset, final double[] y, final int yOffset, final int length)
+	{
+		for (int i = 0; i < length; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	@Override
+	public void scale(final double alpha, final double[] x, final int xOffset, final double[] y, final int yOffset, final int length)
+	{
+		for (int i = 0; i < length; i++)
+			y[yOffset + i] = alpha * x[xOffset + i];
+	}
+
+	@Override
+	public void affine(final double[] values, final int offset, final int rows, final double[] scale, final double[] shift)
+	{
+		final int width = scale.length;
+
+		for (int r = 0, o = offset; r < rows; r++, o += width)
+			for (int c = 0; c < width; c++)
+				values[o + c] = Math.fma(values[o + c], scale[c], shift[c]);
+	}
+
+	@Override
+	public int rprop(final double[] w, final double[] lwc, final double[] g, final double[] lg, final double[] ld, final int from, final int to,
+			final boolean backtrack, final double posEta, final double negEta, final double minDelta, final double maxDelta)
+	{
+		int flips = 0;
+
+		for (int k = from; k < to; k++)
+		{
+			final double gradient = g[k];
+			final int change = (int)Math.signum(gradient * lg[k]);
+			double weightChange = Constants.DBL_ZERO;
+
+			switch (change)
+			{
+				// Still heading in the correct direction
+				case 1:
+				{
+					final double learnDelta = Math.min(ld[k] * posEta, maxDelta);
+					ld[k] = learnDelta;
+
+					weightChange = Math.signum(gradient) * learnDelta;
+					lg[k] = gradient;
+					break;
+				}
+
+				// Last step crossed over minimum, reverse direction
+				case -1:
+				{
+					ld[k] = Math.max(ld[k] * negEta, minDelta);
+					flips++;
+
+					// if created bigger mess, undo everything
+					if (backtrack)
+						weightChange = -lwc[k];
+
+					// set last gradient to 0 to avoid double jeopardy
+					lg[k] = Constants.DBL_ZERO;
+					break;
+				}
+
+				// very close to accurate reading
+				case 0:
+				{
+					weightChange = Math.signum(gradient) * ld[k];
+					lg[k] = gradient;
+					break;
+				}
+			}
+
+			w[k] += weightChange;
+			lwc[k] = weightChange;
+		}
+
+		return flips;
+	}
+
+	// single precision
+
+	@Override
+	public void multiply(final float[] input, final int inOffset, final int rows, final int inputs, final float[] w, final int stride, final int neurons, final float[] output, final int outOffset)
+	{
+		int r = 0;
+		for (; r + 2 <= rows; r += 2)
+		{
+			final int a0 = inOffset + r * inputs;
+			final int a1 = a0 + inputs;
+			final int o0 = outOffset + r * neurons;
+			final int o1 = o0 + neurons;
+
+			int j = 0;
+			int row = 0;
+			for (; j + 2 <= neurons; j += 2, row += 2 * stride)
+			{
+				final int w1 = row + stride;
+				float s00 = Constants.FLT_ZERO, s01 = Constants.FLT_ZERO;
+				float s10 = Constants.FLT_ZERO, s11 = Constants.FLT_ZERO;
+
+				for (int i = 0; i < inputs; i++)
+				{
+					final float x0 = input[a0 + i];
+					final float x1 = input[a1 + i];
+					final float v0 = w[row + i];
+					final float v1 = w[w1 + i];
+
+					s00 += x0 * v0;
+					s01 += x0 * v1;
+					s10 += x1 * v0;
+					s11 += x1 * v1;
+				}
+
+				output[o0 + j] = s00;
+				output[o0 + j + 1] = s01;
+				output[o1 + j] = s10;
+				output[o1 + j + 1] = s11;
+			}
+
+			// odd neuron
+			for (; j < neurons; j++, row += stride)
+			{
+				output[o0 + j] = dot(input, a0, w, row, inputs);
+				output[o1 + j] = dot(input, a1, w, row, inputs);
+			}
+		}
+
+		// odd pattern
+		for (; r < rows; r++)
+			for (int j = 0, row = 0; j < neurons; j++, row += stride)
+				output[outOffset + r * neurons + j] = dot(input, inOffset + r * inputs, w, row, inputs);
+	}
+
+	@Override
+	public void axpy(final float alpha, final float[] x, final int xOffset, final float[] y, final int yOffset, final int length)
+	{
+		for (int i = 0; i < length; i++)
+			y[yOffset + i] += alpha * x[xOffset + i];
+	}
+
+	@Override
+	public void scale(final float alpha, final float[] x, final int xOffset, final float[] y, final int yOffset, final int length)
+	{
+		for (int i = 0; i < length; i++)
+			y[yOffset + i] = alpha * x[xOffset + i];
+	}
+
+	@Override
+	public int rprop(final float[] w, final float[] lwc, final float[] g, final float[] lg, final float[] ld, final int from, final int to,
+			final boolean backtrack, final float posEta, final float negEta, final float minDelta, final float maxDelta)
+	{
+		int flips = 0;
+
+		for (int k = from; k < to; k++)
+		{
+			final float gradient = g[k];
+			final int change = (int)Math.signum(gradient * lg[k]);
+			float weightChange = Constants.FLT_ZERO;
+
+			switch (change)
+			{
+				// Still heading in the correct direction
+				case 1:
+				{
+					final float learnDelta = Math.min(ld[k] * posEta, maxDelta);
+					ld[k] = learnDelta;
+
+					weightChange = Math.signum(gradient) * learnDelta;
+					lg[k] = gradient;
+					break;
+				}
+
+				// Last step crossed over minimum, reverse direction
+				case -1:
+				{
+					ld[k] = Math.max(ld[k] * negEta, minDelta);
+					flips++;
+
+					// if created bigger mess, undo everything
+					if (backtrack)
+						weightChange = -lwc[k];
+
+					// set last gradient to 0 to avoid double jeopardy
+					lg[k] = Constants.FLT_ZERO;
+					break;
+				}
+
+				// very close to accurate reading
+				case 0:
+				{
+					weightChange = Math.signum(gradient) * ld[k];
+					lg[k] = gradient;
+					break;
+				}
+			}
+
+			w[k] += weightChange;
+			lwc[k] = weightChange;
+		}
+
+		return flips;
+	}
+
+	// 8-bit integer
+
+	/**
+	 * Products of bytes are not vectorized by the JIT, products of ints are. The patterns and each weight row are therefore
+	 * widened to ints once, and every row is then multiplied against all patterns of the block.
+	 */
+	@Override
+	public void multiply(final byte[] input, final int rows, final int inputs, final byte[] w, final int neurons, final int[] output)
+	{
+		int[][] wide = WIDE.get();
+		if (wide[0].length < rows * inputs)
+			wide[0] = new int[rows * inputs];
+		if (wide[1].length < inputs)
+			wide[1] = new int[inputs];
+
+		final int[] x = wide[0];
+		final int[] row = wide[1];
+
+		for (int i = 0; i < rows * inputs; i++)
+			x[i] = input[i];
+
+		for (int j = 0; j < neurons; j++)
+		{
+			for (int i = 0; i < inputs; i++)
+				row[i] = w[j * inputs + i];
+
+			for (int r = 0; r < rows; r++)
+			{
+				final int a = r * inputs;
+
+				int sum = 0;
+				for (int i = 0; i < inputs; i++)
+					sum += x[a + i] * row[i];
+
+				output[r * neurons + j] = sum;
+			}
+		}
+	}
+
+	// #END: Kernels
+
+
+	// #BEGIN: Private Functions
+
+	private static double dot(final double[] x, final int xOffset, final double[] w, final int wOffset, final int length)
+	{
+		double sum = Constants.DBL_ZERO;
+		for (int i = 0; i < length; i++)
+			sum += x[xOffset + i] * w[wOffset + i];
+
+		return sum;
+	}
+
+	private static double dot(final double[] x, final int xOffset, final ByteBuffer w, final int wOffset, final int length)
+	{
+		double sum = Constants.DBL_ZERO;
+		for (int i = 0; i < length; i++)
+			sum += x[xOffset + i] * w.getDouble((wOffset + i) << 3);
+
+		return sum;
+	}
+
+	private static float dot(final float[] x, final int xOffset, final float[] w, final int wOffset, final int length)
+	{
+		float sum = Constants.FLT_ZERO;
+		for (int i = 0; i < length; i++)
+			sum += x[xOffset + i] * w[wOffset + i];
+
+		return sum;
+	}
+
+	// #END: Private Functions
+}
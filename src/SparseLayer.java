@@ -0,0 +1,240 @@
+
+/**
+ * The connections feeding one layer of a pruned neural network in compressed sparse row (CSR) form, for inference only.
+ * <p>
+ * Row <code>j</code> holds the non-zero weights of neuron <code>j</code> in <code>weights[rowStart[j] .. rowStart[j + 1] - 1]</code>,
+ * with the index of the neuron of the previous layer each one connects to in the same range of <code>columns</code>. Columns are
+ * ascending, so every sum accumulates in the same order as the scalar {@link Kernels} and matches a {@link DenseLayer} with the same
+ * weights exactly. Bias weights are kept in a separate dense array.
+ */
+class SparseLayer implements ForwardLayer
+{
+
+	// #BEGIN: Declarations
+	// number of patterns sharing each load of a weight and its column
+	private static final int ROW_BLOCK = 4;
+
+	private final int inputs;
+	private final int neurons;
+	private final boolean useBias;
+
+	private final int[] rowStart;
+	private final int[] columns;
+	private final double[] weights;
+	private final double[] bias;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Compiles the non-zero weights of a dense layer.
+	 * @param dense the layer to compile.
+	 */
+	public SparseLayer(final DenseLayer dense)
+	{
+		this.inputs = dense.getInputs();
+		this.neurons = dense.getNeurons();
+		this.useBias = dense.isUseBias();
+
+		final double[] w = dense.getWeights();
+		final int stride = dense.getStride();
+
+		int count = 0;
+		for (int j = 0, row = 0; j < neurons; j++, row += stride)
+			for (int i = 0; i < inputs; i++)
+				if (w[row + i] != Constants.DBL_ZERO)
+					count++;
+
+		this.rowStart = new int[neurons + 1];
+		this.columns = new int[count];
+		this.weights = new double[count];
+		this.bias = new double[useBias ? neurons : 0];
+
+		for (int j = 0, row = 0, k = 0; j < neurons; j++, row += stride)
+		{
+			for (int i = 0; i < inputs; i++)
+			{
+				if (w[row + i] != Constants.DBL_ZERO)
+				{
+					columns[k] = i;
+					weights[k++] = w[row + i];
+				}
+			}
+
+			rowStart[j + 1] = k;
+
+			if (useBias)
+				bias[j] = w[row + inputs];
+		}
+	}
+
+	/**
+	 * Initializes a layer from existing CSR arrays, such as those of a loaded model.
+	 * @param inputs the number of neurons in the previous layer.
+	 * @param neurons the number of neurons in this layer.
+	 * @param rowStart the index of the first weight of each neuron, followed by the number of weights.
+	 * @param columns the previous-layer neuron of each weight.
+	 * @param weights the non-zero weights.
+	 * @param bias the bias weight of each neuron, or null if bias is not used.
+	 * @throws IllegalArgumentException if the arrays do not describe a valid layer of the given size.
+	 */
+	public SparseLayer(final int inputs, final int neurons, final int[] rowStart, final int[] columns, final double[] weights, final double[] bias) throws IllegalArgumentException
+	{
+		if (rowStart.length != neurons + 1 || rowStart[0] != 0 || rowStart[neurons] != columns.length || columns.length != weights.length)
+			throw new IllegalArgumentException("Sparse layer arrays do not match the number of neurons and weights.");
+
+		if (bias != null && bias.length != neurons)
+			throw new IllegalArgumentException("Number of bias weights does not match the number of neurons.");
+
+		for (int j = 0; j < neurons; j++)
+		{
+			if (rowStart[j + 1] < rowStart[j])
+				throw new IllegalArgumentException("Sparse layer rows must not overlap.");
+
+			for (int k = rowStart[j]; k < rowStart[j + 1]; k++)
+				if (columns[k] < 0 || columns[k] >= inputs || (k > rowStart[j] && columns[k] <= columns[k - 1]))
+					throw new IllegalArgumentException("Sparse layer columns must be ascending previous-layer neurons.");
+		}
+
+		this.inputs = inputs;
+		this.neurons = neurons;
+		this.useBias = (bias != null);
+
+		this.rowStart = rowStart;
+		this.columns = columns;
+		this.weights = weights;
+		this.bias = (bias != null ? bias : new double[0]);
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Kernels
+
+	/**
+	 * Calculates the activated values of this layer for a block of patterns. Blocks of patterns are carried through each row
+	 * together, so every weight and column index is loaded once per block rather than once per pattern.
+	 * @param kernel the activation function of this layer.
+	 * @param input the packed input patterns, <code>inputs</code> values per pattern.
+	 * @param inOffset the index of the first input value.
+	 * @param rows the number of patterns.
+	 * @param output the array receiving the packed activated values, <code>neurons</code> values per pattern.
+	 * @param outOffset the index of the first output value.
+	 */
+	@Override
+	public void forwardBatch(final ActivationKernel kernel, final double[] input, final int inOffset, final int rows, final double[] output, final int outOffset)
+	{
+		int r = 0;
+		for (; r + ROW_BLOCK <= rows; r += ROW_BLOCK)
+		{
+			final int a0 = inOffset + r * inputs;
+			final int a1 = a0 + inputs;
+			final int a2 = a1 + inputs;
+			final int a3 = a2 + inputs;
+			final int o0 = outOffset + r * neurons;
+
+			for (int j = 0; j < neurons; j++)
+			{
+				double s0 = Constants.DBL_ZERO, s1 = Constants.DBL_ZERO;
+				double s2 = Constants.DBL_ZERO, s3 = Constants.DBL_ZERO;
+
+				for (int k = rowStart[j], end = rowStart[j + 1]; k < end; k++)
+				{
+					final int i = columns[k];
+					final double w = weights[k];
+
+					s0 += input[a0 + i] * w;
+					s1 += input[a1 + i] * w;
+					s2 += input[a2 + i] * w;
+					s3 += input[a3 + i] * w;
+				}
+
+				output[o0 + j] = s0;
+				output[o0 + neurons + j] = s1;
+				output[o0 + 2 * neurons + j] = s2;
+				output[o0 + 3 * neurons + j] = s3;
+			}
+		}
+
+		// remaining patterns
+		for (; r < rows; r++)
+		{
+			final int a = inOffset + r * inputs;
+			final int o = outOffset + r * neurons;
+
+			for (int j = 0; j < neurons; j++)
+			{
+				double s = Constants.DBL_ZERO;
+				for (int k = rowStart[j], end = rowStart[j + 1]; k < end; k++)
+					s += input[a + columns[k]] * weights[k];
+
+				output[o + j] = s;
+			}
+		}
+
+		// add bias (always multiplied by 1.0)
+		if (useBias)
+		{
+			for (int p = 0, o = outOffset; p < rows; p++, o += neurons)
+				for (int j = 0; j < neurons; j++)
+					output[o + j] += bias[j];
+		}
+
+		kernel.activate(output, outOffset, rows * neurons);
+	}
+
+	// #END: Kernels
+
+
+	// #BEGIN: Fields
+
+	@Override
+	public int getInputs()
+	{
+		return inputs;
+	}
+
+	@Override
+	public int getNeurons()
+	{
+		return neurons;
+	}
+
+	@Override
+	public boolean isUseBias()
+	{
+		return useBias;
+	}
+
+	/**
+	 * Returns the number of stored connections between neurons, which excludes bias connections.
+	 * @return the number of non-zero weights.
+	 */
+	public int getNonZeroCount()
+	{
+		return weights.length;
+	}
+
+	public int[] getRowStart()
+	{
+		return rowStart;
+	}
+
+	public int[] getColumns()
+	{
+		return columns;
+	}
+
+	public double[] getWeights()
+	{
+		return weights;
+	}
+
+	public double[] getBias()
+	{
+		return bias;
+	}
+
+	// #END: Fields
+}
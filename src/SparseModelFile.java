@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Versioned binary format for a {@link SparseNetwork}.
+ * <p>
+ * All values are little-endian. The header holds a magic number, the format version, a flag word (bias), the layer count, the
+ * input range, the topology and the activation function of every layer after the input layer, padded to a multiple of 8 bytes.
+ * It is followed, for each sparse layer in order, by its row starts and columns (each a count followed by the ints, padded to a
+ * multiple of 8 bytes), its non-zero weights and, when bias is used, its bias weights. A model therefore takes 12 bytes per
+ * remaining connection, against 40 bytes per connection for the dense {@link ModelFile} with its iRPROP+ state. When the network
+ * has a {@link Normalizer} (since version 2) the layers are followed by it, in the layout of {@link ModelFile}.
+ */
+final class SparseModelFile
+{
+
+	// #BEGIN: Declarations
+	// "ANN" followed by a format byte
+	static final int MAGIC = 0x414E4E01;
+	static final int VERSION = 2;
+
+	private static final int FLAG_BIAS = 1;
+	private static final int FLAG_NORMALIZER = 2;
+
+	// magic, version, flags, layer count, range min/max
+	private static final int FIXED_HEADER = 4 * 4 + 2 * 8;
+
+	// size of the buffer used to stream arrays to disk
+	private static final int WRITE_CHUNK = 1 << 16;
+	// #END: Declarations
+
+
+	private SparseModelFile()
+	{
+	}
+
+
+	// #BEGIN: Public Functions
+
+	/**
+	 * Writes a sparse network to a file, replacing any existing content.
+	 * @param network the sparse network to write.
+	 * @param path the file to write.
+	 * @throws IOException if the file cannot be written.
+	 */
+	static void save(final SparseNetwork network, final Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			write(network, channel);
+		}
+	}
+
+	/**
+	 * Writes a sparse network to the current position of a channel.
+	 * @param network the sparse network to write.
+	 * @param channel the channel to write to.
+	 * @throws IOException if the channel cannot be written.
+	 */
+	static void write(final SparseNetwork network, final FileChannel channel) throws IOException
+	{
+		final int[] topology = network.getTopology();
+		final ActivationFunction[] activations = network.getActivationFunctions();
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(WRITE_CHUNK, headerSize(topology.length))).order(ByteOrder.LITTLE_ENDIAN);
+
+		final Normalizer normalizer = network.getNormalizer();
+
+		int flags = (network.isUseBias() ? FLAG_BIAS : 0) | (normalizer != null ? FLAG_NORMALIZER : 0);
+
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(flags).putInt(topology.length);
+		buffer.putDouble(network.getRangeMin()).putDouble(network.getRangeMax());
+		for (int size : topology)
+			buffer.putInt(size);
+		for (ActivationFunction func : activations)
+			buffer.putInt(func.ordinal());
+		while (buffer.position() < headerSize(topology.length))
+			buffer.put((byte)0);
+
+		for (int d = 0; d < network.getSparseLayerCount(); d++)
+		{
+			SparseLayer layer = network.getSparseLayer(d);
+
+			ModelFile.write(layer.getRowStart(), buffer, channel);
+			ModelFile.write(layer.getColumns(), buffer, channel);
+			ModelFile.write(layer.getWeights(), buffer, channel);
+			if (layer.isUseBias())
+				ModelFile.write(layer.getBias(), buffer, channel);
+		}
+
+		if (normalizer != null)
+			ModelFile.write(normalizer, buffer, channel);
+
+		ModelFile.flush(buffer, channel);
+	}
+
+	/**
+	 * Loads a sparse network from a file, reading it in chunks so it may exceed 2 GB.
+	 * @param path the file to read.
+	 * @return the sparse network.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the file is not a sparse model of a supported version.
+	 */
+	static SparseNetwork load(final Path path) throws IOException, IllegalArgumentException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			return read(new ModelInput(channel, 0));
+		}
+	}
+
+	/**
+	 * Reads a sparse network from an input, starting at its current position. The position is advanced past the model.
+	 * @param in the input holding the model.
+	 * @return the sparse network.
+	 * @throws IOException if the input cannot be read.
+	 * @throws IllegalArgumentException if the input does not hold a complete sparse model of a supported version.
+	 */
+	static SparseNetwork read(final ModelInput in) throws IOException, IllegalArgumentException
+	{
+		final long start = in.position();
+
+		try
+		{
+			if (in.getInt() != MAGIC)
+				throw new IllegalArgumentException("Not a sparse neural network model file.");
+
+			int version = in.getInt();
+			if (version < 1 || version > VERSION)
+				throw new IllegalArgumentException("Unsupported sparse model file version " + version + ".");
+
+			final int flags = in.getInt();
+			final boolean useBias = (flags & FLAG_BIAS) != 0;
+
+			int[] topology = new int[in.getInt()];
+			if (topology.length < 2)
+				throw new IllegalArgumentException("Cannot load a neural network with less than two layers.");
+
+			double rangeMin = in.getDouble();
+			double rangeMax = in.getDouble();
+
+			for (int l = 0; l < topology.length; l++)
+			{
+				topology[l] = in.getInt();
+				if (topology[l] < 1)
+					throw new IllegalArgumentException("Invalid layer size " + topology[l] + ".");
+			}
+
+			ActivationFunction[] activations = new ActivationFunction[topology.length - 1];
+			for (int l = 0; l < activations.length; l++)
+			{
+				int ordinal = in.getInt();
+				if (ordinal < 0 || ordinal >= ActivationFunction.values().length)
+					throw new IllegalArgumentException("Unknown activation function " + ordinal + ".");
+
+				activations[l] = ActivationFunction.values()[ordinal];
+			}
+
+			in.position(start + headerSize(topology.length));
+
+			SparseLayer[] layers = new SparseLayer[topology.length - 1];
+			for (int d = 0; d < layers.length; d++)
+			{
+				int[] rowStart = ModelFile.readInts(in, topology[d + 1] + 1);
+				int[] columns = ModelFile.readInts(in, (int)Math.min(Integer.MAX_VALUE, (long)topology[d] * topology[d + 1]));
+
+				double[] weights = new double[columns.length];
+				ModelFile.read(in, weights);
+
+				double[] bias = null;
+				if (useBias)
+				{
+					bias = new double[topology[d + 1]];
+					ModelFile.read(in, bias);
+				}
+
+				layers[d] = new SparseLayer(topology[d], topology[d + 1], rowStart, columns, weights, bias);
+			}
+
+			Normalizer normalizer = null;
+			if ((flags & FLAG_NORMALIZER) != 0)
+				normalizer = ModelFile.readNormalizer(in);
+
+			return new SparseNetwork(activations, rangeMin, rangeMax, normalizer, layers);
+		}
+		catch (java.nio.BufferUnderflowException e)
+		{
+			throw new IllegalArgumentException("Sparse model file is truncated.", e);
+		}
+	}
+
+	// #END: Public Functions
+
+
+	// #BEGIN: Private Functions
+
+	private static int headerSize(final int layers)
+	{
+		return (FIXED_HEADER + 4 * layers + 4 * (layers - 1) + 7) & ~7;
+	}
+
+	// #END: Private Functions
+}
@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+
+/**
+ * An inference-only copy of a pruned {@link NeuralNetwork} that stores each layer in compressed sparse row form, so prediction
+ * time and model size shrink with the fraction of connections pruned. Only weights and the {@link Normalizer} are kept; the
+ * iRPROP+ state is dropped.
+ * <p>
+ * With the scalar kernels predictions are identical to those of the network it was compiled from.
+ */
+public final class SparseNetwork
+{
+
+	// #BEGIN: Declarations
+	private final ActivationFunction[] activations;
+
+	// sparseLayers[l] holds the connections feeding layer l + 1
+	private final SparseLayer[] sparseLayers;
+	private final FeedForward forward;
+
+	private final double rangeMin;
+	private final double rangeMax;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Compiles the non-zero weights of a neural network, typically one that has been pruned.
+	 * @param network the neural network to compile.
+	 * @throws IllegalArgumentException if the neural network has no layers.
+	 */
+	public SparseNetwork(final NeuralNetwork network) throws IllegalArgumentException
+	{
+		this(network.getActivationFunctions(), network.getRangeMin(), network.getRangeMax(), network.getNormalizer(), compile(network));
+	}
+
+	/**
+	 * Initializes a sparse network around existing layers, such as the layers of a loaded model.
+	 * @param activationFuncs the activation function of each layer after the input layer.
+	 * @param rangeMin the lower-bound of the suggested input range.
+	 * @param rangeMax the upper-bound of the suggested input range.
+	 * @param normalizer the normalizer applied to every input, or null.
+	 * @param sparseLayers the connections feeding each layer after the input layer.
+	 * @throws IllegalArgumentException if there are no layers, the layers do not fit together, there is not one activation
+	 * function per layer or the normalizer does not match the first layer.
+	 */
+	SparseNetwork(final ActivationFunction[] activationFuncs, final double rangeMin, final double rangeMax, final Normalizer normalizer, final SparseLayer[] sparseLayers) throws IllegalArgumentException
+	{
+		this.forward = new FeedForward("SparseNetwork", activationFuncs, normalizer, sparseLayers);
+		this.activations = activationFuncs.clone();
+		this.sparseLayers = sparseLayers;
+
+		this.rangeMin = rangeMin;
+		this.rangeMax = rangeMax;
+	}
+
+	private static SparseLayer[] compile(final NeuralNetwork network)
+	{
+		SparseLayer[] layers = new SparseLayer[network.getDenseLayerCount()];
+		for (int d = 0; d < layers.length; d++)
+			layers[d] = new SparseLayer(network.getDenseLayer(d));
+
+		return layers;
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Feed-Forward
+
+	/**
+	 * Feeds given <code>inputVals</code> through the network, using scratch buffers private to the calling thread.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	public double[] predict(final double[] inputVals, final double[] outputVals) throws IllegalArgumentException
+	{
+		return forward.predict(inputVals, outputVals);
+	}
+
+	/**
+	 * Feeds given <code>inputVals</code> through the network using caller-supplied scratch buffers. No memory is allocated.
+	 * @param inputVals the values to input into the first layer.
+	 * @param outputVals the array receiving the values of the output layer.
+	 * @param scratch the buffers created by {@link #createScratch()}, which must not be shared by concurrent calls.
+	 * @return outputVals.
+	 * @throws IllegalArgumentException if the sizes of inputVals or outputVals do not match the first or last layer.
+	 */
+	public double[] predict(final double[] inputVals, final double[] outputVals, final double[][] scratch) throws IllegalArgumentException
+	{
+		return forward.predict(inputVals, outputVals, scratch);
+	}
+
+	/**
+	 * Feeds a block of patterns through the network, carrying up to 128 patterns through every layer together.
+	 * Results are identical to calling {@link #predict(double[], double[])} on each pattern.
+	 * @param inputs the packed input patterns, one first-layer sized row after another.
+	 * @param rows the number of patterns.
+	 * @param results the preallocated array receiving the packed output-layer values of every pattern.
+	 * @return results.
+	 * @throws IllegalArgumentException if inputs or results are too small to hold the given number of patterns.
+	 */
+	public double[] predictBatch(final double[] inputs, final int rows, final double[] results) throws IllegalArgumentException
+	{
+		return forward.predictBatch(inputs, rows, results);
+	}
+
+	/**
+	 * Creates the scratch buffers needed by {@link #predict(double[], double[], double[][])}: two arrays as wide as the widest
+	 * hidden layer and one holding the normalized input.
+	 * @return the scratch buffers.
+	 */
+	public double[][] createScratch()
+	{
+		return forward.createScratch();
+	}
+
+	// #END: Feed-Forward
+
+
+	// #BEGIN: Persistence
+
+	/**
+	 * Saves the network in the binary format of {@link SparseModelFile}.
+	 * @param path the file to write, replacing any existing content.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void save(final Path path) throws IOException
+	{
+		SparseModelFile.save(this, path);
+	}
+
+	/**
+	 * Loads a network saved by {@link #save(Path)}.
+	 * @param path the file to read.
+	 * @return the sparse network.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the file is not a sparse model of a supported version.
+	 */
+	public static SparseNetwork load(final Path path) throws IOException, IllegalArgumentException
+	{
+		return SparseModelFile.load(path);
+	}
+
+	// #END: Persistence
+
+
+	// #BEGIN: Fields
+
+	public double getRangeMin()
+	{
+		return rangeMin;
+	}
+
+	public double getRangeMax()
+	{
+		return rangeMax;
+	}
+
+	public boolean isUseBias()
+	{
+		return forward.isUseBias();
+	}
+
+	public Normalizer getNormalizer()
+	{
+		return forward.getNormalizer();
+	}
+
+	/**
+	 * Returns the activation function of each layer after the input layer.
+	 * @return a copy of the activation functions, where index 0 belongs to the first layer after the input layer.
+	 */
+	public ActivationFunction[] getActivationFunctions()
+	{
+		return activations.clone();
+	}
+
+	/**
+	 * Returns the number of neurons in each layer of the network.
+	 * @return a copy of the topology array, where index 0 is the input layer.
+	 */
+	public int[] getTopology()
+	{
+		return forward.getTopology().clone();
+	}
+
+	/**
+	 * Returns the number of stored connections between neurons, which excludes bias connections.
+	 * @return the number of non-zero weights.
+	 */
+	public long getNonZeroCount()
+	{
+		long count = 0;
+		for (SparseLayer layer : sparseLayers)
+			count += layer.getNonZeroCount();
+
+		return count;
+	}
+
+	/**
+	 * Returns the fraction of connections between neurons that are not stored. Bias connections are not counted.
+	 * @return the sparsity of the network, between 0 and 1.
+	 */
+	public double getSparsity()
+	{
+		long total = 0;
+		for (SparseLayer layer : sparseLayers)
+			total += (long)layer.getInputs() * layer.getNeurons();
+
+		return (total > 0 ? 1.0 - (double)getNonZeroCount() / total : Constants.DBL_ZERO);
+	}
+
+	/**
+	 * Returns the storage of the connections feeding a layer.
+	 * @param index the index of the sparse layer, where 0 feeds the first layer after the input layer.
+	 * @return the sparse layer.
+	 */
+	SparseLayer getSparseLayer(final int index)
+	{
+		return sparseLayers[index];
+	}
+
+	int getSparseLayerCount()
+	{
+		return sparseLayers.length;
+	}
+
+	// #END: Fields
+}
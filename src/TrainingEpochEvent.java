@@ -0,0 +1,86 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+
+/**
+ * JFR event recorded for every training pass, spanning the pass and carrying its {@link TrainingMetrics}. It is enabled in every
+ * flight recording unless its settings turn it off, e.g. <code>-XX:StartFlightRecording:ann.TrainingEpoch#enabled=false</code>.
+ */
+@Name("ann.TrainingEpoch")
+@Label("Training Epoch")
+@Category({ "Neural Network", "Training" })
+@Description("One pass of iRPROP+ training over the data")
+final class TrainingEpochEvent extends jdk.jfr.Event
+{
+
+	@Label("Epoch")
+	long epoch;
+
+	@Label("Patterns")
+	long patterns;
+
+	@Label("Updates")
+	@Description("Number of iRPROP+ steps")
+	long updates;
+
+	@Label("Error")
+	@Description("RMS error over every output of every pattern")
+	double error;
+
+	@Label("Samples per Second")
+	double samplesPerSecond;
+
+	@Label("Forward Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long forwardTime;
+
+	@Label("Backward Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long backwardTime;
+
+	@Label("Update Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long updateTime;
+
+	@Label("Sign Flips")
+	@Description("Connections whose gradient changed sign, summed over every step")
+	long signFlips;
+
+	@Label("Reverted Changes")
+	@Description("Sign flips whose last weight change was backtracked")
+	long revertedChanges;
+
+	@Label("Min Learn Delta")
+	double minLearnDelta;
+
+	@Label("Median Learn Delta")
+	double medianLearnDelta;
+
+	@Label("Max Learn Delta")
+	double maxLearnDelta;
+
+
+	/**
+	 * Copies the statistics of a finished pass into the event.
+	 * @param metrics the statistics of the pass.
+	 */
+	void set(final TrainingMetrics metrics)
+	{
+		epoch = metrics.getEpoch();
+		patterns = metrics.getPatterns();
+		updates = metrics.getUpdates();
+		error = metrics.getError();
+		samplesPerSecond = metrics.getSamplesPerSecond();
+		forwardTime = metrics.getForwardNanos();
+		backwardTime = metrics.getBackwardNanos();
+		updateTime = metrics.getUpdateNanos();
+		signFlips = metrics.getSignFlips();
+		revertedChanges = metrics.getRevertedChanges();
+		minLearnDelta = metrics.getMinLearnDelta();
+		medianLearnDelta = metrics.getLearnDeltaQuantile(0.5);
+		maxLearnDelta = metrics.getMaxLearnDelta();
+	}
+}
@@ -0,0 +1,14 @@
+
+/**
+ * Receives the {@link TrainingMetrics} of every training pass of a {@link NeuralNetwork}, on the training thread, once the pass is
+ * over. Phases are only timed while a listener is set or a flight recording has the <code>ann.TrainingEpoch</code> event enabled.
+ */
+public interface TrainingListener
+{
+
+	/**
+	 * Called after every pass over the data.
+	 * @param metrics the statistics of the pass, which are overwritten by the next pass.
+	 */
+	void epochCompleted(TrainingMetrics metrics);
+}
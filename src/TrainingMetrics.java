@@ -0,0 +1,287 @@
+
+/**
+ * Statistics of one training pass over the data, reported to a {@link TrainingListener} after every pass.
+ * <p>
+ * Forward and backward times are measured per pattern and update times per iRPROP+ step, so their sum is slightly less than the
+ * elapsed time of the pass. With a {@link ParallelTrainer} forward and backward times are summed over the worker threads. A sign
+ * flip is a connection whose gradient changed sign since the last step; its learn delta shrinks and, when the error grew, its
+ * last weight change is reverted. The learn deltas are summarized after the pass in a histogram with one bucket per power of two.
+ * <p>
+ * A network reuses the same instance for every pass, so listeners must copy whatever they keep beyond the call.
+ */
+public final class TrainingMetrics
+{
+
+	// #BEGIN: Declarations
+	// power of two of the lower bound of the first learn-delta bucket
+	private static final int MIN_EXPONENT = Math.getExponent(Constants.MIN_DELTA);
+
+	// number of learn-delta buckets, covering MIN_DELTA to MAX_DELTA
+	static final int BUCKETS = Math.getExponent(Constants.MAX_DELTA) - MIN_EXPONENT + 1;
+
+	private long epoch;
+	private long startNanos;
+	private long elapsedNanos;
+
+	private long patterns;
+	private long updates;
+	private long forwardNanos;
+	private long backwardNanos;
+	private long updateNanos;
+
+	private double squaredError;
+	private int outputs;
+
+	private long signFlips;
+	private long reverted;
+
+	private long connections;
+	private double minLearnDelta;
+	private double maxLearnDelta;
+	private double meanLearnDelta;
+	private final long[] learnDeltaHistogram = new long[BUCKETS];
+	// #END: Declarations
+
+
+	// #BEGIN: Recording
+
+	/**
+	 * Reads the clock only when a pass is being timed, so untimed training pays a branch instead of a clock read.
+	 * @param metrics the metrics of the running pass, or null.
+	 * @return the current time in nanoseconds, or 0 if metrics is null.
+	 */
+	static long tick(final TrainingMetrics metrics)
+	{
+		return (metrics != null ? System.nanoTime() : 0L);
+	}
+
+	/**
+	 * Clears every statistic and starts timing a pass.
+	 * @param epoch the number of the pass, counting from 1.
+	 * @param outputs the number of output-layer neurons.
+	 */
+	void begin(final long epoch, final int outputs)
+	{
+		this.epoch = epoch;
+		this.outputs = outputs;
+
+		patterns = updates = 0;
+		forwardNanos = backwardNanos = updateNanos = 0;
+		signFlips = reverted = 0;
+		squaredError = Constants.DBL_ZERO;
+
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Records patterns fed forward and back-propagated.
+	 * @param count the number of patterns.
+	 * @param forward the nanoseconds spent feeding them forward.
+	 * @param backward the nanoseconds spent back-propagating them.
+	 * @param error the sum of their squared output errors.
+	 */
+	void patterns(final int count, final long forward, final long backward, final double error)
+	{
+		patterns += count;
+		forwardNanos += forward;
+		backwardNanos += backward;
+		squaredError += error;
+	}
+
+	/**
+	 * Records one iRPROP+ step.
+	 * @param nanos the nanoseconds spent updating the weights.
+	 * @param flips the number of connections whose gradient changed sign.
+	 * @param backtrack the boolean determining whether the last weight changes of flipped connections were reverted.
+	 */
+	void update(final long nanos, final int flips, final boolean backtrack)
+	{
+		updates++;
+		updateNanos += nanos;
+		signFlips += flips;
+		if (backtrack)
+			reverted += flips;
+	}
+
+	/**
+	 * Stops timing the pass and summarizes the learn deltas of every layer.
+	 * @param denseLayers the layers of the network.
+	 */
+	void end(final DenseLayer[] denseLayers)
+	{
+		elapsedNanos = System.nanoTime() - startNanos;
+
+		java.util.Arrays.fill(learnDeltaHistogram, 0);
+		connections = 0;
+		minLearnDelta = Double.POSITIVE_INFINITY;
+		maxLearnDelta = Double.NEGATIVE_INFINITY;
+
+		double sum = Constants.DBL_ZERO;
+		for (DenseLayer dense : denseLayers)
+		{
+			for (double delta : dense.getLearnDeltas())
+			{
+				minLearnDelta = Math.min(minLearnDelta, delta);
+				maxLearnDelta = Math.max(maxLearnDelta, delta);
+				sum += delta;
+
+				learnDeltaHistogram[Math.max(0, Math.min(BUCKETS - 1, Math.getExponent(delta) - MIN_EXPONENT))]++;
+			}
+
+			connections += dense.getLearnDeltas().length;
+		}
+
+		meanLearnDelta = (connections > 0 ? sum / connections : Constants.DBL_ZERO);
+	}
+
+	// #END: Recording
+
+
+	// #BEGIN: Fields
+
+	/**
+	 * Returns the number of the pass, counting from 1 for each network.
+	 * @return the epoch.
+	 */
+	public long getEpoch()
+	{
+		return epoch;
+	}
+
+	public long getElapsedNanos()
+	{
+		return elapsedNanos;
+	}
+
+	public long getForwardNanos()
+	{
+		return forwardNanos;
+	}
+
+	public long getBackwardNanos()
+	{
+		return backwardNanos;
+	}
+
+	public long getUpdateNanos()
+	{
+		return updateNanos;
+	}
+
+	public long getPatterns()
+	{
+		return patterns;
+	}
+
+	/**
+	 * Returns the number of iRPROP+ steps taken during the pass.
+	 * @return the number of weight updates.
+	 */
+	public long getUpdates()
+	{
+		return updates;
+	}
+
+	/**
+	 * Returns the training throughput of the pass.
+	 * @return the number of patterns per second of elapsed time.
+	 */
+	public double getSamplesPerSecond()
+	{
+		return (elapsedNanos > 0 ? patterns * 1e9 / elapsedNanos : Constants.DBL_ZERO);
+	}
+
+	/**
+	 * Returns the Root Mean Square error over every output of every pattern of the pass, measured before each update.
+	 * @return the error of the pass.
+	 */
+	public double getError()
+	{
+		return (patterns > 0 ? Math.sqrt(squaredError / (patterns * outputs)) : Constants.DBL_ZERO);
+	}
+
+	/**
+	 * Returns the number of times a connection's gradient changed sign, summed over every step of the pass.
+	 * @return the number of sign flips.
+	 */
+	public long getSignFlips()
+	{
+		return signFlips;
+	}
+
+	/**
+	 * Returns the number of sign flips whose last weight change was reverted because the error grew.
+	 * @return the number of backtracked weight changes.
+	 */
+	public long getRevertedChanges()
+	{
+		return reverted;
+	}
+
+	public double getMinLearnDelta()
+	{
+		return minLearnDelta;
+	}
+
+	public double getMaxLearnDelta()
+	{
+		return maxLearnDelta;
+	}
+
+	public double getMeanLearnDelta()
+	{
+		return meanLearnDelta;
+	}
+
+	/**
+	 * Returns the number of connections per learn-delta bucket. Bucket <code>b</code> counts learn deltas in
+	 * [{@link #getBucketBound(int) getBucketBound(b)}, <code>getBucketBound(b + 1)</code>); the first and last buckets also hold
+	 * anything below or above.
+	 * @return a copy of the histogram.
+	 */
+	public long[] getLearnDeltaHistogram()
+	{
+		return learnDeltaHistogram.clone();
+	}
+
+	/**
+	 * Returns the lower bound of a learn-delta bucket.
+	 * @param bucket the index of the bucket.
+	 * @return the power of two the bucket starts at.
+	 */
+	public static double getBucketBound(final int bucket)
+	{
+		return Math.scalb(1.0, MIN_EXPONENT + bucket);
+	}
+
+	/**
+	 * Returns the learn delta below which at least a given fraction of connections lie, estimated from the histogram to within a
+	 * factor of two.
+	 * @param fraction the fraction of connections, between 0 and 1.
+	 * @return the upper bound of the first bucket reaching the fraction.
+	 */
+	public double getLearnDeltaQuantile(final double fraction)
+	{
+		long target = (long)Math.ceil(fraction * connections);
+		long count = 0;
+		for (int b = 0; b < BUCKETS; b++)
+		{
+			count += learnDeltaHistogram[b];
+			if (count >= target)
+				return Math.min(getBucketBound(b + 1), maxLearnDelta);
+		}
+
+		return maxLearnDelta;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("epoch %d: error %.6f, %d patterns in %.3f s (%.0f/s; forward %.3f s, backward %.3f s, update %.3f s), "
+				+ "%d updates, %d sign flips (%d reverted), learn delta min %.3g median %.3g max %.3g",
+				epoch, getError(), patterns, elapsedNanos / 1e9, getSamplesPerSecond(), forwardNanos / 1e9, backwardNanos / 1e9,
+				updateNanos / 1e9, updates, signFlips, reverted, minLearnDelta, getLearnDeltaQuantile(0.5), maxLearnDelta);
+	}
+
+	// #END: Fields
+}
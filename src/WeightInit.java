@@ -0,0 +1,89 @@
+import java.util.SplittableRandom;
+
+
+/**
+ * Schemes for the initial weights of the connections feeding a layer, given its fan-in (the number of neurons in the previous
+ * layer) and fan-out (the number of neurons in the layer).
+ * <p>
+ * The Xavier/Glorot schemes keep the variance of tanh and sigmoid activations steady from layer to layer, the He schemes that of
+ * ReLU activations. Both set bias weights to zero. UNIFORM is the original scheme, every weight including the bias drawn from [0, 1).
+ */
+public enum WeightInit
+{
+	// [0, 1), Xavier/Glorot with variance 2 / (fanIn + fanOut), He with variance 2 / fanIn
+	UNIFORM, XAVIER_UNIFORM, XAVIER_NORMAL, HE_UNIFORM, HE_NORMAL;
+
+	/**
+	 * Returns the scheme suited to an activation function: He for ReLU, Xavier/Glorot for everything else.
+	 * @param func the activation function of the layer.
+	 * @return the uniform form of the suited scheme.
+	 */
+	public static WeightInit forActivation(final ActivationFunction func)
+	{
+		return (func == ActivationFunction.RELU ? HE_UNIFORM : XAVIER_UNIFORM);
+	}
+
+	/**
+	 * Draws the weights of a range of neurons from a random stream.
+	 * @param init the scheme.
+	 * @param weights the row-major weights of the layer, one row of <code>stride</code> values per neuron.
+	 * @param stride the length of a weight row.
+	 * @param inputs the number of neurons in the previous layer; a stride longer than this holds a bias weight.
+	 * @param neurons the number of neurons in the layer.
+	 * @param fromRow the first neuron to initialize.
+	 * @param toRow the neuron after the last one to initialize.
+	 * @param random the random stream to draw from.
+	 */
+	static void fill(final WeightInit init, final double[] weights, final int stride, final int inputs, final int neurons, final int fromRow, final int toRow, final SplittableRandom random)
+	{
+		final boolean useBias = stride > inputs;
+		final double scale = scale(init, inputs, neurons);
+
+		for (int j = fromRow, row = fromRow * stride; j < toRow; j++, row += stride)
+		{
+			switch (init)
+			{
+				case UNIFORM:
+					// the bias is drawn like any other weight
+					for (int i = row; i < row + stride; i++)
+						weights[i] = random.nextDouble();
+					continue;
+
+				case XAVIER_UNIFORM:
+				case HE_UNIFORM:
+					for (int i = row; i < row + inputs; i++)
+						weights[i] = scale * (2.0 * random.nextDouble() - 1.0);
+					break;
+
+				case XAVIER_NORMAL:
+				case HE_NORMAL:
+					for (int i = row; i < row + inputs; i++)
+						weights[i] = scale * random.nextGaussian();
+					break;
+			}
+
+			if (useBias)
+				weights[row + inputs] = Constants.DBL_ZERO;
+		}
+	}
+
+	/**
+	 * Returns the bound of the uniform schemes or the standard deviation of the normal schemes.
+	 */
+	private static double scale(final WeightInit init, final int fanIn, final int fanOut)
+	{
+		switch (init)
+		{
+			case XAVIER_UNIFORM:
+				return Math.sqrt(6.0 / (fanIn + fanOut));
+			case XAVIER_NORMAL:
+				return Math.sqrt(2.0 / (fanIn + fanOut));
+			case HE_UNIFORM:
+				return Math.sqrt(6.0 / fanIn);
+			case HE_NORMAL:
+				return Math.sqrt(2.0 / fanIn);
+			default:
+				return 1.0;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+
+/**
+ * Per-layer activation buffers used by a single forward and backward pass through a neural network.
+ * Index 0 holds the input layer; the summations, deltas and derivatives of the input layer are never used.
+ */
+class Workspace
+{
+
+	// #BEGIN: Declarations
+	private final double[][] summations;
+	private final double[][] values;
+	private final double[][] deltas;
+	private final double[][] derivatives;
+	// #END: Declarations
+
+
+	// #BEGIN: Constructors
+
+	/**
+	 * Initializes zeroed buffers for every layer of a given topology.
+	 * @param topology the array representing the number of neurons in each layer.
+	 */
+	public Workspace(final int[] topology)
+	{
+		summations = new double[topology.length][];
+		values = new double[topology.length][];
+		deltas = new double[topology.length][];
+		derivatives = new double[topology.length][];
+
+		for (int l = 0; l < topology.length; l++)
+		{
+			summations[l] = new double[topology[l]];
+			values[l] = new double[topology[l]];
+			deltas[l] = new double[topology[l]];
+			derivatives[l] = new double[topology[l]];
+		}
+	}
+
+	// #END: Constructors
+
+
+	// #BEGIN: Fields
+
+	public double[] getSummations(final int layer)
+	{
+		return summations[layer];
+	}
+
+	public double[] getValues(final int layer)
+	{
+		return values[layer];
+	}
+
+	public double[] getDeltas(final int layer)
+	{
+		return deltas[layer];
+	}
+
+	/**
+	 * Returns the derivative of the activation function at each neuron's value, as computed by the forward pass.
+	 * @param layer the index of the layer.
+	 * @return the derivatives of the layer.
+	 */
+	public double[] getDerivatives(final int layer)
+	{
+		return derivatives[layer];
+	}
+
+	// #END: Fields
+}